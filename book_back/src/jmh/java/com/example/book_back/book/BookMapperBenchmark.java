@@ -0,0 +1,89 @@
+package com.example.book_back.book;
+
+import com.example.book_back.feedback.Feedback;
+import com.example.book_back.file.FileStorageService;
+import com.example.book_back.file.FileSystemCoverStore;
+import com.example.book_back.user.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Преобразование книги в BookResponse: вычисление рейтинга и чтение обложки с диска.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookMapperBenchmark {
+
+    @Param({"false", "true"})
+    public boolean withCover;
+
+    @Param({"204800"})
+    public int coverSize;
+
+    private BookMapper bookMapper;
+    private Book book;
+    private Path coverFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        bookMapper = new BookMapper(new FileStorageService(new FileSystemCoverStore()));
+
+        if (withCover) {
+            byte[] cover = new byte[coverSize];
+            new Random(42).nextBytes(cover);
+            coverFile = Files.createTempFile("cover-benchmark", ".jpg");
+            Files.write(coverFile, cover);
+        }
+
+        book = Book.builder()
+                .id(1L)
+                .title("Война и мир")
+                .authorName("Лев Толстой")
+                .isbn("978-5-17-090334-4")
+                .synopsis("Роман-эпопея")
+                .shareable(true)
+                .archived(false)
+                .owner(User.builder().firstName("Ivan").lastName("Ivanov").build())
+                .bookCover(coverFile != null ? coverFile.toString() : null)
+                .feedbacks(feedbacks(book(), 20))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (coverFile != null) {
+            Files.deleteIfExists(coverFile);
+        }
+    }
+
+    @Benchmark
+    public BookResponse toBookResponse() {
+        return bookMapper.toBookResponse(book);
+    }
+
+    static Book book() {
+        return Book.builder().id(1L).build();
+    }
+
+    static List<Feedback> feedbacks(Book book, int count) {
+        Random random = new Random(42);
+        return IntStream.range(0, count)
+                .mapToObj(i -> Feedback.builder()
+                        .note((double) (1 + random.nextInt(5)))
+                        .comment("comment " + i)
+                        .book(book)
+                        .build())
+                .toList();
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.book_back.book;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Вычисление среднего рейтинга по списку отзывов книги.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookRateBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int feedbackCount;
+
+    private Book book;
+
+    @Setup
+    public void setUp() {
+        book = BookMapperBenchmark.book();
+        book.setFeedbacks(BookMapperBenchmark.feedbacks(book, feedbackCount));
+    }
+
+    @Benchmark
+    public double getRate() {
+        return book.getRate();
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.book_back.book;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Переключение флага книги: чтение, проверка владельца в Java и UPDATE по версии (как при save сущности)
+ * против одного условного UPDATE. Нужен локальный PostgreSQL из профиля dev; адрес меняется через
+ * {@code -Dbenchmark.jdbc.url}, {@code -Dbenchmark.jdbc.user}, {@code -Dbenchmark.jdbc.password}.
+ * Бенчмарк работает со своей временной таблицей и не трогает данные приложения.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookStatusUpdateBenchmark {
+
+    private static final int BOOKS = 10_000;
+    private static final long OWNER_ID = 1;
+
+    private Connection connection;
+    private PreparedStatement select;
+    private PreparedStatement versionedUpdate;
+    private PreparedStatement conditionalUpdate;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                System.getProperty("benchmark.jdbc.url", "jdbc:postgresql://localhost:5435/book-network"),
+                System.getProperty("benchmark.jdbc.user", "root"),
+                System.getProperty("benchmark.jdbc.password", "root")
+        );
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TEMPORARY TABLE book_status_benchmark (
+                        id bigint PRIMARY KEY,
+                        owner_id bigint NOT NULL,
+                        shareable boolean NOT NULL,
+                        version bigint NOT NULL,
+                        last_modified_date timestamp
+                    )
+                    """);
+            statement.execute("INSERT INTO book_status_benchmark SELECT id, " + OWNER_ID
+                    + ", true, 0, NULL FROM generate_series(1, " + BOOKS + ") id");
+        }
+        connection.setAutoCommit(false);
+        select = connection.prepareStatement(
+                "SELECT owner_id, shareable, version FROM book_status_benchmark WHERE id = ?");
+        versionedUpdate = connection.prepareStatement("""
+                UPDATE book_status_benchmark
+                SET shareable = ?, version = ?, last_modified_date = LOCALTIMESTAMP
+                WHERE id = ? AND version = ?
+                """);
+        conditionalUpdate = connection.prepareStatement("""
+                UPDATE book_status_benchmark
+                SET shareable = NOT shareable, version = version + 1, last_modified_date = LOCALTIMESTAMP
+                WHERE id = ? AND owner_id = ?
+                """);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public int readModifyWrite() throws SQLException {
+        long bookId = random.nextInt(BOOKS) + 1;
+        select.setLong(1, bookId);
+        long version;
+        boolean shareable;
+        try (ResultSet resultSet = select.executeQuery()) {
+            resultSet.next();
+            if (resultSet.getLong(1) != OWNER_ID) {
+                throw new IllegalStateException("Not an owner");
+            }
+            shareable = resultSet.getBoolean(2);
+            version = resultSet.getLong(3);
+        }
+        versionedUpdate.setBoolean(1, !shareable);
+        versionedUpdate.setLong(2, version + 1);
+        versionedUpdate.setLong(3, bookId);
+        versionedUpdate.setLong(4, version);
+        int updated = versionedUpdate.executeUpdate();
+        connection.commit();
+        return updated;
+    }
+
+    @Benchmark
+    public int conditionalUpdate() throws SQLException {
+        conditionalUpdate.setLong(1, random.nextInt(BOOKS) + 1);
+        conditionalUpdate.setLong(2, OWNER_ID);
+        int updated = conditionalUpdate.executeUpdate();
+        connection.commit();
+        return updated;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.book_back.file;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.book_back.file.FileStorageServiceBenchmark.field;
+
+/**
+ * Чтение и запись небольших обложек: файл на каждую обложку против сегментов, отображенных в память.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CoverStoreBenchmark {
+
+    @Param({"filesystem", "pack"})
+    public String store;
+
+    @Param({"16384", "131072"})
+    public int coverSize;
+
+    @Param({"10000"})
+    public int covers;
+
+    private CoverStore coverStore;
+    private Path directory;
+    private String[] references;
+    private byte[] content;
+    private long written;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private final SplittableRandom random = new SplittableRandom(42);
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("cover-store-benchmark");
+        if ("pack".equals(store)) {
+            PackCoverStore packStore = new PackCoverStore();
+            ReflectionUtils.setField(field(PackCoverStore.class, "directory"), packStore, directory.toString());
+            ReflectionUtils.setField(field(PackCoverStore.class, "segmentSize"), packStore, DataSize.ofMegabytes(256));
+            ReflectionUtils.setField(field(PackCoverStore.class, "compactionThreshold"), packStore, 0.5);
+            packStore.open();
+            coverStore = packStore;
+        } else {
+            FileSystemCoverStore fileSystemStore = new FileSystemCoverStore();
+            ReflectionUtils.setField(field(FileSystemCoverStore.class, "fileUploadPath"), fileSystemStore, directory.toString());
+            coverStore = fileSystemStore;
+        }
+
+        content = new byte[coverSize];
+        new Random(42).nextBytes(content);
+        references = new String[covers];
+        for (int i = 0; i < covers; i++) {
+            references[i] = coverStore.store(key(i), content);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public byte[] read(Cursor cursor) {
+        return coverStore.read(references[cursor.random.nextInt(references.length)]);
+    }
+
+    @Benchmark
+    public String write() throws IOException {
+        return coverStore.store(key(covers + written++), content);
+    }
+
+    private static String key(long index) {
+        byte[] hash = new byte[32];
+        new Random(index).nextBytes(hash);
+        return HexFormat.of().formatHex(hash) + ".jpg";
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.book_back.file;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сохранение загруженной обложки на диск.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileStorageServiceBenchmark {
+
+    @Param({"524288", "8388608"})
+    public int fileSize;
+
+    /**
+     * true - каждый раз загружается одно и то же изображение и запись на диск пропускается.
+     */
+    @Param({"false", "true"})
+    public boolean duplicate;
+
+    private FileStorageService fileStorageService;
+    private MultipartFile file;
+    private Path uploadDirectory;
+    private byte[] content;
+    private long counter;
+
+    @Setup
+    public void setUp() throws IOException {
+        uploadDirectory = Files.createTempDirectory("file-storage-benchmark");
+        FileSystemCoverStore coverStore = new FileSystemCoverStore();
+        ReflectionUtils.setField(field(FileSystemCoverStore.class, "fileUploadPath"), coverStore, uploadDirectory.toString());
+        fileStorageService = new FileStorageService(coverStore);
+        setField("fileUploadPath", uploadDirectory.toString());
+        setField("maxFileSize", DataSize.ofMegabytes(50));
+        setField("maxInFlightSize", DataSize.ofMegabytes(256));
+
+        content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        // Сигнатура JPEG, иначе загрузка будет отклонена
+        content[0] = (byte) 0xFF;
+        content[1] = (byte) 0xD8;
+        content[2] = (byte) 0xFF;
+        file = new BytesMultipartFile("cover.jpg", content);
+    }
+
+    @TearDown(Level.Iteration)
+    public void cleanUp() throws IOException {
+        FileSystemUtils.deleteRecursively(uploadDirectory.resolve("covers"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(uploadDirectory);
+    }
+
+    @Benchmark
+    public String saveFile() {
+        if (!duplicate) {
+            // Меняем байты после сигнатуры, чтобы хэш содержимого каждый раз был новым
+            long value = ++counter;
+            for (int i = 0; i < Long.BYTES; i++) {
+                content[16 + i] = (byte) (value >>> (i * 8));
+            }
+        }
+        return fileStorageService.saveFile(file);
+    }
+
+    private void setField(String name, Object value) {
+        ReflectionUtils.setField(field(FileStorageService.class, name), fileStorageService, value);
+    }
+
+    static Field field(Class<?> type, String name) {
+        Field field = ReflectionUtils.findField(type, name);
+        ReflectionUtils.makeAccessible(field);
+        return field;
+    }
+
+    /**
+     * Загруженный файл в памяти, аналог MockMultipartFile без зависимости от spring-test.
+     */
+    static class BytesMultipartFile implements MultipartFile {
+
+        private final String originalFilename;
+        private final byte[] content;
+
+        BytesMultipartFile(String originalFilename, byte[] content) {
+            this.originalFilename = originalFilename;
+            this.content = content;
+        }
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return originalFilename;
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/jpeg";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return content.length == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return content.length;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return content;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            Files.write(dest.toPath(), content);
+        }
+    }
+}
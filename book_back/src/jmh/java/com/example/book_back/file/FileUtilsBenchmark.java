@@ -0,0 +1,49 @@
+package com.example.book_back.file;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение обложки с диска, выполняется для каждой книги в каждом списке.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileUtilsBenchmark {
+
+    @Param({"16384", "524288", "4194304"})
+    public int fileSize;
+
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        file = Files.createTempFile("file-utils-benchmark", ".jpg");
+        Files.write(file, content);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public byte[] readFileFromLocation() {
+        return FileUtils.readFileFromLocation(file.toString());
+    }
+
+    @Benchmark
+    public byte[] readMissingFile() {
+        return FileUtils.readFileFromLocation(file + ".missing");
+    }
+}
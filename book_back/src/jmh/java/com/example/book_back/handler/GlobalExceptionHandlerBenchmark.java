@@ -0,0 +1,66 @@
+package com.example.book_back.handler;
+
+import com.example.book_back.book.BookRequest;
+import com.example.book_back.exception.OperationNotPermittedException;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.FieldError;
+import org.springframework.web.bind.MethodArgumentNotValidException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение ответов об ошибках в GlobalExceptionHandler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GlobalExceptionHandlerBenchmark {
+
+    private GlobalExceptionHandler handler;
+    private BadCredentialsException badCredentials;
+    private OperationNotPermittedException notPermitted;
+    private MethodArgumentNotValidException notValid;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        handler = new GlobalExceptionHandler();
+        badCredentials = new BadCredentialsException("Bad credentials");
+        notPermitted = new OperationNotPermittedException("You cannot borrow own book");
+
+        var bindingResult = new BeanPropertyBindingResult(
+                new BookRequest(null, "", "", "", "", false), "request");
+        bindingResult.addError(new FieldError("request", "title", "100"));
+        bindingResult.addError(new FieldError("request", "authorName", "101"));
+        bindingResult.addError(new FieldError("request", "isbn", "102"));
+        bindingResult.addError(new FieldError("request", "synopsis", "103"));
+        var parameter = new MethodParameter(
+                GlobalExceptionHandlerBenchmark.class.getDeclaredMethod("saveBook", BookRequest.class), 0);
+        notValid = new MethodArgumentNotValidException(parameter, bindingResult);
+    }
+
+    @Benchmark
+    public ResponseEntity<ExceptionResponse> badCredentials() {
+        return handler.handleException(badCredentials);
+    }
+
+    @Benchmark
+    public ResponseEntity<ExceptionResponse> operationNotPermitted() {
+        return handler.handleException(notPermitted);
+    }
+
+    @Benchmark
+    public ResponseEntity<ExceptionResponse> validationErrors() {
+        return handler.handleException(notValid);
+    }
+
+    @SuppressWarnings("unused")
+    private void saveBook(BookRequest request) {
+    }
+}
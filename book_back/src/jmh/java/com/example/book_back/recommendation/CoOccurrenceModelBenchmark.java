@@ -0,0 +1,73 @@
+package com.example.book_back.recommendation;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Время построения модели совместных займов по синтетической истории: популярность книг подчиняется
+ * степенному закону, как в DatasetGenerator. parallelism = 1 - последовательный проход для сравнения.
+ * Загрузка из базы не измеряется.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CoOccurrenceModelBenchmark {
+
+    private static final int MAX_BOOKS_PER_USER = 50;
+    private static final int NEIGHBORS_PER_ROW = 100;
+    private static final long MEMORY_BUDGET = 1L << 30;
+
+    @Param({"1000000", "10000000"})
+    public int histories;
+
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private BorrowGraph graph;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        int users = histories / 20;
+        int books = histories / 10;
+        SplittableRandom random = new SplittableRandom(42);
+        BorrowGraph.Builder builder = new BorrowGraph.Builder(MAX_BOOKS_PER_USER);
+        int[] picked = new int[MAX_BOOKS_PER_USER];
+        for (int user = 1; user <= users; user++) {
+            // У большинства читателей несколько займов, у немногих - длинная история
+            int borrows = Math.min(MAX_BOOKS_PER_USER, 1 + (int) (-Math.log(1 - random.nextDouble()) * 19));
+            int size = 0;
+            while (size < borrows) {
+                int book = 1 + (int) (books * Math.pow(random.nextDouble(), 3));
+                boolean duplicate = false;
+                for (int i = 0; i < size && !duplicate; i++) {
+                    duplicate = picked[i] == book;
+                }
+                if (!duplicate) {
+                    picked[size++] = book;
+                    builder.add(user, book);
+                }
+            }
+        }
+        graph = builder.build();
+        pool = parallelism == 0 ? ForkJoinPool.commonPool() : new ForkJoinPool(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != ForkJoinPool.commonPool()) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public CoOccurrenceModel build() {
+        return CoOccurrenceModel.build(graph, NEIGHBORS_PER_ROW, MEMORY_BUDGET, pool);
+    }
+}
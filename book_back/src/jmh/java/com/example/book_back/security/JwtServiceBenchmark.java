@@ -0,0 +1,70 @@
+package com.example.book_back.security;
+
+import com.example.book_back.role.Role;
+import com.example.book_back.user.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.util.ReflectionUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Генерация и разбор JWT-токенов: выполняется на каждом входе и на каждом запросе в JwtFilter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    private static final String SECRET_KEY =
+            "96b53248ce03c6d7976669dcf8ba89fb8257f04ac43bb7c6a6711a0a68b00d22fcbfe1fa0afd23725a2379f492fa5ef5ac1cbaa0fcc4f67c662cfa9e6b8f9eea";
+
+    private JwtService jwtService;
+    private User user;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService();
+        setField(jwtService, "secretKey", SECRET_KEY);
+        setField(jwtService, "jwtExpiration", 86_400_000L);
+
+        user = User.builder()
+                .id(1L)
+                .firstName("Ivan")
+                .lastName("Ivanov")
+                .email("ivan@example.com")
+                .enabled(true)
+                .roles(List.of(Role.builder().name("USER").build()))
+                .build();
+        token = jwtService.generateToken(Map.of("fullName", user.getFullName()), user);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(Map.of("fullName", user.getFullName()), user);
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return jwtService.extractUsername(token);
+    }
+
+    @Benchmark
+    public void validateToken(Blackhole blackhole) {
+        // JwtFilter вызывает оба метода, каждый разбирает токен заново
+        blackhole.consume(jwtService.extractUsername(token));
+        blackhole.consume(jwtService.isTokenValid(token, user));
+    }
+
+    static void setField(Object target, String name, Object value) {
+        var field = ReflectionUtils.findField(target.getClass(), name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.book_back.loadtest;
+
+import com.example.book_back.role.Role;
+import com.example.book_back.role.RoleRepository;
+import com.example.book_back.user.User;
+import com.example.book_back.user.UserRepository;
+import org.springframework.context.ApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Наполняет базу данными для нагрузочного теста.
+ * Пользователи создаются напрямую через репозиторий (активированными, без письма),
+ * книги и отзывы - через реальные эндпоинты, чтобы отработал аудит.
+ */
+public class DataSeeder {
+
+    public static final String PASSWORD = "load-test-password";
+
+    public record SeededUser(Long id, String email, String token) {
+    }
+
+    public record SeededData(List<SeededUser> users, List<Long> bookIds, Map<Long, SeededUser> bookOwners) {
+    }
+
+    private final ApplicationContext context;
+    private final LoadTestClient client;
+    private final Random random = new Random(42);
+
+    public DataSeeder(ApplicationContext context, LoadTestClient client) {
+        this.context = context;
+        this.client = client;
+    }
+
+    public SeededData seed(int userCount, int ownerCount, int booksPerOwner, int feedbacksPerBook) {
+        RoleRepository roleRepository = context.getBean(RoleRepository.class);
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        PasswordEncoder passwordEncoder = context.getBean(PasswordEncoder.class);
+
+        Role userRole = roleRepository.findByName("USER")
+                .orElseThrow(() -> new IllegalStateException("Роль пользователя не задана"));
+        // BCrypt намеренно медленный, поэтому хэш считаем один раз для всех пользователей
+        String encodedPassword = passwordEncoder.encode(PASSWORD);
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+
+        List<SeededUser> users = new ArrayList<>();
+        for (int i = 0; i < userCount; i++) {
+            String email = "load-" + runId + "-" + i + "@example.com";
+            User user = userRepository.save(User.builder()
+                    .firstName("Load")
+                    .lastName("User" + i)
+                    .email(email)
+                    .password(encodedPassword)
+                    .accountLocked(false)
+                    .enabled(true)
+                    .roles(List.of(userRole))
+                    .build());
+            users.add(new SeededUser(user.getId(), email, client.authenticate(email, PASSWORD)));
+        }
+
+        List<Long> bookIds = new ArrayList<>();
+        Map<Long, SeededUser> bookOwners = new HashMap<>();
+        for (SeededUser owner : users.subList(0, ownerCount)) {
+            for (int i = 0; i < booksPerOwner; i++) {
+                HttpResponse<String> response = client.post("books", owner.token(), Map.of(
+                        "title", "Book " + owner.id() + "-" + i,
+                        "authorName", "Author " + random.nextInt(100),
+                        "isbn", "978-" + (1_000_000_000L + random.nextInt(900_000_000)),
+                        "synopsis", "Synopsis of book " + i + " ".repeat(random.nextInt(200)),
+                        "shareable", true
+                ));
+                Long bookId = Long.valueOf(response.body());
+                bookIds.add(bookId);
+                bookOwners.put(bookId, owner);
+            }
+        }
+
+        for (Long bookId : bookIds) {
+            for (int i = 0; i < feedbacksPerBook; i++) {
+                SeededUser reviewer = randomNonOwner(users, bookOwners.get(bookId));
+                client.post("feedbacks", reviewer.token(), Map.of(
+                        "note", 1 + random.nextInt(5),
+                        "comment", "Feedback " + i,
+                        "bookId", bookId
+                ));
+            }
+        }
+
+        return new SeededData(users, bookIds, bookOwners);
+    }
+
+    private SeededUser randomNonOwner(List<SeededUser> users, SeededUser owner) {
+        SeededUser user;
+        do {
+            user = users.get(random.nextInt(users.size()));
+        } while (user.id().equals(owner.id()));
+        return user;
+    }
+}
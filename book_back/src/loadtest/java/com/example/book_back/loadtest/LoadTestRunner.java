@@ -0,0 +1,282 @@
+package com.example.book_back.loadtest;
+
+import com.example.book_back.BookBackApplication;
+import com.example.book_back.loadtest.DataSeeder.SeededData;
+import com.example.book_back.loadtest.DataSeeder.SeededUser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Нагрузочный тест: поднимает приложение в этом же процессе против локального PostgreSQL,
+ * наполняет базу и гоняет смешанную нагрузку из многих клиентов одновременно.
+ * По каждому сценарию печатает пропускную способность и p50/p99/p99.9 по HdrHistogram,
+ * сохраняет результаты в JSON и сравнивает их с сохраненной базовой линией.
+ */
+@Slf4j
+public class LoadTestRunner {
+
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 60);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmup", 10);
+    private static final int USERS = Integer.getInteger("loadtest.users", 60);
+    private static final int OWNERS = Integer.getInteger("loadtest.owners", 10);
+    private static final int BOOKS_PER_OWNER = Integer.getInteger("loadtest.booksPerOwner", 20);
+    private static final int FEEDBACKS_PER_BOOK = Integer.getInteger("loadtest.feedbacksPerBook", 3);
+    private static final double MAX_REGRESSION_PERCENT =
+            Double.parseDouble(System.getProperty("loadtest.maxRegressionPercent", "15"));
+    private static final Path RESULTS = Path.of(System.getProperty("loadtest.results", "target/loadtest/results.json"));
+    private static final Path BASELINE = Path.of(System.getProperty("loadtest.baseline", "loadtest-baseline.json"));
+    private static final boolean SAVE_BASELINE = Boolean.getBoolean("loadtest.saveBaseline");
+
+    public record ScenarioResult(
+            long requests,
+            long errors,
+            double throughputPerSecond,
+            long p50Micros,
+            long p99Micros,
+            long p999Micros,
+            long maxMicros
+    ) {
+    }
+
+    /**
+     * Сценарий нагрузки: число клиентов и одна итерация действий клиента.
+     */
+    private record Scenario(String name, int clients, ClientAction action) {
+    }
+
+    @FunctionalInterface
+    private interface ClientAction {
+        void run(Measurement measurement, SeededUser user, Random random);
+    }
+
+    /**
+     * Замеры одного сценария: латентность каждого HTTP-запроса и число ошибок.
+     */
+    private static class Measurement {
+        private final Recorder recorder = new Recorder(3);
+        private final LongAdder errors = new LongAdder();
+
+        HttpResponse<String> measure(Supplier<HttpResponse<String>> request) {
+            long start = System.nanoTime();
+            HttpResponse<String> response;
+            try {
+                response = request.get();
+            } catch (RuntimeException e) {
+                recorder.recordValue(System.nanoTime() - start);
+                errors.increment();
+                return null;
+            }
+            recorder.recordValue(System.nanoTime() - start);
+            if (response.statusCode() >= 400) {
+                errors.increment();
+            }
+            return response;
+        }
+
+        void reset() {
+            recorder.getIntervalHistogram();
+            errors.reset();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext context = SpringApplication.run(
+                BookBackApplication.class,
+                "--server.port=0",
+                "--application.query-metrics.response-headers=false",
+                // Нагрузка идет от нескольких пользователей с одного адреса и измеряет сервис, а не лимитер
+                "--application.rate-limit.enabled=false"
+        );
+        try {
+            String port = context.getEnvironment().getProperty("local.server.port");
+            String contextPath = context.getEnvironment().getProperty("server.servlet.context-path", "/");
+            ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            LoadTestClient client = new LoadTestClient(
+                    "http://localhost:" + port + (contextPath.endsWith("/") ? contextPath : contextPath + "/"),
+                    objectMapper);
+
+            log.info("Seeding data...");
+            SeededData data = new DataSeeder(context, client).seed(USERS, OWNERS, BOOKS_PER_OWNER, FEEDBACKS_PER_BOOK);
+
+            Map<String, ScenarioResult> results = run(scenarios(client, data), data);
+            report(results);
+
+            Files.createDirectories(RESULTS.toAbsolutePath().getParent());
+            objectMapper.writeValue(RESULTS.toFile(), results);
+            log.info("Results written to {}", RESULTS.toAbsolutePath());
+
+            if (SAVE_BASELINE) {
+                objectMapper.writeValue(BASELINE.toFile(), results);
+                log.info("Baseline saved to {}", BASELINE.toAbsolutePath());
+            } else if (Files.exists(BASELINE)) {
+                Map<String, ScenarioResult> baseline = objectMapper.readValue(BASELINE.toFile(), new TypeReference<>() {
+                });
+                List<String> regressions = compare(baseline, results);
+                if (!regressions.isEmpty()) {
+                    regressions.forEach(log::error);
+                    throw new IllegalStateException(regressions.size() + " scenario(s) regressed by more than "
+                            + MAX_REGRESSION_PERCENT + "%");
+                }
+                log.info("No regressions against {}", BASELINE.toAbsolutePath());
+            }
+        } finally {
+            context.close();
+        }
+    }
+
+    private static List<Scenario> scenarios(LoadTestClient client, SeededData data) {
+        List<Long> books = data.bookIds();
+        return List.of(
+                new Scenario("catalog-browsing", Integer.getInteger("loadtest.browseClients", 32),
+                        (m, user, random) -> {
+                            m.measure(() -> client.get("books?page=" + random.nextInt(5) + "&size=10", user.token()));
+                            Long bookId = books.get(random.nextInt(books.size()));
+                            m.measure(() -> client.get("books/" + bookId, user.token()));
+                            m.measure(() -> client.get("feedbacks/book/" + bookId + "?page=0&size=10", user.token()));
+                        }),
+                new Scenario("loan-cycle", Integer.getInteger("loadtest.loanClients", 8),
+                        (m, user, random) -> {
+                            Long bookId = randomForeignBook(data, user, random);
+                            SeededUser owner = data.bookOwners().get(bookId);
+                            HttpResponse<String> borrowed = m.measure(() -> client.post("books/borrow/" + bookId, user.token(), null));
+                            if (borrowed == null || borrowed.statusCode() != 200) {
+                                return;
+                            }
+                            m.measure(() -> client.patch("books/borrow/return/" + bookId, user.token()));
+                            m.measure(() -> client.patch("books/borrow/return/approve/" + bookId, owner.token()));
+                        }),
+                new Scenario("feedback-posting", Integer.getInteger("loadtest.feedbackClients", 8),
+                        (m, user, random) -> {
+                            Long bookId = randomForeignBook(data, user, random);
+                            m.measure(() -> client.post("feedbacks", user.token(), Map.of(
+                                    "note", 1 + random.nextInt(5),
+                                    "comment", "Load test feedback",
+                                    "bookId", bookId)));
+                        }),
+                new Scenario("login-burst", Integer.getInteger("loadtest.loginClients", 4),
+                        (m, user, random) -> m.measure(() -> client.post("auth/authenticate", null, Map.of(
+                                "email", user.email(),
+                                "password", DataSeeder.PASSWORD))))
+        );
+    }
+
+    private static Long randomForeignBook(SeededData data, SeededUser user, Random random) {
+        Long bookId;
+        do {
+            bookId = data.bookIds().get(random.nextInt(data.bookIds().size()));
+        } while (data.bookOwners().get(bookId).id().equals(user.id()));
+        return bookId;
+    }
+
+    private static Map<String, ScenarioResult> run(List<Scenario> scenarios, SeededData data) throws InterruptedException {
+        int totalClients = scenarios.stream().mapToInt(Scenario::clients).sum();
+        ExecutorService executor = Executors.newFixedThreadPool(totalClients);
+        Map<String, Measurement> measurements = new LinkedHashMap<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS + DURATION_SECONDS);
+
+        int clientIndex = 0;
+        for (Scenario scenario : scenarios) {
+            Measurement measurement = new Measurement();
+            measurements.put(scenario.name(), measurement);
+            for (int i = 0; i < scenario.clients(); i++, clientIndex++) {
+                // Клиенты сценария работают от разных пользователей, чтобы займы не конфликтовали между собой
+                SeededUser user = data.users().get(clientIndex % data.users().size());
+                Random random = new Random(clientIndex);
+                executor.execute(() -> {
+                    while (System.nanoTime() < deadline) {
+                        scenario.action().run(measurement, user, random);
+                    }
+                });
+            }
+        }
+
+        log.info("Warming up for {} s with {} clients...", WARMUP_SECONDS, totalClients);
+        TimeUnit.SECONDS.sleep(WARMUP_SECONDS);
+        measurements.values().forEach(Measurement::reset);
+        long measureStart = System.nanoTime();
+
+        log.info("Measuring for {} s...", DURATION_SECONDS);
+        executor.shutdown();
+        executor.awaitTermination(DURATION_SECONDS + 60L, TimeUnit.SECONDS);
+        double elapsedSeconds = (System.nanoTime() - measureStart) / 1e9;
+
+        Map<String, ScenarioResult> results = new LinkedHashMap<>();
+        measurements.forEach((name, measurement) -> {
+            Histogram histogram = measurement.recorder.getIntervalHistogram();
+            results.put(name, new ScenarioResult(
+                    histogram.getTotalCount(),
+                    measurement.errors.sum(),
+                    histogram.getTotalCount() / elapsedSeconds,
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(50.0)),
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99.0)),
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99.9)),
+                    TimeUnit.NANOSECONDS.toMicros(histogram.getMaxValue())
+            ));
+        });
+        return results;
+    }
+
+    private static void report(Map<String, ScenarioResult> results) {
+        PrintStream out = System.out;
+        out.printf("%n%-18s %10s %8s %12s %10s %10s %10s %10s%n",
+                "scenario", "requests", "errors", "req/s", "p50 us", "p99 us", "p99.9 us", "max us");
+        results.forEach((name, r) -> out.printf("%-18s %10d %8d %12.1f %10d %10d %10d %10d%n",
+                name, r.requests(), r.errors(), r.throughputPerSecond(),
+                r.p50Micros(), r.p99Micros(), r.p999Micros(), r.maxMicros()));
+        out.println();
+    }
+
+    /**
+     * Сравнивает результаты с базовой линией: рост p99 или падение пропускной способности
+     * больше допустимого процента считается регрессией.
+     */
+    private static List<String> compare(Map<String, ScenarioResult> baseline, Map<String, ScenarioResult> results) {
+        List<String> regressions = new ArrayList<>();
+        baseline.forEach((name, expected) -> {
+            ScenarioResult actual = results.get(name);
+            if (actual == null) {
+                return;
+            }
+            double p99Change = percentChange(expected.p99Micros(), actual.p99Micros());
+            if (p99Change > MAX_REGRESSION_PERCENT) {
+                regressions.add(String.format("%s: p99 %d us -> %d us (+%.1f%%)",
+                        name, expected.p99Micros(), actual.p99Micros(), p99Change));
+            }
+            double throughputChange = percentChange(expected.throughputPerSecond(), actual.throughputPerSecond());
+            if (-throughputChange > MAX_REGRESSION_PERCENT) {
+                regressions.add(String.format("%s: throughput %.1f -> %.1f req/s (%.1f%%)",
+                        name, expected.throughputPerSecond(), actual.throughputPerSecond(), throughputChange));
+            }
+        });
+        return regressions;
+    }
+
+    private static double percentChange(double expected, double actual) {
+        if (expected == 0) {
+            return 0;
+        }
+        return (actual - expected) * 100.0 / expected;
+    }
+}
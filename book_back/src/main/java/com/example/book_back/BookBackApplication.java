@@ -1,17 +1,26 @@
 package com.example.book_back;
 
+import com.example.book_back.datagen.DatasetGenerator;
+import com.example.book_back.datagen.DatasetGenerator.DatasetSpec;
 import com.example.book_back.role.Role;
 import com.example.book_back.role.RoleRepository;
+import com.example.book_back.security.SecurityConfig;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.List;
 
 @EnableJpaAuditing(auditorAwareRef = "auditorAware")
 @SpringBootApplication
 @EnableAsync
+@EnableScheduling
 public class BookBackApplication {
 
     public static void main(String[] args) {
@@ -21,9 +30,35 @@ public class BookBackApplication {
     @Bean
     public CommandLineRunner runner(RoleRepository roleRepository) {
         return args -> {
-            if (roleRepository.findByName("USER").isEmpty()) {
-                roleRepository.save(Role.builder().name("USER").build());
+            for (String name : List.of("USER", SecurityConfig.ADMIN_ROLE)) {
+                if (roleRepository.findByName(name).isEmpty()) {
+                    roleRepository.save(Role.builder().name(name).build());
+                }
             }
         };
     }
+
+    /**
+     * Загружает синтетический набор данных при запуске с профилем datagen
+     * (например, --spring.profiles.active=dev,datagen). Параметры - в application-datagen.yml.
+     */
+    @Bean
+    @Profile("datagen")
+    public CommandLineRunner datasetRunner(
+            DatasetGenerator datasetGenerator,
+            @Value("${application.datagen.seed}") long seed,
+            @Value("${application.datagen.users}") int users,
+            @Value("${application.datagen.books}") int books,
+            @Value("${application.datagen.feedbacks}") int feedbacks,
+            @Value("${application.datagen.histories}") int histories,
+            @Value("${application.datagen.popularity-exponent}") double popularityExponent,
+            @Value("${application.datagen.owner-exponent}") double ownerExponent,
+            @Value("${application.datagen.reader-exponent}") double readerExponent,
+            @Value("${application.datagen.truncate}") boolean truncate
+    ) {
+        return args -> datasetGenerator.generate(new DatasetSpec(
+                seed, users, books, feedbacks, histories,
+                popularityExponent, ownerExponent, readerExponent, truncate
+        ));
+    }
 }
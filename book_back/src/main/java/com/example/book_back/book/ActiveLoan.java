@@ -0,0 +1,13 @@
+package com.example.book_back.book;
+
+/**
+ * Незакрытый займ книги: возврат еще не подтвержден владельцем.
+ *
+ * @param bookId   идентификатор книги
+ * @param borrower имя и фамилия читателя
+ */
+public record ActiveLoan(
+        Long bookId,
+        String borrower
+) {
+}
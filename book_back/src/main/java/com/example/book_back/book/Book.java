@@ -2,6 +2,7 @@ package com.example.book_back.book;
 
 import com.example.book_back.common.BaseEntity;
 import com.example.book_back.feedback.Feedback;
+import com.example.book_back.file.CoverRendition;
 import com.example.book_back.history.BookTransactionHistory;
 import com.example.book_back.user.User;
 import jakarta.persistence.*;
@@ -19,6 +20,7 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+// Индексы создаются миграциями в db/migration
 @Table(name = "book_t")
 public class Book extends BaseEntity {
 
@@ -37,6 +39,12 @@ public class Book extends BaseEntity {
     @Column(name = "book_cover")
     private String bookCover;
 
+    @Column(name = "cover_thumbnail")
+    private String coverThumbnail;
+
+    @Column(name = "cover_detail")
+    private String coverDetail;
+
     @Column(name = "archived")
     private boolean archived;
 
@@ -80,4 +88,20 @@ public class Book extends BaseEntity {
         return roundedRate;
     }
 
+    /**
+     * Возвращает путь к уменьшенной копии обложки.
+     * Пока копия не готова (она создается асинхронно после загрузки), возвращает оригинал.
+     *
+     * @param rendition нужная копия обложки
+     * @return путь к файлу обложки или null, если обложки нет
+     */
+    @Transient
+    public String getCover(CoverRendition rendition) {
+        String renditionPath = switch (rendition) {
+            case THUMBNAIL -> coverThumbnail;
+            case DETAIL -> coverDetail;
+        };
+        return renditionPath != null ? renditionPath : bookCover;
+    }
+
 }
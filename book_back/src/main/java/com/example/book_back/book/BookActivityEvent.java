@@ -0,0 +1,17 @@
+package com.example.book_back.book;
+
+/**
+ * Публикуется, когда у книги меняется что-то, от чего зависит ее место в рейтингах:
+ * новый отзыв, новый займ или флаги доступности.
+ *
+ * @param type   что изменилось
+ * @param bookId идентификатор книги
+ */
+public record BookActivityEvent(Type type, Long bookId) {
+
+    public enum Type {
+        RATED,
+        BORROWED,
+        UPDATED
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.book_back.book;
+
+import java.util.List;
+
+/**
+ * Ответ на запрос нескольких книг по идентификаторам.
+ *
+ * @param books      найденные книги в порядке запроса
+ * @param missingIds запрошенные идентификаторы, для которых книга не найдена
+ */
+public record BookBatchResponse(
+        List<BookResponse> books,
+        List<Long> missingIds
+) {
+}
@@ -1,23 +1,56 @@
 package com.example.book_back.book;
 
+import com.example.book_back.common.CacheValidator;
 import com.example.book_back.common.PageResponse;
+import com.example.book_back.datasource.QueryBudget;
+import com.example.book_back.leaderboard.LeaderboardResponse;
+import com.example.book_back.leaderboard.LeaderboardService;
+import com.example.book_back.recommendation.RecommendationService;
+import com.example.book_back.recommendation.RelatedBookResponse;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
 @RestController
 @RequestMapping("books")
 @RequiredArgsConstructor
 @Tag(name = "Book")
 public class BookController {
 
+    /**
+     * Карточку книги браузер может показывать из кэша несколько секунд, дальше - перепроверка по ETag.
+     */
+    private static final CacheControl DETAIL_CACHE_CONTROL =
+            CacheControl.maxAge(Duration.ofSeconds(10)).cachePrivate().mustRevalidate();
+    /**
+     * Списки меняются чаще, поэтому перепроверяются при каждом запросе; в основном это ответы 304.
+     */
+    private static final CacheControl LIST_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+    /**
+     * SHA-256 загружаемой обложки в hex, которым клиент может заранее сообщить ее содержимое.
+     */
+    private static final String CONTENT_HASH_HEADER = "X-Content-SHA256";
+
     private final BookService bookService;
+    private final LeaderboardService leaderboardService;
+    private final RecommendationService recommendationService;
 
+    @QueryBudget(5)
     @PostMapping
     public ResponseEntity<Long> saveBook(
             @Valid @RequestBody BookRequest request,
@@ -26,65 +59,157 @@ public class BookController {
         return ResponseEntity.ok(bookService.save(request, connectedUser));
     }
 
+    @QueryBudget(3)
+    @GetMapping("/batch")
+    public ResponseEntity<BookBatchResponse> findBooksByIds(
+            @RequestParam(name = "ids") List<Long> bookIds
+    ){
+        return ResponseEntity.ok(bookService.findAllByIds(bookIds));
+    }
+
+    /**
+     * Рейтинги отдаются из памяти, к базе обращается только аутентификация.
+     */
+    @QueryBudget(2)
+    @GetMapping("/top-rated")
+    public ResponseEntity<List<LeaderboardResponse>> findTopRatedBooks(
+            @RequestParam(name = "size", defaultValue = "10", required = false) int size
+    ){
+        return ResponseEntity.ok(leaderboardService.findTopRated(size));
+    }
+
+    @QueryBudget(2)
+    @GetMapping("/trending")
+    public ResponseEntity<List<LeaderboardResponse>> findTrendingBooks(
+            @RequestParam(name = "size", defaultValue = "10", required = false) int size
+    ){
+        return ResponseEntity.ok(leaderboardService.findTrending(size));
+    }
+
+    @QueryBudget(6)
     @GetMapping("/{book-id}")
     public ResponseEntity<BookResponse> findBookById(
-            @PathVariable("book-id") Long bookId
+            @PathVariable("book-id") Long bookId,
+            WebRequest request
     ){
-        return ResponseEntity.ok(bookService.findById(bookId));
+        return conditional(request, bookService.findBookValidator(bookId), DETAIL_CACHE_CONTROL,
+                () -> bookService.findById(bookId));
     }
 
+    @QueryBudget(3)
+    @GetMapping("/{book-id}/related")
+    public ResponseEntity<List<RelatedBookResponse>> findRelatedBooks(
+            @PathVariable("book-id") Long bookId,
+            @RequestParam(name = "size", defaultValue = "10", required = false) int size
+    ){
+        return ResponseEntity.ok(recommendationService.findRelated(bookId, size));
+    }
+
+    /**
+     * Доступность книг страницы проверяется одним запросом к незакрытым займам.
+     */
+    @QueryBudget(7)
     @GetMapping
     public ResponseEntity<PageResponse<BookResponse>> findAllBooks(
             @RequestParam(name = "page", defaultValue = "0", required = false) int page,
             @RequestParam(name = "size", defaultValue = "10", required = false) int size,
-            Authentication connectedUser
+            @RequestParam(name = "available", required = false) Boolean available,
+            @RequestParam(name = "fields", required = false) List<String> fields,
+            Authentication connectedUser,
+            WebRequest request
     ){
-        return ResponseEntity.ok(bookService.findAllBooks(page, size, connectedUser));
+        Set<BookField> requestedFields = BookField.parse(fields);
+        return conditional(request, bookService.findAllBooksValidator(page, size, available, connectedUser), LIST_CACHE_CONTROL,
+                () -> bookService.findAllBooks(page, size, available, requestedFields, connectedUser));
     }
 
+    @QueryBudget(7)
     @GetMapping("/owner")
     public ResponseEntity<PageResponse<BookResponse>> findAllBooksByOwner(
             @RequestParam(name = "page", defaultValue = "0", required = false) int page,
             @RequestParam(name = "size", defaultValue = "10", required = false) int size,
+            @RequestParam(name = "fields", required = false) List<String> fields,
+            Authentication connectedUser,
+            WebRequest request
+    ){
+        Set<BookField> requestedFields = BookField.parse(fields);
+        return conditional(request, bookService.findAllBooksByOwnerValidator(page, size, connectedUser), LIST_CACHE_CONTROL,
+                () -> bookService.findAllBooksByOwner(page, size, requestedFields, connectedUser));
+    }
+
+    @QueryBudget(3)
+    @GetMapping("/owner/summary")
+    public ResponseEntity<OwnerSummaryResponse> findOwnerSummary(
             Authentication connectedUser
     ){
-        return ResponseEntity.ok(bookService.findAllBooksByOwner(page, size, connectedUser));
+        return ResponseEntity.ok(bookService.findOwnerSummary(connectedUser));
     }
 
+    @QueryBudget(6)
     @GetMapping("/borrowed")
     public ResponseEntity<PageResponse<BorrowedBookResponse>> findAllBorrowedBooks(
             @RequestParam(name = "page", defaultValue = "0", required = false) int page,
             @RequestParam(name = "size", defaultValue = "10", required = false) int size,
-            Authentication connectedUser
+            @RequestParam(name = "includeArchived", defaultValue = "false", required = false) boolean includeArchived,
+            Authentication connectedUser,
+            WebRequest request
     ){
-        return ResponseEntity.ok(bookService.findAllBorrowedBooks(page, size, connectedUser));
+        return conditional(request, bookService.findAllBorrowedBooksValidator(page, size, includeArchived, connectedUser), LIST_CACHE_CONTROL,
+                () -> bookService.findAllBorrowedBooks(page, size, includeArchived, connectedUser));
     }
 
+    @QueryBudget(6)
     @GetMapping("/returned")
     public ResponseEntity<PageResponse<BorrowedBookResponse>> findAllReturnedBooks(
             @RequestParam(name = "page", defaultValue = "0", required = false) int page,
             @RequestParam(name = "size", defaultValue = "10", required = false) int size,
-            Authentication connectedUser
+            @RequestParam(name = "includeArchived", defaultValue = "false", required = false) boolean includeArchived,
+            Authentication connectedUser,
+            WebRequest request
     ){
-        return ResponseEntity.ok(bookService.findAllReturnedBooks(page, size, connectedUser));
+        return conditional(request, bookService.findAllReturnedBooksValidator(page, size, includeArchived, connectedUser), LIST_CACHE_CONTROL,
+                () -> bookService.findAllReturnedBooks(page, size, includeArchived, connectedUser));
     }
 
+    @QueryBudget(4)
     @PatchMapping("/shareable/{book-id}")
     public ResponseEntity<Long> updateShareableStatus(
             @PathVariable("book-id") Long bookId,
+            @RequestParam(name = "version", required = false) Long version,
             Authentication connectedUser
     ){
-        return ResponseEntity.ok(bookService.updateShareableStatus(bookId, connectedUser));
+        return ResponseEntity.ok(bookService.updateShareableStatus(bookId, version, connectedUser));
     }
 
+    @QueryBudget(4)
     @PatchMapping("/archived/{book-id}")
     public ResponseEntity<Long> updateArchivedStatus(
             @PathVariable("book-id") Long bookId,
+            @RequestParam(name = "version", required = false) Long version,
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(bookService.updateArchivedStatus(bookId, version, connectedUser));
+    }
+
+    @QueryBudget(4)
+    @PatchMapping("/shareable")
+    public ResponseEntity<List<BookStatusResult>> updateShareableStatus(
+            @Valid @RequestBody BookStatusRequest request,
+            Authentication connectedUser
+    ){
+        return ResponseEntity.ok(bookService.updateShareableStatus(request, connectedUser));
+    }
+
+    @QueryBudget(4)
+    @PatchMapping("/archived")
+    public ResponseEntity<List<BookStatusResult>> updateArchivedStatus(
+            @Valid @RequestBody BookStatusRequest request,
             Authentication connectedUser
     ){
-        return ResponseEntity.ok(bookService.updateArchivedStatus(bookId, connectedUser));
+        return ResponseEntity.ok(bookService.updateArchivedStatus(request, connectedUser));
     }
 
+    @QueryBudget(6)
     @PostMapping("borrow/{book-id}")
     public ResponseEntity<Long> borrowBook(
             @PathVariable("book-id") Long bookId,
@@ -93,6 +218,7 @@ public class BookController {
         return ResponseEntity.ok(bookService.borrowBook(bookId, connectedUser));
     }
 
+    @QueryBudget(4)
     @PatchMapping("borrow/return/{book-id}")
     public ResponseEntity<Long> returnBorrowBook(
             @PathVariable("book-id") Long bookId,
@@ -101,6 +227,7 @@ public class BookController {
         return ResponseEntity.ok(bookService.returnBorrowedBook(bookId, connectedUser));
     }
 
+    @QueryBudget(4)
     @PatchMapping("borrow/return/approve/{book-id}")
     public ResponseEntity<Long> approveReturnBorrowBook(
             @PathVariable("book-id") Long bookId,
@@ -109,6 +236,25 @@ public class BookController {
         return ResponseEntity.ok(bookService.approveReturnBorrowedBook(bookId, connectedUser));
     }
 
+    @QueryBudget(4)
+    @GetMapping("/borrow/return/pending")
+    public ResponseEntity<PageResponse<PendingReturnResponse>> findPendingReturns(
+            @RequestParam(name = "page", defaultValue = "0", required = false) int page,
+            @RequestParam(name = "size", defaultValue = "10", required = false) int size,
+            Authentication connectedUser
+    ) {
+        return ResponseEntity.ok(bookService.findPendingReturns(page, size, connectedUser));
+    }
+
+    @QueryBudget(3)
+    @PatchMapping("borrow/return/approve")
+    public ResponseEntity<List<Long>> approveAllReturns(
+            Authentication connectedUser
+    ) {
+        return ResponseEntity.ok(bookService.approveAllReturns(connectedUser));
+    }
+
+    @QueryBudget(5)
     @PostMapping(value = "/cover/{book-id}", consumes = "multipart/form-data")
     public ResponseEntity<?> uploaadBookCoverPicture(
             @PathVariable("book-id") Long bookId,
@@ -120,4 +266,38 @@ public class BookController {
         return ResponseEntity.accepted().build();
     }
 
+    /**
+     * Загрузка обложки телом запроса: файл читается прямо из сокета и сразу пишется в хранилище,
+     * без промежуточной копии, которую контейнер создает для multipart-запросов.
+     * Если в X-Content-SHA256 передан хэш уже сохраненного изображения, оно повторно не записывается.
+     */
+    @QueryBudget(5)
+    @PutMapping(value = "/cover/{book-id}", consumes = {"image/jpeg", "image/png", "image/gif", "image/webp"})
+    public ResponseEntity<?> uploadBookCoverContent(
+            @PathVariable("book-id") Long bookId,
+            @RequestHeader(value = CONTENT_HASH_HEADER, required = false) String contentHash,
+            HttpServletRequest request,
+            Authentication connectedUser
+    ) throws IOException {
+        bookService.uploadBookCoverPicture(
+                bookId, request.getInputStream(), request.getContentLengthLong(), contentHash, connectedUser);
+        return ResponseEntity.accepted().build();
+    }
+
+    /**
+     * Отвечает 304 по валидаторам, не строя тело ответа, либо 200 с телом.
+     * Валидаторы (ETag и, если известно, Last-Modified) выставляет в ответ {@link WebRequest#checkNotModified(String, long)}.
+     */
+    private <T> ResponseEntity<T> conditional(
+            WebRequest request,
+            CacheValidator validator,
+            CacheControl cacheControl,
+            Supplier<T> body
+    ) {
+        if (request.checkNotModified(validator.etag(), validator.lastModified())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok().cacheControl(cacheControl).body(body.get());
+    }
+
 }
\ No newline at end of file
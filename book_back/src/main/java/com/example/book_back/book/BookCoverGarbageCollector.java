@@ -0,0 +1,49 @@
+package com.example.book_back.book;
+
+import com.example.book_back.file.FileStorageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Фоновая сборка мусора в хранилище обложек: удаляет обложки, на которые не ссылается ни одна книга.
+ * Одна обложка может использоваться несколькими книгами, поэтому при смене обложки она сразу не удаляется,
+ * а число ссылок проверяется здесь по book_cover.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class BookCoverGarbageCollector {
+
+    private final FileStorageService fileStorageService;
+    private final BookRepository bookRepository;
+
+    /**
+     * Обложки, использованные позже этого срока, не удаляются: обложка могла быть только что загружена,
+     * а транзакция, сохраняющая ссылку на нее, еще не зафиксирована.
+     */
+    @Value("${application.file.gc.grace-period:PT24H}")
+    private Duration gracePeriod;
+
+    @Scheduled(
+            initialDelayString = "${application.file.gc.interval:PT1H}",
+            fixedDelayString = "${application.file.gc.interval:PT1H}"
+    )
+    public void collectGarbage() {
+        try {
+            int deleted = fileStorageService.collectGarbage(
+                    Instant.now().minus(gracePeriod),
+                    bookRepository::findReferencedCovers
+            );
+            log.info("Cover garbage collection finished, {} files deleted", deleted);
+        } catch (IOException e) {
+            log.error("Cover garbage collection failed", e);
+        }
+    }
+}
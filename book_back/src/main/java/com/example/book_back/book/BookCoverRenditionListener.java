@@ -0,0 +1,104 @@
+package com.example.book_back.book;
+
+import com.example.book_back.file.CoverRendition;
+import com.example.book_back.file.CoverRenditionService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+@Component
+@Slf4j
+public class BookCoverRenditionListener {
+
+    private final CoverRenditionService coverRenditionService;
+    private final BookRepository bookRepository;
+    private final ThreadPoolTaskExecutor coverRenditionExecutor;
+
+    /**
+     * Книги, измененные позже этого срока, повторно не обрабатываются: их задача может еще стоять в очереди.
+     */
+    @Value("${application.file.renditions.retry-delay:PT5M}")
+    private Duration retryDelay;
+
+    /**
+     * Идентификатор книги, на которой остановился предыдущий проход повторной обработки.
+     * Обложки, которые не удается прочитать, остаются без копий, и проход по кругу не застревает на них.
+     */
+    private long retryCursor;
+
+    public BookCoverRenditionListener(
+            CoverRenditionService coverRenditionService,
+            BookRepository bookRepository,
+            @Qualifier("coverRenditionExecutor") ThreadPoolTaskExecutor coverRenditionExecutor
+    ) {
+        this.coverRenditionService = coverRenditionService;
+        this.bookRepository = bookRepository;
+        this.coverRenditionExecutor = coverRenditionExecutor;
+    }
+
+    /**
+     * После фиксации загрузки обложки создает ее уменьшенные копии в отдельном ограниченном пуле потоков
+     * и сохраняет пути к ним в книге.
+     *
+     * @param event событие загрузки обложки
+     */
+    @Async("coverRenditionExecutor")
+    @TransactionalEventListener
+    public void onCoverUploaded(CoverUploadedEvent event) {
+        createRenditions(event);
+    }
+
+    /**
+     * Ставит в пул копии обложек, задачи которых были отброшены при переполненной очереди,
+     * но только пока в очереди есть место, чтобы повторная обработка сама ничего не отбрасывала.
+     */
+    @Scheduled(
+            initialDelayString = "${application.file.renditions.retry-interval:PT10M}",
+            fixedDelayString = "${application.file.renditions.retry-interval:PT10M}"
+    )
+    public void retryMissingRenditions() {
+        int capacity = coverRenditionExecutor.getThreadPoolExecutor().getQueue().remainingCapacity();
+        if (capacity == 0) {
+            return;
+        }
+        List<CoverUploadedEvent> covers = bookRepository.findCoversWithoutRenditions(
+                retryCursor, LocalDateTime.now().minus(retryDelay), Limit.of(capacity));
+        // Дошли до конца таблицы: следующий проход начнется сначала
+        retryCursor = covers.size() < capacity ? 0 : covers.getLast().bookId();
+        for (CoverUploadedEvent cover : covers) {
+            coverRenditionExecutor.execute(() -> createRenditions(cover));
+        }
+        if (!covers.isEmpty()) {
+            log.info("Cover renditions of {} books queued for retry", covers.size());
+        }
+    }
+
+    private void createRenditions(CoverUploadedEvent event) {
+        Map<CoverRendition, String> renditions = coverRenditionService.createRenditions(event.bookCover());
+        if (renditions.isEmpty()) {
+            return;
+        }
+
+        // Если за это время загрузили другую обложку, запрос ничего не обновит
+        int updated = bookRepository.updateCoverRenditions(
+                event.bookId(),
+                event.bookCover(),
+                renditions.get(CoverRendition.THUMBNAIL),
+                renditions.get(CoverRendition.DETAIL)
+        );
+        if (updated == 0) {
+            log.info("Cover of book {} changed while renditions were generated", event.bookId());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.book_back.book;
+
+import com.example.book_back.exception.UnknownFieldException;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Поля {@link BookResponse}, которые клиент может запросить параметром {@code fields}.
+ * Идентификатор возвращается всегда.
+ */
+@Getter
+public enum BookField {
+
+    ID("id"),
+    TITLE("title"),
+    AUTHOR_NAME("authorName"),
+    ISBN("isbn"),
+    SYNOPSIS("synopsis"),
+    OWNER("owner"),
+    /**
+     * Требует чтения файла обложки.
+     */
+    COVER("cover"),
+    /**
+     * Требует агрегации по отзывам.
+     */
+    RATE("rate"),
+    ARCHIVED("archived"),
+    SHAREABLE("shareable"),
+    /**
+     * Требует проверки незакрытых займов книги.
+     */
+    AVAILABLE("available");
+
+    /**
+     * Имя поля в JSON и псевдоним столбца в проекции.
+     */
+    private final String name;
+
+    BookField(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Разбирает список имен полей из параметра запроса.
+     *
+     * @param names имена полей в формате JSON, например {@code title,authorName}
+     * @return набор полей вместе с {@link #ID} или null, если параметр не передан
+     * @throws UnknownFieldException если среди имен есть неизвестное
+     */
+    public static Set<BookField> parse(Collection<String> names) {
+        if (names == null || names.isEmpty()) {
+            return null;
+        }
+        Set<BookField> fields = EnumSet.of(ID);
+        for (String name : names) {
+            fields.add(byName(name.trim()));
+        }
+        return fields;
+    }
+
+    private static BookField byName(String name) {
+        for (BookField field : values()) {
+            if (field.name.equals(name)) {
+                return field;
+            }
+        }
+        throw new UnknownFieldException("Unknown book field: " + name);
+    }
+}
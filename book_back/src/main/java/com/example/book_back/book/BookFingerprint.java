@@ -0,0 +1,38 @@
+package com.example.book_back.book;
+
+import java.time.LocalDateTime;
+
+/**
+ * Отпечаток книги или записи о займе для условных запросов: меняется при любом изменении данных ответа.
+ *
+ * @param id               идентификатор книги или записи истории
+ * @param version          версия записи
+ * @param modifiedDate     время последнего изменения записи
+ * @param feedbackCount    число отзывов о книге (от них зависит рейтинг)
+ * @param lastFeedbackDate время последнего отзыва
+ * @param openLoanCount    число незакрытых займов книги (от них зависит доступность)
+ *                         или null, если ответ доступность не содержит
+ * @param lastOpenLoanId   идентификатор последнего незакрытого займа. Идентификаторы только растут,
+ *                         поэтому новый займ меняет его, а закрытый - число займов
+ */
+public record BookFingerprint(
+        Long id,
+        Long version,
+        LocalDateTime modifiedDate,
+        Long feedbackCount,
+        LocalDateTime lastFeedbackDate,
+        Long openLoanCount,
+        Long lastOpenLoanId
+) {
+
+    public BookFingerprint(Long id, Long version, LocalDateTime modifiedDate, Long feedbackCount, LocalDateTime lastFeedbackDate) {
+        this(id, version, modifiedDate, feedbackCount, lastFeedbackDate, null, null);
+    }
+
+    public LocalDateTime lastModified() {
+        if (lastFeedbackDate == null || modifiedDate.isAfter(lastFeedbackDate)) {
+            return modifiedDate;
+        }
+        return lastFeedbackDate;
+    }
+}
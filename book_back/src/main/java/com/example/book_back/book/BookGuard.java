@@ -0,0 +1,14 @@
+package com.example.book_back.book;
+
+/**
+ * Поля книги, по которым проверяются права на изменение. Читается, только если условный UPDATE
+ * не изменил строку, чтобы понять причину отказа.
+ */
+public record BookGuard(
+        Long id,
+        Long ownerId,
+        Long version,
+        boolean archived,
+        boolean shareable
+) {
+}
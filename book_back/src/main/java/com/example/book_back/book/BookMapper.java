@@ -1,12 +1,19 @@
 package com.example.book_back.book;
 
-import com.example.book_back.file.FileUtils;
-import com.example.book_back.history.BookTransactionHistory;
+import com.example.book_back.file.CoverRendition;
+import com.example.book_back.file.FileStorageService;
+import jakarta.persistence.Tuple;
+import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import java.util.Set;
+
 @Service
+@RequiredArgsConstructor
 public class BookMapper {
 
+    private final FileStorageService fileStorageService;
+
 
 
     /**
@@ -38,6 +45,17 @@ public class BookMapper {
     }
 
     public BookResponse toBookResponse(Book book) {
+        return toBookResponse(book, CoverRendition.DETAIL);
+    }
+
+    /**
+     * Преобразует книгу в ответ с указанной копией обложки: списки используют миниатюру, карточка книги - детальную копию.
+     *
+     * @param book      книга
+     * @param rendition копия обложки для ответа
+     * @return BookResponse
+     */
+    public BookResponse toBookResponse(Book book, CoverRendition rendition) {
 
         return BookResponse.builder()
                 .id(book.getId())
@@ -49,34 +67,82 @@ public class BookMapper {
                 .archived(book.isArchived())
                 .shareable(book.isShareable())
                 .owner(book.getOwner().getFullName())
-                .cover(FileUtils.readFileFromLocation(book.getBookCover()))
+                .cover(fileStorageService.readFile(book.getCover(rendition)))
+                .build();
+    }
+
+    /**
+     * Преобразует узкую проекцию книги в SparseBookResponse, заполняя только запрошенные поля.
+     * Файл обложки читается, только если запрошено поле cover.
+     *
+     * @param tuple  строка из {@link BookProjectionRepository#findBookFields}
+     * @param fields запрошенные поля
+     * @return объект SparseBookResponse с запрошенными полями
+     */
+    public BookResponse toBookResponse(Tuple tuple, Set<BookField> fields) {
+        SparseBookResponse response = new SparseBookResponse();
+        for (BookField field : fields) {
+            Object value = tuple.get(field.getName());
+            switch (field) {
+                case ID -> response.setId((Long) value);
+                case TITLE -> response.setTitle((String) value);
+                case AUTHOR_NAME -> response.setAuthorName((String) value);
+                case ISBN -> response.setIsbn((String) value);
+                case SYNOPSIS -> response.setSynopsis((String) value);
+                case OWNER -> response.setOwner((String) value);
+                case COVER -> response.setCover(fileStorageService.readFile((String) value));
+                case RATE -> response.setRate(round((Double) value));
+                case ARCHIVED -> response.setArchived((Boolean) value);
+                case SHAREABLE -> response.setShareable((Boolean) value);
+                case AVAILABLE -> response.setAvailable((Boolean) value);
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Преобразует строку списка книг в ответ. Из файлов читается только миниатюра обложки.
+     *
+     * @param book строка из {@link BookRepository#findAllDisplayableBooks} или {@link BookRepository#findAllOwnerBooks}
+     * @return BookResponse
+     */
+    public BookResponse toBookResponse(BookSummary book) {
+        return BookResponse.builder()
+                .id(book.id())
+                .title(book.title())
+                .authorName(book.authorName())
+                .isbn(book.isbn())
+                .synopsis(book.synopsis())
+                .rate(round(book.rate()))
+                .archived(book.archived())
+                .shareable(book.shareable())
+                .owner(book.owner())
+                .cover(fileStorageService.readFile(book.cover()))
                 .build();
     }
 
     /**
-     * Преобразует запись истории транзакции книги в ответ о borrowed book.
+     * Преобразует строку истории займов в ответ о borrowed book.
      *
-     * @param bookTransactionHistory Запись истории транзакции книги
+     * @param borrowedBook строка истории займов с данными книги
      * @return BorrowedBookResponse - ответ о borrowed book
      */
-    public BorrowedBookResponse toBorrowedBookResponse(BookTransactionHistory bookTransactionHistory) {
-        // Создаем билдер BorrowedBookResponse
+    public BorrowedBookResponse toBorrowedBookResponse(BorrowedBookSummary borrowedBook) {
         return BorrowedBookResponse.builder()
-                // Устанавливаем идентификатор книги
-                .id(bookTransactionHistory.getBook().getId())
-                // Устанавливаем название книги
-                .title(bookTransactionHistory.getBook().getTitle())
-                // Устанавливаем имя автора книги
-                .authorName(bookTransactionHistory.getBook().getAuthorName())
-                // Устанавливаем ISBN книги
-                .isbn(bookTransactionHistory.getBook().getIsbn())
-                // Устанавливаем рейтинг книги
-                .rate(bookTransactionHistory.getBook().getRate())
-                // Устанавливаем флаг возврата книги
-                .returned(bookTransactionHistory.isReturned())
-                // Устанавливаем флаг одобрения возврата книги
-                .returnApproved(bookTransactionHistory.isReturnApproved())
-                // Создаем и возвращаем объект BorrowedBookResponse
+                .id(borrowedBook.id())
+                .title(borrowedBook.title())
+                .authorName(borrowedBook.authorName())
+                .isbn(borrowedBook.isbn())
+                .rate(round(borrowedBook.rate()))
+                .returned(borrowedBook.returned())
+                .returnApproved(borrowedBook.returnApproved())
                 .build();
     }
+
+    /**
+     * Округляет средний рейтинг до одного знака после запятой, как {@link Book#getRate()}.
+     */
+    private static double round(Double rate) {
+        return rate == null ? 0.0 : Math.round(rate * 10.0) / 10.0;
+    }
 }
@@ -0,0 +1,33 @@
+package com.example.book_back.book;
+
+import com.example.book_back.file.CoverRendition;
+import jakarta.persistence.Tuple;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Set;
+
+/**
+ * Узкие проекции книг: из базы выбираются только запрошенные поля.
+ */
+public interface BookProjectionRepository {
+
+    /**
+     * Возвращает страницу книг, в каждой строке которой есть только запрошенные поля.
+     * Псевдонимы элементов кортежа совпадают с {@link BookField#getName()}.
+     * Для {@link BookField#COVER} выбирается путь к обложке, для {@link BookField#RATE} - средняя оценка.
+     *
+     * @param specification условие отбора книг
+     * @param fields        запрошенные поля
+     * @param rendition     копия обложки, путь к которой нужен
+     * @param pageable      страница и сортировка
+     * @return страница кортежей
+     */
+    Page<Tuple> findBookFields(
+            Specification<Book> specification,
+            Set<BookField> fields,
+            CoverRendition rendition,
+            Pageable pageable
+    );
+}
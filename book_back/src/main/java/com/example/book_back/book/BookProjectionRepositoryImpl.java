@@ -0,0 +1,103 @@
+package com.example.book_back.book;
+
+import com.example.book_back.feedback.Feedback;
+import com.example.book_back.file.CoverRendition;
+import com.example.book_back.user.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.springframework.data.jpa.repository.query.QueryUtils.toOrders;
+
+public class BookProjectionRepositoryImpl implements BookProjectionRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Page<Tuple> findBookFields(
+            Specification<Book> specification,
+            Set<BookField> fields,
+            CoverRendition rendition,
+            Pageable pageable
+    ) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = criteriaBuilder.createTupleQuery();
+        Root<Book> book = query.from(Book.class);
+
+        List<Selection<?>> selections = new ArrayList<>();
+        for (BookField field : fields) {
+            selections.add(select(field, book, query, criteriaBuilder, rendition).alias(field.getName()));
+        }
+        query.multiselect(selections)
+                .where(specification.toPredicate(book, query, criteriaBuilder))
+                .orderBy(toOrders(pageable.getSort(), book, criteriaBuilder));
+
+        List<Tuple> content = entityManager.createQuery(query)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(specification));
+    }
+
+    private Selection<?> select(
+            BookField field,
+            Root<Book> book,
+            CriteriaQuery<Tuple> query,
+            CriteriaBuilder criteriaBuilder,
+            CoverRendition rendition
+    ) {
+        return switch (field) {
+            case ID -> book.get("id");
+            case TITLE -> book.get("title");
+            case AUTHOR_NAME -> book.get("authorName");
+            case ISBN -> book.get("isbn");
+            case SYNOPSIS -> book.get("synopsis");
+            case ARCHIVED -> book.get("archived");
+            case SHAREABLE -> book.get("shareable");
+            case OWNER -> {
+                Join<Book, User> owner = book.join("owner");
+                yield criteriaBuilder.concat(
+                        criteriaBuilder.concat(owner.<String>get("firstName"), " "),
+                        owner.<String>get("lastName"));
+            }
+            // Пока копия не готова, возвращается оригинал, как в Book.getCover
+            case COVER -> criteriaBuilder.coalesce(
+                    book.<String>get(rendition == CoverRendition.THUMBNAIL ? "coverThumbnail" : "coverDetail"),
+                    book.<String>get("bookCover"));
+            case RATE -> {
+                Subquery<Double> average = query.subquery(Double.class);
+                Root<Feedback> feedback = average.from(Feedback.class);
+                average.select(criteriaBuilder.avg(feedback.<Double>get("note")))
+                        .where(criteriaBuilder.equal(feedback.get("book"), book));
+                yield criteriaBuilder.coalesce(average, 0.0);
+            }
+            case AVAILABLE -> criteriaBuilder.<Boolean>selectCase()
+                    .when(criteriaBuilder.exists(BookSpecification.activeLoan(book, query, criteriaBuilder)), false)
+                    .otherwise(true);
+        };
+    }
+
+    private long count(Specification<Book> specification) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+        Root<Book> book = query.from(Book.class);
+        query.select(criteriaBuilder.count(book))
+                .where(specification.toPredicate(book, query, criteriaBuilder));
+        return entityManager.createQuery(query).getSingleResult();
+    }
+}
@@ -1,27 +1,527 @@
 package com.example.book_back.book;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface BookRepository extends JpaRepository<Book, Long>, JpaSpecificationExecutor<Book> {
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+public interface BookRepository extends JpaRepository<Book, Long>, JpaSpecificationExecutor<Book>, BookProjectionRepository {
 
     /**
      * Возвращает список всех книг, которые не архивированы, доступны для общего доступа и не принадлежат пользователю с указанным идентификатором.
+     * Имя владельца и средний рейтинг выбираются тем же запросом, сущности не загружаются.
      *
      * @param pageable объект Pageable для разбиения результата на страницы
      * @param userId идентификатор пользователя, книги которого не должны быть включены в результат
+     * @param available true - только свободные книги, false - только выданные, null - все. Незакрытые займы
+     *                  ищутся по частичному индексу history_active_book_idx
      * @return страница книг, отфильтрованных по указанным критериям
      */
+    @Query(value = """
+        SELECT new com.example.book_back.book.BookSummary(
+            book.id,
+            book.title,
+            book.authorName,
+            book.isbn,
+            book.synopsis,
+            CONCAT(owner.firstName, ' ', owner.lastName),
+            COALESCE(book.coverThumbnail, book.bookCover),
+            (SELECT COALESCE(AVG(feedback.note), 0.0) FROM Feedback feedback WHERE feedback.book = book),
+            book.archived,
+            book.shareable
+        )
+        FROM Book book
+        JOIN book.owner owner
+        WHERE book.archived = false
+        AND book.shareable = true
+        AND owner.id != :userId
+        AND (:available IS NULL
+            OR (:available = true AND NOT EXISTS (
+                SELECT 1 FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false))
+            OR (:available = false AND EXISTS (
+                SELECT 1 FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false)))
+        """,
+        countQuery = """
+        SELECT COUNT(book)
+        FROM Book book
+        WHERE book.archived = false
+        AND book.shareable = true
+        AND book.owner.id != :userId
+        AND (:available IS NULL
+            OR (:available = true AND NOT EXISTS (
+                SELECT 1 FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false))
+            OR (:available = false AND EXISTS (
+                SELECT 1 FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false)))
+        """)
+    Page<BookSummary> findAllDisplayableBooks(
+            Pageable pageable,
+            @Param("userId") Long userId,
+            @Param("available") Boolean available
+    );
+
+    /**
+     * Возвращает книги владельца вместе с его именем и средним рейтингом одним запросом.
+     *
+     * @param pageable объект Pageable для разбиения результата на страницы
+     * @param ownerId идентификатор владельца
+     * @return страница книг владельца
+     */
+    @Query(value = """
+        SELECT new com.example.book_back.book.BookSummary(
+            book.id,
+            book.title,
+            book.authorName,
+            book.isbn,
+            book.synopsis,
+            CONCAT(owner.firstName, ' ', owner.lastName),
+            COALESCE(book.coverThumbnail, book.bookCover),
+            (SELECT COALESCE(AVG(feedback.note), 0.0) FROM Feedback feedback WHERE feedback.book = book),
+            book.archived,
+            book.shareable
+        )
+        FROM Book book
+        JOIN book.owner owner
+        WHERE owner.id = :ownerId
+        """,
+        countQuery = """
+        SELECT COUNT(book)
+        FROM Book book
+        WHERE book.owner.id = :ownerId
+        """)
+    Page<BookSummary> findAllOwnerBooks(Pageable pageable, @Param("ownerId") Long ownerId);
+
+    /**
+     * Возвращает книги с указанными идентификаторами вместе с именем владельца и средним рейтингом одним запросом.
+     * Порядок результата не определен.
+     *
+     * @param bookIds идентификаторы книг
+     * @return найденные книги
+     */
+    @Query("""
+        SELECT new com.example.book_back.book.BookSummary(
+            book.id,
+            book.title,
+            book.authorName,
+            book.isbn,
+            book.synopsis,
+            CONCAT(owner.firstName, ' ', owner.lastName),
+            COALESCE(book.coverThumbnail, book.bookCover),
+            (SELECT COALESCE(AVG(feedback.note), 0.0) FROM Feedback feedback WHERE feedback.book = book),
+            book.archived,
+            book.shareable
+        )
+        FROM Book book
+        JOIN book.owner owner
+        WHERE book.id IN :bookIds
+        """)
+    List<BookSummary> findAllSummariesByIds(@Param("bookIds") Collection<Long> bookIds);
+
+    /**
+     * Сводка пользователя одним запросом: книги по состояниям, займы его книг, его собственные займы
+     * и рейтинг по отзывам. Каждая часть читает только строки пользователя по индексам
+     * book_owner_idx, history_book_idx, history_user_idx и feedback_book_created_idx; по займам - только горячая секция истории.
+     *
+     * @param userId идентификатор пользователя
+     * @return сводка
+     */
+    @Query(nativeQuery = true, value = """
+        WITH owned AS (
+            SELECT id, archived, shareable
+            FROM book_t
+            WHERE owner_id = :userId
+        ),
+        loans AS (
+            SELECT COUNT(*) FILTER (WHERE NOT history.returned) AS lent_out,
+                   COUNT(*) FILTER (WHERE history.returned) AS awaiting_approval
+            FROM book_transaction_history_t history
+            JOIN owned ON owned.id = history.book_id
+            WHERE NOT history.return_approved
+            AND NOT history.archived
+        ),
+        ratings AS (
+            SELECT COUNT(*) AS feedback_count,
+                   AVG(feedback.note) AS average_rating
+            FROM feedback_t feedback
+            JOIN owned ON owned.id = feedback.book_id
+        )
+        SELECT (SELECT COUNT(*) FROM owned) AS "ownedBooks",
+               (SELECT COUNT(*) FROM owned WHERE shareable AND NOT archived) AS "sharedBooks",
+               (SELECT COUNT(*) FROM owned WHERE archived) AS "archivedBooks",
+               loans.lent_out AS "lentOut",
+               loans.awaiting_approval AS "awaitingApproval",
+               (SELECT COUNT(*)
+                FROM book_transaction_history_t history
+                WHERE history.user_id = :userId
+                AND NOT history.returned
+                AND NOT history.archived) AS "borrowed",
+               ratings.feedback_count AS "feedbackCount",
+               COALESCE(ratings.average_rating, 0) AS "averageRating"
+        FROM loans, ratings
+        """)
+    OwnerSummary findOwnerSummary(@Param("userId") Long userId);
+
+    /**
+     * Возвращает отпечаток книги для условных запросов, не загружая связи.
+     *
+     * @param bookId идентификатор книги
+     * @return отпечаток книги, если она найдена
+     */
     @Query("""
-        SELECT book
+        SELECT new com.example.book_back.book.BookFingerprint(
+            book.id,
+            book.version,
+            COALESCE(book.lastModifiedDate, book.createdDate),
+            (SELECT COUNT(feedback) FROM Feedback feedback WHERE feedback.book = book),
+            (SELECT MAX(feedback.createdDate) FROM Feedback feedback WHERE feedback.book = book)
+        )
+        FROM Book book
+        WHERE book.id = :bookId
+        """)
+    Optional<BookFingerprint> findFingerprintById(@Param("bookId") Long bookId);
+
+    /**
+     * Отпечатки страницы из {@link #findAllDisplayableBooks(Pageable, Long, Boolean)}.
+     * Займ не меняет версию книги, поэтому незакрытые займы входят в отпечаток отдельно.
+     */
+    @Query(value = """
+        SELECT new com.example.book_back.book.BookFingerprint(
+            book.id,
+            book.version,
+            COALESCE(book.lastModifiedDate, book.createdDate),
+            (SELECT COUNT(feedback) FROM Feedback feedback WHERE feedback.book = book),
+            (SELECT MAX(feedback.createdDate) FROM Feedback feedback WHERE feedback.book = book),
+            (SELECT COUNT(loan) FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false),
+            (SELECT MAX(loan.id) FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false)
+        )
         FROM Book book
         WHERE book.archived = false
         AND book.shareable = true
         AND book.owner.id != :userId
+        AND (:available IS NULL
+            OR (:available = true AND NOT EXISTS (
+                SELECT 1 FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false))
+            OR (:available = false AND EXISTS (
+                SELECT 1 FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false)))
+        """,
+        countQuery = """
+        SELECT COUNT(book)
+        FROM Book book
+        WHERE book.archived = false
+        AND book.shareable = true
+        AND book.owner.id != :userId
+        AND (:available IS NULL
+            OR (:available = true AND NOT EXISTS (
+                SELECT 1 FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false))
+            OR (:available = false AND EXISTS (
+                SELECT 1 FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false)))
+        """)
+    Page<BookFingerprint> findDisplayableBookFingerprints(
+            Pageable pageable,
+            @Param("userId") Long userId,
+            @Param("available") Boolean available
+    );
+
+    /**
+     * Отпечатки страницы книг владельца вместе с незакрытыми займами.
+     */
+    @Query(value = """
+        SELECT new com.example.book_back.book.BookFingerprint(
+            book.id,
+            book.version,
+            COALESCE(book.lastModifiedDate, book.createdDate),
+            (SELECT COUNT(feedback) FROM Feedback feedback WHERE feedback.book = book),
+            (SELECT MAX(feedback.createdDate) FROM Feedback feedback WHERE feedback.book = book),
+            (SELECT COUNT(loan) FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false),
+            (SELECT MAX(loan.id) FROM BookTransactionHistory loan
+                WHERE loan.book = book AND loan.returnApproved = false AND loan.archived = false)
+        )
+        FROM Book book
+        WHERE book.owner.id = :ownerId
+        """,
+        countQuery = """
+        SELECT COUNT(book)
+        FROM Book book
+        WHERE book.owner.id = :ownerId
+        """)
+    Page<BookFingerprint> findOwnerBookFingerprints(Pageable pageable, @Param("ownerId") Long ownerId);
+
+    /**
+     * Возвращает те из переданных путей к обложкам, на которые ссылается хотя бы одна книга.
+     *
+     * @param covers пути к оригиналам обложек
+     * @return пути, которые еще используются
+     */
+    @Query("""
+        SELECT DISTINCT book.bookCover
+        FROM Book book
+        WHERE book.bookCover IN :covers
+        """)
+    Set<String> findReferencedCovers(@Param("covers") Collection<String> covers);
+
+    /**
+     * Поля книги для выяснения причины, по которой условный UPDATE не изменил строку.
+     *
+     * @param bookId идентификатор книги
+     * @return владелец, версия и флаги книги, если она найдена
+     */
+    @Query("""
+        SELECT new com.example.book_back.book.BookGuard(book.id, book.owner.id, book.version, book.archived, book.shareable)
+        FROM Book book
+        WHERE book.id = :bookId
+        """)
+    Optional<BookGuard> findGuardById(@Param("bookId") Long bookId);
+
+    /**
+     * Поля для проверки прав сразу для нескольких книг.
+     */
+    @Query("""
+        SELECT new com.example.book_back.book.BookGuard(book.id, book.owner.id, book.version, book.archived, book.shareable)
+        FROM Book book
+        WHERE book.id IN :bookIds
+        """)
+    List<BookGuard> findGuardsByIds(@Param("bookIds") Collection<Long> bookIds);
+
+    /**
+     * Переключает флаг общего доступа одним запросом, если книга принадлежит пользователю
+     * и, когда версия передана, не менялась с момента ее чтения клиентом.
+     *
+     * @param version ожидаемая версия книги или null, чтобы не проверять ее
+     * @return число обновленных строк: 0 или 1
+     */
+    @Modifying
+    @Query("""
+        UPDATE Book book
+        SET book.shareable = CASE WHEN book.shareable = true THEN false ELSE true END,
+            book.version = book.version + 1,
+            book.lastModifiedDate = local datetime,
+            book.lastModifiedBy = :userId
+        WHERE book.id = :bookId
+        AND book.owner.id = :userId
+        AND (:version IS NULL OR book.version = :version)
+        """)
+    int toggleShareable(@Param("bookId") Long bookId, @Param("userId") Long userId, @Param("version") Long version);
+
+    /**
+     * Переключает флаг архивации одним запросом; условия те же, что у {@link #toggleShareable}.
+     *
+     * @return число обновленных строк: 0 или 1
+     */
+    @Modifying
+    @Query("""
+        UPDATE Book book
+        SET book.archived = CASE WHEN book.archived = true THEN false ELSE true END,
+            book.version = book.version + 1,
+            book.lastModifiedDate = local datetime,
+            book.lastModifiedBy = :userId
+        WHERE book.id = :bookId
+        AND book.owner.id = :userId
+        AND (:version IS NULL OR book.version = :version)
+        """)
+    int toggleArchived(@Param("bookId") Long bookId, @Param("userId") Long userId, @Param("version") Long version);
+
+    /**
+     * Устанавливает флаг общего доступа сразу для нескольких книг пользователя одним запросом.
+     * Книги, у которых флаг уже равен нужному значению, не изменяются и их версия не растет.
+     *
+     * @return идентификаторы измененных книг
+     */
+    @Query(nativeQuery = true, value = """
+        UPDATE book_t
+        SET shareable = :value,
+            version = version + 1,
+            last_modified_date = LOCALTIMESTAMP,
+            last_modified_by = :userId
+        WHERE id IN (:bookIds)
+        AND owner_id = :userId
+        AND shareable <> :value
+        RETURNING id
+        """)
+    List<Long> updateShareable(@Param("bookIds") Collection<Long> bookIds, @Param("userId") Long userId, @Param("value") boolean value);
+
+    /**
+     * Устанавливает флаг архивации сразу для нескольких книг пользователя; условия те же, что у {@link #updateShareable}.
+     *
+     * @return идентификаторы измененных книг
+     */
+    @Query(nativeQuery = true, value = """
+        UPDATE book_t
+        SET archived = :value,
+            version = version + 1,
+            last_modified_date = LOCALTIMESTAMP,
+            last_modified_by = :userId
+        WHERE id IN (:bookIds)
+        AND owner_id = :userId
+        AND archived <> :value
+        RETURNING id
         """)
-    Page<Book> findAllDisplayableBooks(Pageable pageable, Long userId);
+    List<Long> updateArchived(@Param("bookIds") Collection<Long> bookIds, @Param("userId") Long userId, @Param("value") boolean value);
 
+    /**
+     * Обложки без уменьшенных копий: их создание было отброшено переполненным пулом или не удалось.
+     * Обложки, измененные позже {@code modifiedBefore}, пропускаются: их копии, возможно, еще создаются.
+     *
+     * @param afterId        идентификатор книги, после которого продолжается просмотр
+     * @param modifiedBefore время, после которого книги не рассматриваются
+     * @return книги по возрастанию идентификатора вместе с путями к оригиналам обложек
+     */
+    @Query("""
+        SELECT new com.example.book_back.book.CoverUploadedEvent(book.id, book.bookCover)
+        FROM Book book
+        WHERE book.id > :afterId
+        AND book.bookCover IS NOT NULL
+        AND (book.coverThumbnail IS NULL OR book.coverDetail IS NULL)
+        AND COALESCE(book.lastModifiedDate, book.createdDate) < :modifiedBefore
+        ORDER BY book.id
+        """)
+    List<CoverUploadedEvent> findCoversWithoutRenditions(
+            @Param("afterId") Long afterId,
+            @Param("modifiedBefore") LocalDateTime modifiedBefore,
+            Limit limit
+    );
+
+    /**
+     * Сохраняет пути к уменьшенным копиям обложки, если обложка книги не сменилась с момента загрузки.
+     *
+     * @return число обновленных строк
+     */
+    @Transactional
+    @Modifying
+    @Query("""
+        UPDATE Book book
+        SET book.coverThumbnail = :thumbnail,
+            book.coverDetail = :detail,
+            book.version = book.version + 1,
+            book.lastModifiedDate = local datetime
+        WHERE book.id = :bookId
+        AND book.bookCover = :bookCover
+        """)
+    int updateCoverRenditions(
+            @Param("bookId") Long bookId,
+            @Param("bookCover") String bookCover,
+            @Param("thumbnail") String thumbnail,
+            @Param("detail") String detail
+    );
+
+    /**
+     * Лучшие по отзывам доступные книги. Оценка - байесовское среднее (prior * mean + сумма) / (prior + число оценок):
+     * у книги с парой отличных отзывов она ближе к средней по всем книгам, чем у книги с сотней.
+     * Отзывы без оценки, как и в средней {@code mean}, не учитываются.
+     *
+     * @param prior вес средней оценки, в отзывах
+     * @param mean средняя оценка по всем отзывам
+     * @param limit число книг
+     */
+    @Query(nativeQuery = true, value = """
+        SELECT book.id AS "bookId",
+               book.title AS "title",
+               book.author_name AS "authorName",
+               true AS "displayable",
+               COUNT(feedback.note) AS "count",
+               (:prior * :mean + SUM(feedback.note)) / (:prior + COUNT(feedback.note)) AS "score"
+        FROM book_t book
+        JOIN feedback_t feedback ON feedback.book_id = book.id
+        WHERE book.shareable
+        AND NOT book.archived
+        GROUP BY book.id
+        HAVING COUNT(feedback.note) > 0
+        ORDER BY "score" DESC, book.id
+        LIMIT :limit
+        """)
+    List<LeaderboardBook> findTopRated(@Param("prior") double prior, @Param("mean") double mean, @Param("limit") int limit);
+
+    /**
+     * Оценка одной книги так же, как в {@link #findTopRated(double, double, int)}, независимо от ее доступности.
+     */
+    @Query(nativeQuery = true, value = """
+        SELECT book.id AS "bookId",
+               book.title AS "title",
+               book.author_name AS "authorName",
+               (book.shareable AND NOT book.archived) AS "displayable",
+               COUNT(feedback.note) AS "count",
+               (:prior * :mean + COALESCE(SUM(feedback.note), 0)) / (:prior + COUNT(feedback.note)) AS "score"
+        FROM book_t book
+        LEFT JOIN feedback_t feedback ON feedback.book_id = book.id
+        WHERE book.id = :bookId
+        GROUP BY book.id
+        """)
+    Optional<LeaderboardBook> findRatedBook(@Param("bookId") Long bookId, @Param("prior") double prior, @Param("mean") double mean);
+
+    /**
+     * Самые популярные за окно доступные книги. Каждый займ весит exp((created_date - landmark) / tau):
+     * вес займа убывает вдвое за tau * ln 2 секунд, а общий множитель опорного момента на порядок не влияет.
+     *
+     * @param since начало окна
+     * @param landmark опорный момент
+     * @param tau постоянная затухания, в секундах
+     * @param limit число книг
+     */
+    @Query(nativeQuery = true, value = """
+        SELECT book.id AS "bookId",
+               book.title AS "title",
+               book.author_name AS "authorName",
+               true AS "displayable",
+               COUNT(*) AS "count",
+               SUM(EXP(EXTRACT(EPOCH FROM (history.created_date - CAST(:landmark AS timestamp))) / :tau)) AS "score"
+        FROM book_transaction_history_t history
+        JOIN book_t book ON book.id = history.book_id
+        WHERE history.created_date >= :since
+        AND book.shareable
+        AND NOT book.archived
+        GROUP BY book.id
+        ORDER BY "score" DESC, book.id
+        LIMIT :limit
+        """)
+    List<LeaderboardBook> findTrending(
+            @Param("since") LocalDateTime since,
+            @Param("landmark") LocalDateTime landmark,
+            @Param("tau") double tau,
+            @Param("limit") int limit
+    );
+
+    /**
+     * Популярность одной книги так же, как в {@link #findTrending(LocalDateTime, LocalDateTime, double, int)},
+     * независимо от ее доступности.
+     */
+    @Query(nativeQuery = true, value = """
+        SELECT book.id AS "bookId",
+               book.title AS "title",
+               book.author_name AS "authorName",
+               (book.shareable AND NOT book.archived) AS "displayable",
+               COUNT(history.id) AS "count",
+               COALESCE(SUM(EXP(EXTRACT(EPOCH FROM (history.created_date - CAST(:landmark AS timestamp))) / :tau)), 0) AS "score"
+        FROM book_t book
+        LEFT JOIN book_transaction_history_t history
+            ON history.book_id = book.id
+            AND history.created_date >= :since
+        WHERE book.id = :bookId
+        GROUP BY book.id
+        """)
+    Optional<LeaderboardBook> findTrendingBook(
+            @Param("bookId") Long bookId,
+            @Param("since") LocalDateTime since,
+            @Param("landmark") LocalDateTime landmark,
+            @Param("tau") double tau
+    );
 }
@@ -3,6 +3,9 @@ package com.example.book_back.book;
 
 import lombok.*;
 
+/**
+ * Ответ с данными книги. Ответ только с запрошенными полями - {@link SparseBookResponse}.
+ */
 @Getter
 @Setter
 @Builder
@@ -17,7 +20,19 @@ public class BookResponse {
     private String synopsis;
     private String owner;
     private byte[] cover;
-    private double rate;
-    private boolean archived;
-    private boolean shareable;
+    private Double rate;
+    private Boolean archived;
+    private Boolean shareable;
+    /**
+     * Книга сейчас на руках у текущего пользователя; заполняется только в полном ответе каталога.
+     */
+    private Boolean borrowedByUser;
+    /**
+     * Книга не выдана: у нее нет займа с неподтвержденным возвратом.
+     */
+    private Boolean available;
+    /**
+     * Читатель, у которого книга сейчас; заполняется только в списке книг владельца.
+     */
+    private String currentBorrower;
 }
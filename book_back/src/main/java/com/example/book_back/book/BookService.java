@@ -1,28 +1,49 @@
 package com.example.book_back.book;
 
 
+import com.example.book_back.common.CacheValidator;
 import com.example.book_back.common.PageResponse;
 import com.example.book_back.exception.OperationNotPermittedException;
+import com.example.book_back.exception.StaleVersionException;
+import com.example.book_back.file.CoverRendition;
 import com.example.book_back.file.FileStorageService;
+import com.example.book_back.history.ActiveLoanIndex;
 import com.example.book_back.history.BookTransactionHistory;
 import com.example.book_back.history.BookTransactionHistoryRepository;
+import com.example.book_back.history.ClosedLoan;
+import com.example.book_back.notification.LoanEvent;
 import com.example.book_back.user.User;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.Tuple;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 
+import static com.example.book_back.book.BookSpecification.available;
+import static com.example.book_back.book.BookSpecification.displayableFor;
 import static com.example.book_back.book.BookSpecification.withOwnerId;
 
 @Service
@@ -30,16 +51,25 @@ import static com.example.book_back.book.BookSpecification.withOwnerId;
 @Transactional
 public class BookService {
 
+    /**
+     * Максимальное число книг в одном запросе {@link #findAllByIds(List)}.
+     */
+    public static final int MAX_BATCH_SIZE = 100;
+
     private final BookRepository bookRepository;
     private final BookMapper bookMapper;
     private final BookTransactionHistoryRepository bookTransactionHistoryRepository;
     private final FileStorageService fileStorageService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ActiveLoanIndex activeLoanIndex;
 
-    public BookService(BookRepository bookRepository, BookMapper bookMapper, BookTransactionHistoryRepository bookTransactionHistoryRepository, FileStorageService fileStorageService) {
+    public BookService(BookRepository bookRepository, BookMapper bookMapper, BookTransactionHistoryRepository bookTransactionHistoryRepository, FileStorageService fileStorageService, ApplicationEventPublisher eventPublisher, ActiveLoanIndex activeLoanIndex) {
         this.bookRepository = bookRepository;
         this.bookMapper = bookMapper;
         this.bookTransactionHistoryRepository = bookTransactionHistoryRepository;
         this.fileStorageService = fileStorageService;
+        this.eventPublisher = eventPublisher;
+        this.activeLoanIndex = activeLoanIndex;
     }
 
     /**
@@ -50,6 +80,7 @@ public class BookService {
      * @return идентификатор сохраненной книги
      * @throws EntityNotFoundException если пользователь не найден
      */
+    @CacheEvict(cacheNames = OwnerSummaryCache.NAME, key = "#connectedUser.principal.id")
     public Long save(BookRequest request, Authentication connectedUser) {
         // Получаем пользователя из аутентификационных данных
         User user = (User) connectedUser.getPrincipal();
@@ -80,18 +111,135 @@ public class BookService {
                 .orElseThrow(() -> new EntityNotFoundException("Книга с идентификатором " + bookId + " не найдена"));
     }
 
+    /**
+     * Возвращает несколько книг одним запросом через тот же маппер, что и списки.
+     *
+     * @param bookIds идентификаторы книг, не больше {@link #MAX_BATCH_SIZE}
+     * @return найденные книги в порядке запроса и идентификаторы ненайденных книг
+     * @throws OperationNotPermittedException если запрошено слишком много книг
+     */
+    public BookBatchResponse findAllByIds(List<Long> bookIds) {
+        Set<Long> requestedIds = new LinkedHashSet<>(bookIds);
+        if (requestedIds.size() > MAX_BATCH_SIZE) {
+            throw new OperationNotPermittedException("At most " + MAX_BATCH_SIZE + " books can be requested at once");
+        }
+        Map<Long, BookSummary> books = new HashMap<>();
+        if (!requestedIds.isEmpty()) {
+            for (BookSummary book : bookRepository.findAllSummariesByIds(requestedIds)) {
+                books.put(book.id(), book);
+            }
+        }
+        List<BookResponse> found = new ArrayList<>(books.size());
+        List<Long> missingIds = new ArrayList<>();
+        for (Long bookId : requestedIds) {
+            BookSummary book = books.get(bookId);
+            if (book == null) {
+                missingIds.add(bookId);
+            } else {
+                found.add(bookMapper.toBookResponse(book));
+            }
+        }
+        return new BookBatchResponse(found, missingIds);
+    }
+
+    /**
+     * Валидаторы кэша для {@link #findById(Long)}. Считаются одним легким запросом,
+     * без загрузки связей, чтения обложки и преобразования в ответ.
+     *
+     * @param bookId идентификатор книги
+     * @throws EntityNotFoundException если книга с указанным идентификатором не найдена
+     */
+    public CacheValidator findBookValidator(Long bookId) {
+        BookFingerprint fingerprint = bookRepository.findFingerprintById(bookId)
+                .orElseThrow(() -> new EntityNotFoundException("Книга с идентификатором " + bookId + " не найдена"));
+        return CacheValidator.of(fingerprint.toString(), fingerprint.lastModified());
+    }
+
+    /**
+     * Валидаторы кэша для {@link #findAllBooks(int, int, Boolean, Authentication)}.
+     */
+    public CacheValidator findAllBooksValidator(int page, int size, Boolean available, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").descending());
+        Page<BookFingerprint> fingerprints = bookRepository.findDisplayableBookFingerprints(pageable, user.getId(), available);
+        // Займ не меняет версию книги, поэтому отметки «у вас на руках» входят в ETag отдельно
+        Set<Long> borrowed = activeLoanIndex.borrowedBy(user.getId(), fingerprints.map(BookFingerprint::id).getContent());
+        return validator(fingerprints, "borrowed" + new TreeSet<>(borrowed));
+    }
+
+    /**
+     * Валидаторы кэша для {@link #findAllBooksByOwner(int, int, Authentication)}.
+     */
+    public CacheValidator findAllBooksByOwnerValidator(int page, int size, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").descending());
+        return validator(bookRepository.findOwnerBookFingerprints(pageable, user.getId()));
+    }
+
+    /**
+     * Валидаторы кэша для {@link #findAllBorrowedBooks(int, int, boolean, Authentication)}.
+     */
+    public CacheValidator findAllBorrowedBooksValidator(int page, int size, boolean includeArchived, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").descending());
+        return validator(bookTransactionHistoryRepository.findBorrowedBookFingerprints(
+                pageable, user.getId(), archivedStates(includeArchived)));
+    }
+
+    /**
+     * Валидаторы кэша для {@link #findAllReturnedBooks(int, int, boolean, Authentication)}.
+     */
+    public CacheValidator findAllReturnedBooksValidator(int page, int size, boolean includeArchived, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").descending());
+        return validator(bookTransactionHistoryRepository.findReturnedBookFingerprints(
+                pageable, user.getId(), archivedStates(includeArchived)));
+    }
+
+    /**
+     * Допустимые значения history.archived: без архива запрос читает только горячую секцию истории.
+     */
+    private static List<Boolean> archivedStates(boolean includeArchived) {
+        return includeArchived ? List.of(false, true) : List.of(false);
+    }
+
+    /**
+     * ETag страницы строится по ее параметрам, общему числу элементов и отпечаткам всех записей страницы.
+     * Last-Modified у страниц нет: займы, подтверждения возвратов и уход книги со страницы меняют ответ,
+     * не сдвигая время изменения ее записей, поэтому проверка идет только по If-None-Match.
+     */
+    private CacheValidator validator(Page<BookFingerprint> fingerprints) {
+        return validator(fingerprints, "");
+    }
+
+    /**
+     * @param extra данные ответа, не отраженные в отпечатках
+     */
+    private CacheValidator validator(Page<BookFingerprint> fingerprints, String extra) {
+        StringBuilder content = new StringBuilder()
+                .append(fingerprints.getNumber()).append(':')
+                .append(fingerprints.getSize()).append(':')
+                .append(fingerprints.getTotalElements()).append(extra);
+        for (BookFingerprint fingerprint : fingerprints) {
+            content.append('|').append(fingerprint);
+        }
+        return CacheValidator.of(content.toString(), null);
+    }
+
     /**
      * Метод для получения всех книг, доступных для пользователя.
      * Возвращает страницованный ответ с информацией о книгах.
      *
      * @param page номер страницы
      * @param size размер страницы
+     * @param available фильтр по доступности или null для всех книг
      * @param connectedUser аутентифицированный пользователь
      * @return страницованный ответ с информацией о книгах
      */
     public PageResponse<BookResponse> findAllBooks(
             int page,
             int size,
+            Boolean available,
             Authentication connectedUser
     ) {
         // Получаем аутентифицированного пользователя
@@ -101,13 +249,18 @@ public class BookService {
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").descending());
 
         // Получаем все книги, доступные для пользователя
-        Page<Book> books = bookRepository.findAllDisplayableBooks(pageable, user.getId());
+        Page<BookSummary> books = bookRepository.findAllDisplayableBooks(pageable, user.getId(), available);
 
         // Преобразуем книги в BookResponse и сохраняем в список
         List<BookResponse> bookResponses = books.getContent().stream()
                 .map(bookMapper::toBookResponse)
                 .toList();
 
+        // Отмечаем книги, которые сейчас у пользователя, по индексу текущих займов, без запросов к базе
+        Set<Long> borrowed = activeLoanIndex.borrowedBy(user.getId(), books.map(BookSummary::id).getContent());
+        bookResponses.forEach(response -> response.setBorrowedByUser(borrowed.contains(response.getId())));
+        fillAvailability(bookResponses, false);
+
         // Создаем и возвращаем страницованный ответ с информацией о книгах
         return new PageResponse<>(
                 bookResponses,
@@ -120,6 +273,98 @@ public class BookService {
         );
     }
 
+    /**
+     * Возвращает книги, доступные пользователю, только с запрошенными полями.
+     * Из базы выбираются только нужные столбцы; обложка читается и рейтинг считается, только если они запрошены.
+     *
+     * @param available фильтр по доступности или null для всех книг
+     * @param fields запрошенные поля или null для полного ответа
+     */
+    public PageResponse<BookResponse> findAllBooks(
+            int page,
+            int size,
+            Boolean available,
+            Set<BookField> fields,
+            Authentication connectedUser
+    ) {
+        if (fields == null) {
+            return findAllBooks(page, size, available, connectedUser);
+        }
+        User user = (User) connectedUser.getPrincipal();
+        Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").descending());
+        Specification<Book> specification = displayableFor(user.getId());
+        if (available != null) {
+            specification = specification.and(available(available));
+        }
+        return toPageResponse(bookRepository.findBookFields(specification, fields, CoverRendition.THUMBNAIL, pageable), fields);
+    }
+
+    /**
+     * Возвращает книги пользователя только с запрошенными полями.
+     *
+     * @param fields запрошенные поля или null для полного ответа
+     */
+    public PageResponse<BookResponse> findAllBooksByOwner(
+            int page,
+            int size,
+            Set<BookField> fields,
+            Authentication connectedUser
+    ) {
+        if (fields == null) {
+            return findAllBooksByOwner(page, size, connectedUser);
+        }
+        User user = (User) connectedUser.getPrincipal();
+        Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").descending());
+        return toPageResponse(bookRepository.findBookFields(withOwnerId(user.getId()), fields, CoverRendition.THUMBNAIL, pageable), fields);
+    }
+
+    /**
+     * Заполняет доступность всех книг страницы одним запросом к незакрытым займам.
+     *
+     * @param withBorrower заполнять ли читателя, у которого книга: его видит только владелец
+     */
+    private void fillAvailability(List<BookResponse> books, boolean withBorrower) {
+        if (books.isEmpty()) {
+            return;
+        }
+        Map<Long, String> borrowers = new HashMap<>();
+        List<Long> bookIds = books.stream().map(BookResponse::getId).toList();
+        for (ActiveLoan loan : bookTransactionHistoryRepository.findActiveLoans(bookIds)) {
+            borrowers.putIfAbsent(loan.bookId(), loan.borrower());
+        }
+        for (BookResponse book : books) {
+            book.setAvailable(!borrowers.containsKey(book.getId()));
+            if (withBorrower) {
+                book.setCurrentBorrower(borrowers.get(book.getId()));
+            }
+        }
+    }
+
+    private PageResponse<BookResponse> toPageResponse(Page<Tuple> books, Set<BookField> fields) {
+        return new PageResponse<>(
+                books.getContent().stream()
+                        .map(book -> bookMapper.toBookResponse(book, fields))
+                        .toList(),
+                books.getNumber(),
+                books.getSize(),
+                books.getTotalElements(),
+                books.getTotalPages(),
+                books.isFirst(),
+                books.isLast()
+        );
+    }
+
+    /**
+     * Сводка для раздела «Мои книги» одним запросом. Кэшируется по пользователю; сбрасывается
+     * после изменений его книг, отзывов на них и займов (см. {@link OwnerSummaryCache}).
+     */
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = OwnerSummaryCache.NAME, key = "#connectedUser.principal.id")
+    public OwnerSummaryResponse findOwnerSummary(Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        return OwnerSummaryResponse.of(bookRepository.findOwnerSummary(user.getId()));
+    }
+
     /**
      * Возвращает список книг, принадлежащих указанному пользователю.
      *
@@ -140,13 +385,16 @@ public class BookService {
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").descending());
 
         // Получаем список книг, принадлежащих указанному пользователю
-        Page<Book> books = bookRepository.findAll(withOwnerId(user.getId()), pageable);
+        Page<BookSummary> books = bookRepository.findAllOwnerBooks(pageable, user.getId());
 
         // Преобразуем список книг в список BookResponse
         List<BookResponse> bookResponses = books.getContent().stream()
                 .map(bookMapper::toBookResponse)
                 .toList();
 
+        // Владельцу показываем, у кого сейчас его книги
+        fillAvailability(bookResponses, true);
+
         // Создаем объект PageResponse с данными о книгах
         return new PageResponse<>(
                 bookResponses,
@@ -164,10 +412,11 @@ public class BookService {
      *
      * @param page номер страницы
      * @param size размер страницы
+     * @param includeArchived включать ли закрытые займы, перенесенные в архив
      * @param connectedUser аутентифицированный пользователь
      * @return ответ с забронированными книгами и информацией о странице
      */
-    public PageResponse<BorrowedBookResponse> findAllBorrowedBooks(int page, int size, Authentication connectedUser) {
+    public PageResponse<BorrowedBookResponse> findAllBorrowedBooks(int page, int size, boolean includeArchived, Authentication connectedUser) {
         // Получаем аутентифицированного пользователя
         User user = (User) connectedUser.getPrincipal();
 
@@ -175,7 +424,8 @@ public class BookService {
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").descending());
 
         // Получаем все забронированные книги пользователя
-        Page<BookTransactionHistory> allBorrowedBooks = bookTransactionHistoryRepository.findAllBorrowedBooks(pageable, user.getId());
+        Page<BorrowedBookSummary> allBorrowedBooks = bookTransactionHistoryRepository.findAllBorrowedBooks(
+                pageable, user.getId(), archivedStates(includeArchived));
 
         // Преобразуем забронированные книги в ответную модель
         List<BorrowedBookResponse> bookResponses = allBorrowedBooks.stream()
@@ -194,10 +444,11 @@ public class BookService {
         );
     }
 
-    public PageResponse<BorrowedBookResponse> findAllReturnedBooks(int page, int size, Authentication connectedUser) {
+    public PageResponse<BorrowedBookResponse> findAllReturnedBooks(int page, int size, boolean includeArchived, Authentication connectedUser) {
         User user = (User) connectedUser.getPrincipal();
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").descending());
-        Page<BookTransactionHistory> allBorrowedBooks = bookTransactionHistoryRepository.findAllReturnedBooks(pageable, user.getId());
+        Page<BorrowedBookSummary> allBorrowedBooks = bookTransactionHistoryRepository.findAllReturnedBooks(
+                pageable, user.getId(), archivedStates(includeArchived));
 
         List<BorrowedBookResponse> bookResponses = allBorrowedBooks.stream()
                 .map(bookMapper::toBorrowedBookResponse)
@@ -215,31 +466,156 @@ public class BookService {
 
     }
 
-    public Long updateShareableStatus(Long bookId, Authentication connectedUser) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new EntityNotFoundException("Book not found"));
+    /**
+     * Возвращенные книги пользователя, ожидающие его подтверждения, начиная с самых давних займов.
+     */
+    @Transactional(readOnly = true)
+    public PageResponse<PendingReturnResponse> findPendingReturns(int page, int size, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        Pageable pageable = PageRequest.of(page, size, Sort.by("createdDate").ascending());
+        Page<PendingReturnResponse> pendingReturns = bookTransactionHistoryRepository.findPendingReturns(pageable, user.getId());
+        return new PageResponse<>(
+                pendingReturns.getContent(),
+                pendingReturns.getNumber(),
+                pendingReturns.getSize(),
+                pendingReturns.getTotalElements(),
+                pendingReturns.getTotalPages(),
+                pendingReturns.isFirst(),
+                pendingReturns.isLast()
+        );
+    }
+
+    /**
+     * Подтверждает все ожидающие возвраты книг пользователя одним UPDATE.
+     * Каждый читатель получает уведомление о подтверждении своего займа.
+     *
+     * @return идентификаторы подтвержденных записей истории
+     */
+    public List<Long> approveAllReturns(Authentication connectedUser) {
         User user = (User) connectedUser.getPrincipal();
-        if (!Objects.equals(book.getOwner().getId(), user.getId())) {
-            throw new OperationNotPermittedException("You cannot update others books shareable status");
+        List<ClosedLoan> loans = bookTransactionHistoryRepository.approveAllReturns(user.getId());
+        List<Long> historyIds = new ArrayList<>(loans.size());
+        for (ClosedLoan loan : loans) {
+            activeLoanIndex.releasedAfterCommit(loan.getBorrowerId(), loan.getBookId());
+            eventPublisher.publishEvent(new LoanEvent(LoanEvent.Type.RETURN_APPROVED, loan.getHistoryId()));
+            historyIds.add(loan.getHistoryId());
         }
-        book.setShareable(!book.isShareable());
-        bookRepository.save(book);
+        return historyIds;
+    }
+
+    /**
+     * Переключает флаг общего доступа одним условным UPDATE, без чтения книги.
+     *
+     * @param version ожидаемая версия книги или null, чтобы не проверять ее
+     * @throws EntityNotFoundException если книга не найдена
+     * @throws OperationNotPermittedException если книга принадлежит другому пользователю
+     * @throws StaleVersionException если версия книги не совпала с ожидаемой
+     */
+    @CacheEvict(cacheNames = OwnerSummaryCache.NAME, key = "#connectedUser.principal.id")
+    public Long updateShareableStatus(Long bookId, Long version, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        if (bookRepository.toggleShareable(bookId, user.getId(), version) == 0) {
+            throw rejectedUpdate(bookId, version, user, "You cannot update others books shareable status");
+        }
+        eventPublisher.publishEvent(new BookActivityEvent(BookActivityEvent.Type.UPDATED, bookId));
         return bookId;
     }
 
-    public Long updateArchivedStatus(Long bookId, Authentication connectedUser) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new EntityNotFoundException("Book not found"));
+    /**
+     * Переключает флаг архивации одним условным UPDATE, без чтения книги.
+     *
+     * @param version ожидаемая версия книги или null, чтобы не проверять ее
+     */
+    @CacheEvict(cacheNames = OwnerSummaryCache.NAME, key = "#connectedUser.principal.id")
+    public Long updateArchivedStatus(Long bookId, Long version, Authentication connectedUser) {
         User user = (User) connectedUser.getPrincipal();
-        if (!Objects.equals(book.getOwner().getId(), user.getId())) {
-            throw new OperationNotPermittedException("You cannot update others books archived status");
+        if (bookRepository.toggleArchived(bookId, user.getId(), version) == 0) {
+            throw rejectedUpdate(bookId, version, user, "You cannot update others books archived status");
         }
-        book.setArchived(!book.isArchived());
-        bookRepository.save(book);
+        eventPublisher.publishEvent(new BookActivityEvent(BookActivityEvent.Type.UPDATED, bookId));
         return bookId;
     }
 
+    /**
+     * Устанавливает флаг общего доступа для нескольких книг владельца одним UPDATE.
+     * Версии измененных книг растут, поэтому их ETag тоже меняются.
+     *
+     * @return результат для каждого идентификатора в порядке запроса, без повторов
+     */
+    @CacheEvict(cacheNames = OwnerSummaryCache.NAME, key = "#connectedUser.principal.id")
+    public List<BookStatusResult> updateShareableStatus(BookStatusRequest request, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        Set<Long> bookIds = new LinkedHashSet<>(request.bookIds());
+        return statusResults(bookIds, bookRepository.updateShareable(bookIds, user.getId(), request.value()), user);
+    }
+
+    /**
+     * Устанавливает флаг архивации для нескольких книг владельца одним UPDATE.
+     *
+     * @return результат для каждого идентификатора в порядке запроса, без повторов
+     */
+    @CacheEvict(cacheNames = OwnerSummaryCache.NAME, key = "#connectedUser.principal.id")
+    public List<BookStatusResult> updateArchivedStatus(BookStatusRequest request, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        Set<Long> bookIds = new LinkedHashSet<>(request.bookIds());
+        return statusResults(bookIds, bookRepository.updateArchived(bookIds, user.getId(), request.value()), user);
+    }
+
+    /**
+     * Собирает результаты массового изменения. Причины для неизмененных книг выясняются одним запросом,
+     * и только если такие книги есть.
+     */
+    private List<BookStatusResult> statusResults(Set<Long> bookIds, List<Long> updatedIds, User user) {
+        Set<Long> updated = new HashSet<>(updatedIds);
+        for (Long bookId : updated) {
+            eventPublisher.publishEvent(new BookActivityEvent(BookActivityEvent.Type.UPDATED, bookId));
+        }
+        Map<Long, BookGuard> guards = new HashMap<>();
+        if (updated.size() < bookIds.size()) {
+            List<Long> rejected = bookIds.stream().filter(bookId -> !updated.contains(bookId)).toList();
+            for (BookGuard guard : bookRepository.findGuardsByIds(rejected)) {
+                guards.put(guard.id(), guard);
+            }
+        }
+        List<BookStatusResult> results = new ArrayList<>(bookIds.size());
+        for (Long bookId : bookIds) {
+            BookStatusResult.Status status;
+            if (updated.contains(bookId)) {
+                status = BookStatusResult.Status.UPDATED;
+            } else if (!guards.containsKey(bookId)) {
+                status = BookStatusResult.Status.NOT_FOUND;
+            } else if (!Objects.equals(guards.get(bookId).ownerId(), user.getId())) {
+                status = BookStatusResult.Status.NOT_PERMITTED;
+            } else {
+                status = BookStatusResult.Status.UNCHANGED;
+            }
+            results.add(new BookStatusResult(bookId, status));
+        }
+        return results;
+    }
+
+    /**
+     * Выясняет, почему условный UPDATE не изменил книгу. Выполняется только при отказе.
+     */
+    private RuntimeException rejectedUpdate(Long bookId, Long version, User user, String notOwnerMessage) {
+        BookGuard guard = bookRepository.findGuardById(bookId)
+                .orElseThrow(() -> new EntityNotFoundException("Book not found"));
+        if (!Objects.equals(guard.ownerId(), user.getId())) {
+            return new OperationNotPermittedException(notOwnerMessage);
+        }
+        return new StaleVersionException("Book version is " + guard.version() + ", expected " + version);
+    }
+
     public Long borrowBook(Long bookId, Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+
+        // Повторная попытка отклоняется по индексу текущих займов до загрузки книги. Индекс мог устареть
+        // (возврат подтвержден на другом узле, а уведомление еще не дошло), поэтому попадание подтверждается по базе
+        final boolean indexed = activeLoanIndex.isBorrowedBy(user.getId(), bookId);
+        if (indexed && bookTransactionHistoryRepository.isAlreadyBorrowedByUser(bookId, user.getId())) {
+            throw new OperationNotPermittedException("You have already borrowed this book");
+        }
+
         Book book = bookRepository.findById(bookId)
                 .orElseThrow(() -> new EntityNotFoundException("Book not found"));
 
@@ -247,74 +623,100 @@ public class BookService {
             throw new OperationNotPermittedException("Book is not available for borrowing");
         }
 
-        User user = (User) connectedUser.getPrincipal();
-
         if (Objects.equals(book.getOwner().getId(), user.getId())) {
             throw new OperationNotPermittedException("You cannot borrow own book");
         }
 
-        final boolean isAlreadyBorrowed = bookTransactionHistoryRepository.isAlreadyBorrowedByUser(bookId, user.getId());
-
-        if (isAlreadyBorrowed) {
+        // При попадании в индекс займ уже проверен по базе выше
+        if (!indexed && bookTransactionHistoryRepository.isAlreadyBorrowedByUser(bookId, user.getId())) {
             throw new OperationNotPermittedException("You have already borrowed this book");
         }
 
         BookTransactionHistory bookTransactionHistory = BookTransactionHistory.builder()
                 .user(user)
                 .book(book)
+                .ownerId(book.getOwner().getId())
                 .returned(false)
                 .returnApproved(false)
                 .build();
-        return bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
+        Long historyId = bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
+        activeLoanIndex.borrowedAfterCommit(user.getId(), bookId);
+        eventPublisher.publishEvent(new LoanEvent(LoanEvent.Type.BORROWED, historyId));
+        eventPublisher.publishEvent(new BookActivityEvent(BookActivityEvent.Type.BORROWED, bookId));
+        return historyId;
     }
 
+    /**
+     * Отмечает займ возвращенным одним UPDATE ... RETURNING. Книга читается, только если отметить не удалось.
+     */
     public Long returnBorrowedBook(Long bookId, Authentication connectedUser) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new EntityNotFoundException("Book not found"));
-        if(book.isArchived() || !book.isShareable()) {
-            throw new OperationNotPermittedException("The requested book is archived or not shareable");
-        }
-
         User user = (User) connectedUser.getPrincipal();
-
-        if (Objects.equals(book.getOwner().getId(), user.getId())) {
-            throw new OperationNotPermittedException("You cannot borrow own book");
-        }
-
-        BookTransactionHistory bookTransactionHistory = bookTransactionHistoryRepository.findByBookIdAndUserId(bookId, user.getId())
-                .orElseThrow(() -> new OperationNotPermittedException("You have not borrowed this book yet"));
-
-        bookTransactionHistory.setReturned(true);
-        return bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
+        Long historyId = bookTransactionHistoryRepository.markReturned(bookId, user.getId())
+                .orElseThrow(() -> {
+                    BookGuard guard = findAvailableGuard(bookId);
+                    if (Objects.equals(guard.ownerId(), user.getId())) {
+                        return new OperationNotPermittedException("You cannot borrow own book");
+                    }
+                    return new OperationNotPermittedException("You have not borrowed this book yet");
+                });
+        eventPublisher.publishEvent(new LoanEvent(LoanEvent.Type.RETURNED, historyId));
+        return historyId;
     }
 
+    /**
+     * Подтверждает возврат книги владельцем одним UPDATE ... RETURNING.
+     */
     public Long approveReturnBorrowedBook(Long bookId, Authentication connectedUser) {
-        Book book = bookRepository.findById(bookId)
-                .orElseThrow(() -> new EntityNotFoundException("Book not found"));
-        if(book.isArchived() || !book.isShareable()) {
-            throw new OperationNotPermittedException("The requested book is archived or not shareable");
-        }
-
         User user = (User) connectedUser.getPrincipal();
+        ClosedLoan loan = bookTransactionHistoryRepository.approveReturn(bookId, user.getId())
+                .orElseThrow(() -> {
+                    BookGuard guard = findAvailableGuard(bookId);
+                    if (!Objects.equals(guard.ownerId(), user.getId())) {
+                        return new OperationNotPermittedException("You cannot approve the return of others books");
+                    }
+                    return new OperationNotPermittedException("The book is not returned yet. You cannot approve its return");
+                });
+        activeLoanIndex.releasedAfterCommit(loan.getBorrowerId(), loan.getBookId());
+        eventPublisher.publishEvent(new LoanEvent(LoanEvent.Type.RETURN_APPROVED, loan.getHistoryId()));
+        return loan.getHistoryId();
+    }
 
-        if (Objects.equals(book.getOwner().getId(), user.getId())) {
-            throw new OperationNotPermittedException("You cannot borrow own book");
+    private BookGuard findAvailableGuard(Long bookId) {
+        BookGuard guard = bookRepository.findGuardById(bookId)
+                .orElseThrow(() -> new EntityNotFoundException("Book not found"));
+        if (guard.archived() || !guard.shareable()) {
+            throw new OperationNotPermittedException("The requested book is archived or not shareable");
         }
-
-        BookTransactionHistory bookTransactionHistory = bookTransactionHistoryRepository.findByBookIdAndOwnerId(bookId, user.getId())
-                .orElseThrow(() -> new OperationNotPermittedException("The book is not returned yet. You cannot approve its return"));
-
-        bookTransactionHistory.setReturnApproved(true);
-        return bookTransactionHistoryRepository.save(bookTransactionHistory).getId();
-
+        return guard;
     }
 
     public void uploadBookCoverPicture(Long bookId, MultipartFile file, Authentication connectedUser) {
         Book book = bookRepository.findById(bookId)
                 .orElseThrow(() -> new EntityNotFoundException("Book not found"));
-        User user = (User) connectedUser.getPrincipal();
-        var bookCover = fileStorageService.saveFile(file, user.getId());
+        replaceCover(book, fileStorageService.saveFile(file));
+    }
+
+    /**
+     * Сохраняет обложку из тела запроса. Книга ищется до чтения тела, чтобы не принимать файл для несуществующей книги.
+     *
+     * @param size        размер из Content-Length или -1, если он неизвестен
+     * @param contentHash SHA-256 содержимого, заявленный клиентом, или null
+     */
+    public void uploadBookCoverPicture(
+            Long bookId, InputStream content, long size, String contentHash, Authentication connectedUser) {
+        Book book = bookRepository.findById(bookId)
+                .orElseThrow(() -> new EntityNotFoundException("Book not found"));
+        replaceCover(book, fileStorageService.saveFile(content, size, contentHash));
+    }
+
+    private void replaceCover(Book book, String bookCover) {
         book.setBookCover(bookCover);
+        // Копии прежней обложки больше не актуальны, новые создаются асинхронно после фиксации транзакции
+        book.setCoverThumbnail(null);
+        book.setCoverDetail(null);
         bookRepository.save(book);
+        if (bookCover != null) {
+            eventPublisher.publishEvent(new CoverUploadedEvent(book.getId(), bookCover));
+        }
     }
 }
@@ -1,5 +1,10 @@
 package com.example.book_back.book;
 
+import com.example.book_back.history.BookTransactionHistory;
+import jakarta.persistence.criteria.AbstractQuery;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import org.springframework.data.jpa.domain.Specification;
 
 public class BookSpecification {
@@ -18,4 +23,45 @@ public class BookSpecification {
             // Затем мы сравниваем значение атрибута "id" с переданным идентификатором владельца.
            criteriaBuilder.equal(root.get("owner").get("id").as(Long.class), ownerId);
     }
+
+    /**
+     * Создает спецификацию для книг, доступных пользователю: не архивированы, доступны для общего доступа
+     * и принадлежат другим пользователям. Условие совпадает с {@link BookRepository#findAllDisplayableBooks}.
+     * @param userId идентификатор пользователя
+     * @return спецификация для поиска книг
+     */
+    public static Specification<Book> displayableFor(Long userId) {
+        return (root, query, criteriaBuilder) -> criteriaBuilder.and(
+                criteriaBuilder.isFalse(root.get("archived")),
+                criteriaBuilder.isTrue(root.get("shareable")),
+                criteriaBuilder.notEqual(root.get("owner").get("id"), userId)
+        );
+    }
+
+    /**
+     * Создает спецификацию для книг по доступности. Условие совпадает с параметром available
+     * {@link BookRepository#findAllDisplayableBooks}.
+     * @param available true - книги без незакрытого займа, false - выданные книги
+     * @return спецификация для поиска книг
+     */
+    public static Specification<Book> available(boolean available) {
+        return (root, query, criteriaBuilder) -> {
+            var exists = criteriaBuilder.exists(activeLoan(root, query, criteriaBuilder));
+            return available ? criteriaBuilder.not(exists) : exists;
+        };
+    }
+
+    /**
+     * Подзапрос незакрытых займов книги; выполняется по частичному индексу history_active_book_idx.
+     */
+    static Subquery<Long> activeLoan(Root<Book> book, AbstractQuery<?> query, CriteriaBuilder criteriaBuilder) {
+        Subquery<Long> loan = query.subquery(Long.class);
+        Root<BookTransactionHistory> history = loan.from(BookTransactionHistory.class);
+        return loan.select(history.get("id"))
+                .where(
+                        criteriaBuilder.equal(history.get("book"), book),
+                        criteriaBuilder.isFalse(history.get("returnApproved")),
+                        criteriaBuilder.isFalse(history.get("archived"))
+                );
+    }
 }
@@ -0,0 +1,25 @@
+package com.example.book_back.book;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * Массовое изменение флага книг владельца.
+ *
+ * @param bookIds идентификаторы книг, не больше {@link #MAX_BOOKS}
+ * @param value   новое значение флага
+ */
+public record BookStatusRequest(
+        @NotNull(message = "104")
+        @NotEmpty(message = "104")
+        @Size(max = BookStatusRequest.MAX_BOOKS, message = "105")
+        List<@NotNull(message = "104") Long> bookIds,
+        @NotNull(message = "106")
+        Boolean value
+) {
+
+    public static final int MAX_BOOKS = 500;
+}
@@ -0,0 +1,23 @@
+package com.example.book_back.book;
+
+/**
+ * Результат массового изменения флага для одной книги.
+ */
+public record BookStatusResult(Long bookId, Status status) {
+
+    public enum Status {
+        /**
+         * Флаг изменен, версия книги увеличена.
+         */
+        UPDATED,
+        /**
+         * Флаг уже имел нужное значение, книга не изменялась.
+         */
+        UNCHANGED,
+        /**
+         * Книга принадлежит другому пользователю.
+         */
+        NOT_PERMITTED,
+        NOT_FOUND
+    }
+}
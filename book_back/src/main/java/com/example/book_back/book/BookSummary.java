@@ -0,0 +1,22 @@
+package com.example.book_back.book;
+
+/**
+ * Строка списка книг, выбранная одним SQL-запросом вместе с именем владельца и средним рейтингом.
+ * Создается конструктором в JPQL, поэтому не попадает в контекст персистентности.
+ *
+ * @param cover путь к миниатюре обложки или к оригиналу, если миниатюра еще не готова
+ * @param rate  средняя оценка без округления
+ */
+public record BookSummary(
+        Long id,
+        String title,
+        String authorName,
+        String isbn,
+        String synopsis,
+        String owner,
+        String cover,
+        Double rate,
+        boolean archived,
+        boolean shareable
+) {
+}
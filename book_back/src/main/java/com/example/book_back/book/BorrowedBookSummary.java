@@ -0,0 +1,18 @@
+package com.example.book_back.book;
+
+/**
+ * Строка списка взятых или возвращенных книг, выбранная одним SQL-запросом вместе со средним рейтингом книги.
+ *
+ * @param id   идентификатор книги
+ * @param rate средняя оценка без округления
+ */
+public record BorrowedBookSummary(
+        Long id,
+        String title,
+        String authorName,
+        String isbn,
+        Double rate,
+        boolean returned,
+        boolean returnApproved
+) {
+}
@@ -0,0 +1,10 @@
+package com.example.book_back.book;
+
+/**
+ * Публикуется после загрузки новой обложки книги.
+ *
+ * @param bookId    идентификатор книги
+ * @param bookCover путь к оригиналу обложки
+ */
+public record CoverUploadedEvent(Long bookId, String bookCover) {
+}
@@ -0,0 +1,20 @@
+package com.example.book_back.book;
+
+/**
+ * Книга с ее оценкой для рейтинга. Смысл score и count зависит от запроса: взвешенная оценка и число отзывов
+ * или затухающее число займов и число займов в окне.
+ */
+public interface LeaderboardBook {
+
+    Long getBookId();
+
+    String getTitle();
+
+    String getAuthorName();
+
+    boolean isDisplayable();
+
+    double getScore();
+
+    long getCount();
+}
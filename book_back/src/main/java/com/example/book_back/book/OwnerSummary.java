@@ -0,0 +1,44 @@
+package com.example.book_back.book;
+
+/**
+ * Сводка для раздела «Мои книги», считается одним запросом {@link BookRepository#findOwnerSummary(Long)}.
+ */
+public interface OwnerSummary {
+
+    /**
+     * Книги пользователя.
+     */
+    long getOwnedBooks();
+
+    /**
+     * Книги пользователя, доступные для займа: не архивированы и открыты для общего доступа.
+     */
+    long getSharedBooks();
+
+    long getArchivedBooks();
+
+    /**
+     * Книги пользователя, которые сейчас на руках у читателей.
+     */
+    long getLentOut();
+
+    /**
+     * Возвращенные книги пользователя, возврат которых ждет подтверждения.
+     */
+    long getAwaitingApproval();
+
+    /**
+     * Чужие книги, которые пользователь взял и еще не вернул.
+     */
+    long getBorrowed();
+
+    /**
+     * Отзывы на книги пользователя.
+     */
+    long getFeedbackCount();
+
+    /**
+     * Средняя оценка по всем отзывам на книги пользователя, 0 при отсутствии отзывов.
+     */
+    double getAverageRating();
+}
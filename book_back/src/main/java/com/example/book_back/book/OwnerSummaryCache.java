@@ -0,0 +1,36 @@
+package com.example.book_back.book;
+
+import com.example.book_back.notification.LoanNotification;
+import lombok.RequiredArgsConstructor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Сброс кэшированных сводок {@link BookService#findOwnerSummary}. Изменения книг и отзывов сбрасывают сводку
+ * владельца на этом узле, уведомления о займах приходят со всех узлов и сбрасывают сводки обоих участников.
+ * На других узлах сводка после изменения книги или отзыва устаревает по времени жизни кэша
+ * ({@code application.cache.ttl}).
+ */
+@Component
+@RequiredArgsConstructor
+public class OwnerSummaryCache {
+
+    public static final String NAME = "ownerSummary";
+
+    private final CacheManager cacheManager;
+
+    public void evict(Long userId) {
+        Cache cache = cacheManager.getCache(NAME);
+        if (cache != null && userId != null) {
+            cache.evict(userId);
+        }
+    }
+
+    @EventListener
+    public void onLoanNotification(LoanNotification notification) {
+        evict(notification.ownerId());
+        evict(notification.borrowerId());
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.book_back.book;
+
+/**
+ * Сводка для раздела «Мои книги». Значения полей описаны в {@link OwnerSummary}.
+ */
+public record OwnerSummaryResponse(
+        long ownedBooks,
+        long sharedBooks,
+        long archivedBooks,
+        long lentOut,
+        long awaitingApproval,
+        long borrowed,
+        long feedbackCount,
+        double averageRating
+) {
+
+    public static OwnerSummaryResponse of(OwnerSummary summary) {
+        return new OwnerSummaryResponse(
+                summary.getOwnedBooks(),
+                summary.getSharedBooks(),
+                summary.getArchivedBooks(),
+                summary.getLentOut(),
+                summary.getAwaitingApproval(),
+                summary.getBorrowed(),
+                summary.getFeedbackCount(),
+                Math.round(summary.getAverageRating() * 10.0) / 10.0
+        );
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.book_back.book;
+
+import java.time.LocalDateTime;
+
+/**
+ * Возвращенная книга, возврат которой ждет подтверждения владельцем.
+ *
+ * @param historyId   идентификатор записи истории займов
+ * @param borrowedAt  когда книгу взяли
+ * @param returnedAt  когда читатель отметил возврат
+ */
+public record PendingReturnResponse(
+        Long historyId,
+        Long bookId,
+        String title,
+        String authorName,
+        String isbn,
+        Long borrowerId,
+        String borrowerName,
+        LocalDateTime borrowedAt,
+        LocalDateTime returnedAt
+) {
+}
@@ -0,0 +1,13 @@
+package com.example.book_back.book;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.NoArgsConstructor;
+
+/**
+ * Ответ с запрошенными параметром fields полями книги. Незапрошенные поля остаются null и не сериализуются;
+ * полный {@link BookResponse} по-прежнему отдает все поля.
+ */
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SparseBookResponse extends BookResponse {
+}
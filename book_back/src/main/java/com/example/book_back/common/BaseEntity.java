@@ -37,5 +37,11 @@ public class BaseEntity {
     @LastModifiedBy
     @Column(name = "last_modified_by", insertable = false)
     private Long lastModifiedBy;
+    /**
+     * Версия для оптимистичной блокировки и ETag. Массовые UPDATE-запросы должны увеличивать ее сами.
+     */
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
 
 }
@@ -0,0 +1,28 @@
+package com.example.book_back.common;
+
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Валидаторы для условных GET-запросов (If-None-Match / If-Modified-Since).
+ *
+ * @param etag         слабый ETag
+ * @param lastModified время последнего изменения в миллисекундах или -1, если неизвестно
+ */
+public record CacheValidator(String etag, long lastModified) {
+
+    /**
+     * @param fingerprint  строка, которая меняется при любом изменении ответа
+     * @param lastModified время последнего изменения или null
+     */
+    public static CacheValidator of(String fingerprint, LocalDateTime lastModified) {
+        String etag = "W/\"" + DigestUtils.md5DigestAsHex(fingerprint.getBytes(StandardCharsets.UTF_8)) + "\"";
+        long lastModifiedMillis = lastModified == null
+                ? -1
+                : lastModified.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return new CacheValidator(etag, lastModifiedMillis);
+    }
+}
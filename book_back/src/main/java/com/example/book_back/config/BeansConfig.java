@@ -1,11 +1,14 @@
 package com.example.book_back.config;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.domain.AuditorAware;
 import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -20,6 +23,7 @@ import org.springframework.web.filter.CorsFilter;
 import java.util.Arrays;
 import java.util.List;
 
+@Slf4j
 @Configuration
 @RequiredArgsConstructor
 public class BeansConfig {
@@ -51,6 +55,54 @@ public class BeansConfig {
     public AuthenticationManager authenticationManager(AuthenticationConfiguration config) throws Exception {
         return config.getAuthenticationManager();
     }
+
+    /**
+     * Пул по умолчанию для @Async (отправка писем). Объявлен явно, так как при наличии
+     * собственного пула обложек автоконфигурация Spring Boot свой пул не создает.
+     */
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(ThreadPoolTaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    /**
+     * Ограниченный пул для создания копий обложек: тяжелое декодирование больших изображений
+     * не должно отнимать потоки обработки запросов. При переполнении очереди задача отбрасывается,
+     * ответы продолжают отдавать оригинал обложки, а копии позже создает
+     * {@link com.example.book_back.book.BookCoverRenditionListener#retryMissingRenditions()}.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor coverRenditionExecutor(
+            @Value("${application.file.renditions.pool-size:2}") int poolSize,
+            @Value("${application.file.renditions.queue-capacity:100}") int queueCapacity
+    ) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("cover-rendition-");
+        executor.setRejectedExecutionHandler((task, pool) ->
+                log.warn("Cover rendition queue is full, task discarded and will be retried by the rendition sweep"));
+        return executor;
+    }
+
+    /**
+     * Пул для записи SSE-уведомлений в сокеты: на подписчика одновременно выполняется не больше одной задачи.
+     * При переполнении очереди выбрасывается TaskRejectedException, и хаб отключает подписчика.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor notificationExecutor(
+            @Value("${application.notifications.pool-size:4}") int poolSize,
+            @Value("${application.notifications.queue-capacity:1000}") int queueCapacity
+    ) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("notification-");
+        return executor;
+    }
+
     @Bean
     public CorsFilter corsFilter() {
         final UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
@@ -0,0 +1,37 @@
+package com.example.book_back.config;
+
+import com.example.book_back.book.OwnerSummaryCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    /**
+     * Кэши с фиксированным набором имен. Внутри транзакции запись и сброс откладываются до ее фиксации,
+     * иначе параллельный запрос успел бы закэшировать еще не измененные данные.
+     * Записи устаревают через {@code application.cache.ttl}: изменения книг и отзывов на других узлах
+     * этот кэш не сбрасывают.
+     */
+    @Bean
+    public CacheManager cacheManager(@Value("${application.cache.ttl:PT1M}") Duration ttl) {
+        ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager() {
+            @Override
+            protected ConcurrentMapCache createConcurrentMapCache(String name) {
+                return new ExpiringConcurrentMapCache(name, ttl);
+            }
+        };
+        cacheManager.setCacheNames(List.of(OwnerSummaryCache.NAME));
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.book_back.config;
+
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link ConcurrentMapCache}, записи которого устаревают через заданное время после записи.
+ * Сбросы кэша выполняются только на своем узле, поэтому время жизни ограничивает, как долго узел
+ * отдает данные, измененные на другом узле.
+ */
+class ExpiringConcurrentMapCache extends ConcurrentMapCache {
+
+    private final long ttlNanos;
+
+    ExpiringConcurrentMapCache(String name, Duration ttl) {
+        super(name, new ConcurrentHashMap<>(256), true);
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Значение в хранилище вместе с моментом устаревания по {@link System#nanoTime()}.
+     */
+    private record Expiring(Object value, long expiresAt) {
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Object stored = super.lookup(key);
+        if (stored instanceof Expiring expiring && expiring.isExpired()) {
+            getNativeCache().remove(key, stored);
+            return null;
+        }
+        return stored;
+    }
+
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        // Устаревшее значение убирается, иначе computeIfAbsent вернул бы его
+        lookup(key);
+        return super.get(key, valueLoader);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        lookup(key);
+        return super.putIfAbsent(key, value);
+    }
+
+    @Override
+    protected Object toStoreValue(Object userValue) {
+        return new Expiring(super.toStoreValue(userValue), System.nanoTime() + ttlNanos);
+    }
+
+    @Override
+    protected Object fromStoreValue(Object storeValue) {
+        return super.fromStoreValue(storeValue instanceof Expiring expiring ? expiring.value() : storeValue);
+    }
+}
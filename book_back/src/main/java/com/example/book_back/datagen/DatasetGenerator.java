@@ -0,0 +1,350 @@
+package com.example.book_back.datagen;
+
+import com.example.book_back.feedback.RatingHistogramStore;
+import com.example.book_back.history.ActiveLoanIndex;
+import com.example.book_back.role.Role;
+import com.example.book_back.role.RoleRepository;
+import com.example.book_back.user.User;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Генератор больших синтетических наборов данных для нагрузочных тестов, бенчмарков и проверки планов запросов.
+ * Популярность книг и число книг у владельцев подчиняются степенному закону, у активных читателей
+ * длинная история займов. Данные загружаются через COPY и при одинаковом seed получаются одинаковыми.
+ */
+@Slf4j
+@Service
+@Profile("datagen")
+@RequiredArgsConstructor
+public class DatasetGenerator {
+
+    public static final String PASSWORD = "datagen-password";
+
+    /**
+     * Опорная дата, от которой отсчитываются все даты набора (вместо now(), чтобы набор был детерминированным).
+     */
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final int HISTORY_DAYS = 3 * 365;
+    private static final double[] NOTE_WEIGHTS = {0.05, 0.10, 0.20, 0.35, 0.30};
+    /**
+     * Сколько раз перевыбирается книга незакрытого займа, если она уже на руках у читателя.
+     */
+    private static final int MAX_BOOK_REDRAWS = 16;
+    private static final int MAX_LOAN_MINUTES = 30 * 24 * 60;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final RoleRepository roleRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final RatingHistogramStore ratingHistogramStore;
+    private final ActiveLoanIndex activeLoanIndex;
+
+    /**
+     * Параметры набора данных.
+     *
+     * @param seed                 зерно генератора случайных чисел
+     * @param users                число пользователей
+     * @param books                число книг
+     * @param feedbacks            число отзывов
+     * @param histories            число записей истории займов
+     * @param popularityExponent   показатель Ципфа для популярности книг
+     * @param ownerExponent        показатель Ципфа для распределения книг по владельцам
+     * @param readerExponent       показатель Ципфа для активности читателей
+     * @param truncate             очищать ли таблицы перед загрузкой
+     */
+    public record DatasetSpec(
+            long seed,
+            int users,
+            int books,
+            int feedbacks,
+            int histories,
+            double popularityExponent,
+            double ownerExponent,
+            double readerExponent,
+            boolean truncate
+    ) {
+    }
+
+    public void generate(DatasetSpec spec) throws SQLException {
+        Long existingBooks = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM book_t", Long.class);
+        if (existingBooks != null && existingBooks > 0) {
+            if (!spec.truncate()) {
+                log.warn("book_t is not empty, dataset generation skipped (set application.datagen.truncate=true to replace data)");
+                return;
+            }
+            jdbcTemplate.execute("TRUNCATE feedback_t, book_transaction_history_t, book_t, token, user_t_roles, user_t CASCADE");
+        }
+
+        Long roleId = roleRepository.findByName("USER")
+                .orElseGet(() -> roleRepository.save(Role.builder().name("USER").build()))
+                .getId();
+        // BCrypt намеренно медленный, поэтому хэш считаем один раз для всех пользователей
+        String encodedPassword = passwordEncoder.encode(PASSWORD);
+
+        long started = System.currentTimeMillis();
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            try {
+                copyUsers(pgConnection, spec, roleId, encodedPassword);
+                long[] bookOwners = copyBooks(pgConnection, spec);
+                copyFeedbacks(pgConnection, spec, bookOwners);
+                copyHistories(pgConnection, spec, bookOwners);
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+
+        resetSequences();
+        // COPY не проходит через FeedbackService, поэтому счетчики оценок пересчитываются целиком
+        ratingHistogramStore.rebuild();
+        jdbcTemplate.execute("ANALYZE user_t, book_t, feedback_t, book_transaction_history_t, book_rating_stripe_t");
+        activeLoanIndex.rebuild();
+        log.info("Dataset generated in {} ms: {} users, {} books, {} feedbacks, {} histories",
+                System.currentTimeMillis() - started, spec.users(), spec.books(), spec.feedbacks(), spec.histories());
+    }
+
+    private void copyUsers(PGConnection connection, DatasetSpec spec, Long roleId, String encodedPassword) throws SQLException {
+        SplittableRandom random = new SplittableRandom(spec.seed());
+        try (CopyWriter users = new CopyWriter(connection,
+                "COPY user_t (id, first_name, last_name, birth_date, email, password, account_locked, enabled, created_date) FROM STDIN")) {
+            for (long id = 1; id <= spec.users(); id++) {
+                users.row(id,
+                        "First" + id,
+                        "Last" + id,
+                        EPOCH.toLocalDate().minusDays(6_570 + random.nextInt(18_250)),
+                        "user" + id + "@datagen.example",
+                        encodedPassword,
+                        false,
+                        true,
+                        EPOCH.minusDays(HISTORY_DAYS).plusMinutes(id));
+            }
+        }
+        try (CopyWriter roles = new CopyWriter(connection, "COPY user_t_roles (user_id, roles_id) FROM STDIN")) {
+            for (long id = 1; id <= spec.users(); id++) {
+                roles.row(id, roleId);
+            }
+        }
+    }
+
+    /**
+     * @return массив владельцев книг: индекс - идентификатор книги минус один
+     */
+    private long[] copyBooks(PGConnection connection, DatasetSpec spec) throws SQLException {
+        SplittableRandom random = new SplittableRandom(spec.seed() + 1);
+        ZipfDistribution owners = new ZipfDistribution(spec.users(), spec.ownerExponent());
+        long[] bookOwners = new long[spec.books()];
+        try (CopyWriter books = new CopyWriter(connection,
+                "COPY book_t (id, title, author_name, isbn, synopsis, archived, shareable, owner_id, created_date, created_by, version) FROM STDIN")) {
+            for (int index = 0; index < spec.books(); index++) {
+                long id = index + 1L;
+                long ownerId = owners.sample(random) + 1L;
+                bookOwners[index] = ownerId;
+                books.row(id,
+                        "Book " + id,
+                        "Author " + random.nextInt(Math.max(1, spec.books() / 10)),
+                        String.format("978-%010d", id),
+                        "Synopsis of book " + id,
+                        random.nextDouble() < 0.05,
+                        random.nextDouble() < 0.90,
+                        ownerId,
+                        randomDate(random),
+                        ownerId,
+                        0L);
+            }
+        }
+        return bookOwners;
+    }
+
+    private void copyFeedbacks(PGConnection connection, DatasetSpec spec, long[] bookOwners) throws SQLException {
+        SplittableRandom random = new SplittableRandom(spec.seed() + 2);
+        ZipfDistribution popularity = new ZipfDistribution(spec.books(), spec.popularityExponent());
+        try (CopyWriter feedbacks = new CopyWriter(connection,
+                "COPY feedback_t (id, note, comment, book_id, created_date, created_by, version) FROM STDIN")) {
+            for (long id = 1; id <= spec.feedbacks(); id++) {
+                int bookIndex = popularity.sample(random);
+                feedbacks.row(id,
+                        (double) randomNote(random),
+                        "Feedback " + id,
+                        bookIndex + 1L,
+                        randomDate(random),
+                        randomNonOwner(random, spec.users(), bookOwners[bookIndex]),
+                        0L);
+            }
+        }
+    }
+
+    private void copyHistories(PGConnection connection, DatasetSpec spec, long[] bookOwners) throws SQLException {
+        SplittableRandom random = new SplittableRandom(spec.seed() + 3);
+        ZipfDistribution popularity = new ZipfDistribution(spec.books(), spec.popularityExponent());
+        ZipfDistribution readers = new ZipfDistribution(spec.users(), spec.readerExponent());
+        // Как и в приложении, у читателя не больше одного незакрытого займа одной книги
+        Map<Long, Set<Integer>> openBooksByUser = new HashMap<>();
+        try (CopyWriter histories = new CopyWriter(connection,
+                "COPY book_transaction_history_t (id, user_id, book_id, owner_id, returned, return_approved, created_date, created_by, "
+                        + "last_modified_date, last_modified_by, version) FROM STDIN")) {
+            for (long id = 1; id <= spec.histories(); id++) {
+                int bookIndex = popularity.sample(random);
+                long userId = readers.sample(random) + 1L;
+                if (userId == bookOwners[bookIndex]) {
+                    userId = randomNonOwner(random, spec.users(), bookOwners[bookIndex]);
+                }
+                // Записи идут по возрастанию даты: последние несколько процентов - еще не закрытые займы
+                double position = (double) id / spec.histories();
+                boolean returned = position < 0.95 || random.nextDouble() < 0.3;
+                boolean returnApproved = returned && (position < 0.98 || random.nextBoolean());
+                if (!returnApproved) {
+                    Set<Integer> openBooks = openBooksByUser.computeIfAbsent(userId, user -> new HashSet<>());
+                    for (int attempt = 0; attempt < MAX_BOOK_REDRAWS
+                            && (openBooks.contains(bookIndex) || bookOwners[bookIndex] == userId); attempt++) {
+                        bookIndex = popularity.sample(random);
+                    }
+                    if (bookOwners[bookIndex] == userId || !openBooks.add(bookIndex)) {
+                        // Свободной книги не нашлось: займ записывается закрытым
+                        returned = true;
+                        returnApproved = true;
+                    }
+                }
+                LocalDateTime createdDate = EPOCH.minusDays(HISTORY_DAYS).plusSeconds((long) (position * HISTORY_DAYS * 86_400L));
+                // Возврат и его подтверждение обновляют last_modified_date, по ней займы уходят в архив
+                LocalDateTime lastModifiedDate = null;
+                Long lastModifiedBy = null;
+                if (returned) {
+                    LocalDateTime closed = createdDate.plusMinutes(random.nextInt(60, MAX_LOAN_MINUTES));
+                    lastModifiedDate = closed.isAfter(EPOCH) ? EPOCH : closed;
+                    lastModifiedBy = returnApproved ? bookOwners[bookIndex] : userId;
+                }
+                histories.row(id,
+                        userId,
+                        bookIndex + 1L,
+                        bookOwners[bookIndex],
+                        returned,
+                        returnApproved,
+                        createdDate,
+                        userId,
+                        lastModifiedDate,
+                        lastModifiedBy,
+                        0L);
+            }
+        }
+    }
+
+    private void resetSequences() {
+        // user_t использует последовательность Hibernate: следующий блок идентификаторов должен начинаться после MAX(id)
+        jdbcTemplate.execute("SELECT setval('user_t_seq', (SELECT COALESCE(MAX(id), 0) + " + User.ID_ALLOCATION_SIZE + " FROM user_t))");
+        for (String table : new String[]{"book_t", "feedback_t", "book_transaction_history_t"}) {
+            jdbcTemplate.execute("SELECT setval(pg_get_serial_sequence('" + table + "', 'id'), "
+                    + "(SELECT COALESCE(MAX(id), 0) + 1 FROM " + table + "), false)");
+        }
+    }
+
+    private static LocalDateTime randomDate(SplittableRandom random) {
+        return EPOCH.minusSeconds(random.nextLong(HISTORY_DAYS * 86_400L));
+    }
+
+    private static int randomNote(SplittableRandom random) {
+        double value = random.nextDouble();
+        for (int i = 0; i < NOTE_WEIGHTS.length; i++) {
+            value -= NOTE_WEIGHTS[i];
+            if (value < 0) {
+                return i + 1;
+            }
+        }
+        return NOTE_WEIGHTS.length;
+    }
+
+    private static long randomNonOwner(SplittableRandom random, int users, long ownerId) {
+        long userId;
+        do {
+            userId = random.nextInt(users) + 1L;
+        } while (userId == ownerId && users > 1);
+        return userId;
+    }
+
+    /**
+     * Буферизованная запись строк в COPY ... FROM STDIN в текстовом формате.
+     */
+    private static class CopyWriter implements AutoCloseable {
+
+        private static final int FLUSH_THRESHOLD = 1 << 20;
+
+        private final CopyIn copyIn;
+        private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + 4096);
+
+        CopyWriter(PGConnection connection, String sql) throws SQLException {
+            this.copyIn = connection.getCopyAPI().copyIn(sql);
+        }
+
+        void row(Object... values) throws SQLException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    buffer.append('\t');
+                }
+                append(values[i]);
+            }
+            buffer.append('\n');
+            if (buffer.length() >= FLUSH_THRESHOLD) {
+                flush();
+            }
+        }
+
+        private void append(Object value) {
+            if (value == null) {
+                buffer.append("\\N");
+            } else if (value instanceof Boolean bool) {
+                buffer.append(bool ? 't' : 'f');
+            } else if (value instanceof String string) {
+                for (int i = 0; i < string.length(); i++) {
+                    char c = string.charAt(i);
+                    switch (c) {
+                        case '\\' -> buffer.append("\\\\");
+                        case '\t' -> buffer.append("\\t");
+                        case '\n' -> buffer.append("\\n");
+                        case '\r' -> buffer.append("\\r");
+                        default -> buffer.append(c);
+                    }
+                }
+            } else {
+                buffer.append(value);
+            }
+        }
+
+        private void flush() throws SQLException {
+            byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            copyIn.writeToCopy(bytes, 0, bytes.length);
+            buffer.setLength(0);
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                flush();
+                copyIn.endCopy();
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        }
+    }
+}
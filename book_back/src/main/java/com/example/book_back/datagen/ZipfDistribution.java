@@ -0,0 +1,50 @@
+package com.example.book_back.datagen;
+
+import java.util.SplittableRandom;
+
+/**
+ * Распределение Ципфа (степенной закон) над рангами 0..n-1: ранг 0 выпадает чаще всех.
+ * Функция распределения считается один раз, выборка - бинарным поиском.
+ */
+public class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    /**
+     * @param size     число элементов
+     * @param exponent показатель степени; чем больше, тем сильнее перекос в сторону первых рангов
+     */
+    public ZipfDistribution(int size, double exponent) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+        cumulative = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    public int sample(SplittableRandom random) {
+        double value = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.book_back.datasource;
+
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+
+@Configuration
+public class DataSourceProxyConfig implements WebMvcConfigurer {
+
+    /**
+     * Оборачивает DataSource в прокси, который считает запросы и логирует медленные.
+     *
+     * @param slowQueryThresholdMs порог медленного запроса в миллисекундах
+     * @return пост-процессор, заменяющий бин DataSource прокси-обёрткой
+     */
+    @Bean
+    public static BeanPostProcessor dataSourceProxyPostProcessor(
+            @Value("${application.query-metrics.slow-query-threshold-ms:200}") long slowQueryThresholdMs
+    ) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)) {
+                    return ProxyDataSourceBuilder.create(dataSource)
+                            .name(beanName)
+                            .listener(new QueryMetricsListener(slowQueryThresholdMs))
+                            .build();
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Регистрирует фильтр статистики запросов раньше цепочки Spring Security,
+     * чтобы в счётчик попадали и запросы загрузки пользователя в JwtFilter.
+     */
+    @Bean
+    public FilterRegistrationBean<QueryMetricsFilter> queryMetricsFilter(
+            @Value("${application.query-metrics.response-headers:false}") boolean responseHeaders,
+            @Value("${application.query-metrics.fail-on-budget-exceeded:false}") boolean failOnBudgetExceeded
+    ) {
+        FilterRegistrationBean<QueryMetricsFilter> registration =
+                new FilterRegistrationBean<>(new QueryMetricsFilter(responseHeaders, failOnBudgetExceeded));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new QueryBudgetInterceptor());
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.book_back.datasource;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Максимальное число SQL-запросов, которое может выполнить один вызов эндпоинта,
+ * включая загрузку пользователя в JwtFilter.
+ * При {@code application.query-metrics.fail-on-budget-exceeded=true} (в тестах) превышение
+ * приводит к {@link com.example.book_back.exception.QueryBudgetExceededException}, иначе пишется предупреждение в лог.
+ */
+@Documented
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface QueryBudget {
+
+    int value();
+}
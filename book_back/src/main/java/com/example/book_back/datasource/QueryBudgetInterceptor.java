@@ -0,0 +1,34 @@
+package com.example.book_back.datasource;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Передает значение {@link QueryBudget} обработчика в статистику текущего запроса.
+ */
+public class QueryBudgetInterceptor implements HandlerInterceptor {
+
+    @Override
+    public boolean preHandle(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull Object handler
+    ) {
+        QueryStatistics statistics = QueryStatistics.current();
+        if (statistics == null || !(handler instanceof HandlerMethod handlerMethod)) {
+            return true;
+        }
+
+        QueryBudget budget = handlerMethod.getMethodAnnotation(QueryBudget.class);
+        if (budget == null) {
+            budget = handlerMethod.getBeanType().getAnnotation(QueryBudget.class);
+        }
+        if (budget != null) {
+            statistics.setBudget(budget.value());
+        }
+        return true;
+    }
+}
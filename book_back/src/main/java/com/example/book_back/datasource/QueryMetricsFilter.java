@@ -0,0 +1,77 @@
+package com.example.book_back.datasource;
+
+import com.example.book_back.exception.QueryBudgetExceededException;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import java.io.IOException;
+
+/**
+ * Собирает статистику JDBC-запросов на время HTTP-запроса.
+ * Вне prod-профиля добавляет заголовки X-Query-Count и X-Db-Time.
+ */
+@Slf4j
+public class QueryMetricsFilter extends OncePerRequestFilter {
+
+    public static final String QUERY_COUNT_HEADER = "X-Query-Count";
+    public static final String DB_TIME_HEADER = "X-Db-Time";
+
+    private final boolean responseHeaders;
+    private final boolean failOnBudgetExceeded;
+
+    public QueryMetricsFilter(boolean responseHeaders, boolean failOnBudgetExceeded) {
+        this.responseHeaders = responseHeaders;
+        this.failOnBudgetExceeded = failOnBudgetExceeded;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        QueryStatistics statistics = QueryStatistics.start();
+
+        // Заголовки и отказ по бюджету возможны, только пока ответ не отправлен, поэтому тело буферизуется.
+        // Потоки событий не буферизуются: их тело пишется после завершения этого вызова
+        ContentCachingResponseWrapper wrapper = (responseHeaders || failOnBudgetExceeded) && !isEventStream(request)
+                ? new ContentCachingResponseWrapper(response) : null;
+        try {
+            filterChain.doFilter(request, wrapper != null ? wrapper : response);
+
+            if (statistics.isBudgetExceeded()) {
+                String message = String.format("Query budget exceeded for %s %s: %d statements, budget %d",
+                        request.getMethod(), request.getRequestURI(),
+                        statistics.getStatementCount(), statistics.getBudget());
+                // Буферизованное тело отбрасывается, и вместо него клиент получает ошибку
+                if (failOnBudgetExceeded && !response.isCommitted()) {
+                    throw new QueryBudgetExceededException(message);
+                }
+                log.warn(message);
+            }
+
+            if (wrapper != null) {
+                if (responseHeaders) {
+                    wrapper.setHeader(QUERY_COUNT_HEADER, String.valueOf(statistics.getStatementCount()));
+                    wrapper.setHeader(DB_TIME_HEADER, String.valueOf(statistics.getTotalMillis()));
+                }
+                wrapper.copyBodyToResponse();
+            }
+        } finally {
+            QueryStatistics.clear();
+        }
+    }
+
+    private static boolean isEventStream(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE);
+    }
+}
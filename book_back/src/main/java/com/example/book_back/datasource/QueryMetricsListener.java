@@ -0,0 +1,63 @@
+package com.example.book_back.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Слушатель datasource-proxy: считает запросы и время JDBC для текущего HTTP-запроса
+ * и пишет в лог медленные запросы вместе с параметрами.
+ */
+@Slf4j
+public class QueryMetricsListener implements QueryExecutionListener {
+
+    private final long slowQueryThresholdMs;
+
+    public QueryMetricsListener(long slowQueryThresholdMs) {
+        this.slowQueryThresholdMs = slowQueryThresholdMs;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        QueryStatistics statistics = QueryStatistics.current();
+        if (statistics != null) {
+            statistics.beforeStatement();
+        }
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        QueryStatistics statistics = QueryStatistics.current();
+        if (statistics != null) {
+            statistics.afterStatement();
+        }
+
+        if (execInfo.getElapsedTime() >= slowQueryThresholdMs) {
+            log.warn("Slow query ({} ms, batch: {}): {}",
+                    execInfo.getElapsedTime(),
+                    execInfo.isBatch(),
+                    queryInfoList.stream()
+                            .map(this::describe)
+                            .collect(Collectors.joining("; ")));
+        }
+    }
+
+    /**
+     * Формирует строку вида "SQL [params]" для записи в лог.
+     */
+    private String describe(QueryInfo queryInfo) {
+        String parameters = queryInfo.getParametersList().stream()
+                .map(operations -> operations.stream()
+                        .map(ParameterSetOperation::getArgs)
+                        .filter(args -> args != null && args.length > 1)
+                        .map(args -> args[0] + "=" + args[1])
+                        .collect(Collectors.joining(", ", "(", ")")))
+                .collect(Collectors.joining(", "));
+        return queryInfo.getQuery() + " [" + parameters + "]";
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.book_back.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Статистика JDBC-запросов, выполненных в рамках одного HTTP-запроса.
+ * Хранится в ThreadLocal и заполняется {@link QueryMetricsListener}.
+ */
+@Getter
+public class QueryStatistics {
+
+    private static final ThreadLocal<QueryStatistics> CURRENT = new ThreadLocal<>();
+
+    private int statementCount;
+    private long totalNanos;
+    private long startedAt;
+
+    /**
+     * Максимально допустимое число запросов, заданное через {@link QueryBudget}, или -1, если бюджета нет.
+     */
+    @Setter
+    private int budget = -1;
+
+    /**
+     * Открывает новую статистику для текущего потока.
+     *
+     * @return созданная статистика
+     */
+    public static QueryStatistics start() {
+        QueryStatistics statistics = new QueryStatistics();
+        CURRENT.set(statistics);
+        return statistics;
+    }
+
+    /**
+     * Возвращает статистику текущего потока или null, если запрос выполняется вне HTTP-запроса.
+     */
+    public static QueryStatistics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Удаляет статистику текущего потока.
+     */
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    void beforeStatement() {
+        startedAt = System.nanoTime();
+    }
+
+    void afterStatement() {
+        statementCount++;
+        totalNanos += System.nanoTime() - startedAt;
+    }
+
+    public long getTotalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalNanos);
+    }
+
+    public boolean isBudgetExceeded() {
+        return budget >= 0 && statementCount > budget;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.book_back.exception;
+
+import com.example.book_back.handler.BusinessErrorCodes;
+import lombok.Getter;
+
+@Getter
+public class FileUploadException extends RuntimeException {
+
+    private final BusinessErrorCodes errorCode;
+
+    public FileUploadException(BusinessErrorCodes errorCode, String message) {
+        super(message);
+        this.errorCode = errorCode;
+    }
+}
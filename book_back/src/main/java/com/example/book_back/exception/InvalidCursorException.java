@@ -0,0 +1,8 @@
+package com.example.book_back.exception;
+
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.book_back.exception;
+
+public class StaleVersionException extends RuntimeException {
+
+    public StaleVersionException(String message) {
+        super(message);
+    }
+}
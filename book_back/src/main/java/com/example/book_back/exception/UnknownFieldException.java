@@ -0,0 +1,8 @@
+package com.example.book_back.exception;
+
+public class UnknownFieldException extends RuntimeException {
+
+    public UnknownFieldException(String message) {
+        super(message);
+    }
+}
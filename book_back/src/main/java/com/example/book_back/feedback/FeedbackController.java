@@ -1,6 +1,7 @@
 package com.example.book_back.feedback;
 
 import com.example.book_back.common.PageResponse;
+import com.example.book_back.datasource.QueryBudget;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.Getter;
@@ -17,6 +18,7 @@ import org.springframework.web.bind.annotation.*;
 public class FeedbackController {
     private final FeedbackService service;
 
+    @QueryBudget(5)
     @PostMapping
     public ResponseEntity<Long> saveFeedback(
             @Valid @RequestBody FeedbackRequest request,
@@ -25,6 +27,7 @@ public class FeedbackController {
         return ResponseEntity.ok(service.save(request, connectedUser));
     }
 
+    @QueryBudget(4)
     @GetMapping("/book/{book-id}")
     public ResponseEntity<PageResponse<FeedbackResponse>> findAllFeedbacksByBook(
             @PathVariable("book-id") Long bookId,
@@ -34,4 +37,23 @@ public class FeedbackController {
     ) {
         return ResponseEntity.ok(service.findAllFeedbacksByBook(bookId, page, size, connectedUser));
     }
+
+    @QueryBudget(3)
+    @GetMapping("/book/{book-id}/histogram")
+    public ResponseEntity<RatingHistogramResponse> findRatingHistogram(
+            @PathVariable("book-id") Long bookId
+    ) {
+        return ResponseEntity.ok(service.findRatingHistogram(bookId));
+    }
+
+    @QueryBudget(3)
+    @GetMapping("/book/{book-id}/slice")
+    public ResponseEntity<FeedbackSliceResponse> findFeedbackSliceByBook(
+            @PathVariable("book-id") Long bookId,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", defaultValue = "10", required = false) int size,
+            Authentication connectedUser
+    ) {
+        return ResponseEntity.ok(service.findFeedbackSliceByBook(bookId, cursor, size, connectedUser));
+    }
 }
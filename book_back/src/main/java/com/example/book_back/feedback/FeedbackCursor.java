@@ -0,0 +1,44 @@
+package com.example.book_back.feedback;
+
+import com.example.book_back.exception.InvalidCursorException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Позиция в списке отзывов книги: последний отданный отзыв в порядке (createdDate DESC, id DESC).
+ * Клиенту передается непрозрачной строкой.
+ */
+public record FeedbackCursor(LocalDateTime createdDate, Long id) {
+
+    public static FeedbackCursor of(FeedbackView feedback) {
+        return new FeedbackCursor(feedback.createdDate(), feedback.id());
+    }
+
+    public String encode() {
+        String value = createdDate + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws InvalidCursorException если строка не получена из {@link #encode()}
+     */
+    public static FeedbackCursor decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.indexOf('|');
+            if (separator < 0) {
+                throw new InvalidCursorException("Invalid cursor: " + cursor);
+            }
+            return new FeedbackCursor(
+                    LocalDateTime.parse(value.substring(0, separator)),
+                    Long.valueOf(value.substring(separator + 1))
+            );
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // NumberFormatException - тоже IllegalArgumentException
+            throw new InvalidCursorException("Invalid cursor: " + cursor);
+        }
+    }
+}
@@ -7,24 +7,22 @@ import java.util.Objects;
 
 @Service
 public class FeedbackMapper {
-    public Feedback toFeedback(FeedbackRequest request) {
+    /**
+     * @param book ссылка на книгу без загрузки (getReferenceById): для вставки нужен только ее идентификатор
+     */
+    public Feedback toFeedback(FeedbackRequest request, Book book) {
         return Feedback.builder()
                 .note(request.note())
                 .comment(request.comment())
-                .book(Book.builder()
-                        .id(request.bookId())
-                        .shareable(false) // Not required and has no impact :: just to satisfy lombok
-                        .archived(false) // Not required and has no impact :: just to satisfy lombok
-                        .build()
-                )
+                .book(book)
                 .build();
     }
 
-    public FeedbackResponse toFeedbackResponse(Feedback feedback, Long id) {
+    public FeedbackResponse toFeedbackResponse(FeedbackView feedback, Long id) {
         return FeedbackResponse.builder()
-                .note(feedback.getNote())
-                .comment(feedback.getComment())
-                .ownFeedback(Objects.equals(feedback.getCreatedBy(), id))
+                .note(feedback.note())
+                .comment(feedback.comment())
+                .ownFeedback(Objects.equals(feedback.createdBy(), id))
                 .build();
     }
 }
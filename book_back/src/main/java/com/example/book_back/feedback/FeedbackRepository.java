@@ -1,16 +1,79 @@
 package com.example.book_back.feedback;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Списки отзывов книги читаются проекцией {@link FeedbackView} в порядке (createdDate DESC, id DESC)
+ * по покрывающему индексу feedback_book_created_idx.
+ */
 public interface FeedbackRepository extends JpaRepository<Feedback, Long> {
+    @Query(value = """
+            SELECT new com.example.book_back.feedback.FeedbackView(
+                feedback.id,
+                feedback.note,
+                feedback.comment,
+                feedback.createdBy,
+                feedback.createdDate
+            )
+            FROM Feedback feedback
+            WHERE feedback.book.id = :bookId
+            """,
+            countQuery = """
+            SELECT COUNT(feedback)
+            FROM Feedback feedback
+            WHERE feedback.book.id = :bookId
+            """)
+    Page<FeedbackView> findAllByBookId(@Param("bookId") Long bookId, Pageable pageable);
+
+    /**
+     * Первая порция отзывов книги для чтения по курсору.
+     */
     @Query("""
-            SELECT feedback
-            FROM Feedback  feedback
+            SELECT new com.example.book_back.feedback.FeedbackView(
+                feedback.id,
+                feedback.note,
+                feedback.comment,
+                feedback.createdBy,
+                feedback.createdDate
+            )
+            FROM Feedback feedback
             WHERE feedback.book.id = :bookId
-""")
-    Page<Feedback> findAllByBookId(@Param("bookId") Long bookId, Pageable pageable);
+            ORDER BY feedback.createdDate DESC, feedback.id DESC
+            """)
+    List<FeedbackView> findFirstByBookId(@Param("bookId") Long bookId, Limit limit);
+
+    /**
+     * Отзывы книги после курсора. Сравнение строк (createdDate, id) PostgreSQL выполняет
+     * как одно условие на диапазон индекса, поэтому дальние порции стоят столько же, сколько первая.
+     */
+    @Query("""
+            SELECT new com.example.book_back.feedback.FeedbackView(
+                feedback.id,
+                feedback.note,
+                feedback.comment,
+                feedback.createdBy,
+                feedback.createdDate
+            )
+            FROM Feedback feedback
+            WHERE feedback.book.id = :bookId
+            AND (feedback.createdDate, feedback.id) < (:createdDate, :id)
+            ORDER BY feedback.createdDate DESC, feedback.id DESC
+            """)
+    List<FeedbackView> findNextByBookId(
+            @Param("bookId") Long bookId,
+            @Param("createdDate") LocalDateTime createdDate,
+            @Param("id") Long id,
+            Limit limit
+    );
+
+    @Query("SELECT COALESCE(AVG(feedback.note), 0.0) FROM Feedback feedback")
+    double findAverageNote();
 }
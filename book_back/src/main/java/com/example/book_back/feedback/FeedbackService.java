@@ -1,16 +1,21 @@
 package com.example.book_back.feedback;
 
-import com.example.book_back.book.Book;
+import com.example.book_back.book.BookActivityEvent;
+import com.example.book_back.book.BookGuard;
 import com.example.book_back.book.BookRepository;
+import com.example.book_back.book.OwnerSummaryCache;
 import com.example.book_back.common.PageResponse;
 import com.example.book_back.exception.OperationNotPermittedException;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import com.example.book_back.user.User;
@@ -21,29 +26,53 @@ import java.util.Objects;
 @Service
 @RequiredArgsConstructor
 public class FeedbackService {
+
+    /**
+     * Наибольший размер порции при чтении по курсору.
+     */
+    public static final int MAX_SLICE_SIZE = 100;
+
+    private static final Sort FEEDBACK_ORDER = Sort.by(Sort.Direction.DESC, "createdDate", "id");
+
     private final FeedbackRepository feedBackRepository;
     private final BookRepository bookRepository;
     private final FeedbackMapper feedbackMapper;
+    private final OwnerSummaryCache ownerSummaryCache;
+    private final RatingHistogramStore ratingHistogramStore;
+    private final ApplicationEventPublisher eventPublisher;
 
+    /**
+     * Сохраняет отзыв. Книга проверяется узкой проекцией (владелец и флаги), а отзыв ссылается
+     * на нее через getReferenceById, поэтому книга и ее владелец не загружаются.
+     */
+    @Transactional
     public Long save(FeedbackRequest request, Authentication connectedUser) {
-        Book book = bookRepository.findById(request.bookId())
+        BookGuard book = bookRepository.findGuardById(request.bookId())
                 .orElseThrow(() -> new EntityNotFoundException("No book found with ID:: " + request.bookId()));
-        if (book.isArchived() || !book.isShareable()) {
+        if (book.archived() || !book.shareable()) {
             throw new OperationNotPermittedException("You cannot give a feedback for and archived or not shareable book");
         }
         User user = ((User) connectedUser.getPrincipal());
-        if (Objects.equals(book.getOwner().getId(), user.getId())) {
+        if (Objects.equals(book.ownerId(), user.getId())) {
             throw new OperationNotPermittedException("You cannot give feedback to your own book");
         }
-        Feedback feedback = feedbackMapper.toFeedback(request);
-        return feedBackRepository.save(feedback).getId();
+        Feedback feedback = feedbackMapper.toFeedback(request, bookRepository.getReferenceById(book.id()));
+        Long feedbackId = feedBackRepository.save(feedback).getId();
+        // Отзыв без оценки в распределение не попадает, как и в пересчете по feedback_t
+        if (request.note() != null) {
+            ratingHistogramStore.increment(book.id(), request.note());
+        }
+        // Средняя оценка в сводке владельца изменилась
+        ownerSummaryCache.evict(book.ownerId());
+        eventPublisher.publishEvent(new BookActivityEvent(BookActivityEvent.Type.RATED, book.id()));
+        return feedbackId;
     }
 
-    @Transactional
     public PageResponse<FeedbackResponse> findAllFeedbacksByBook(Long bookId, int page, int size, Authentication connectedUser) {
-        Pageable pageable = PageRequest.of(page, size);
+        // Без сортировки порядок строк между страницами не определен
+        Pageable pageable = PageRequest.of(page, size, FEEDBACK_ORDER);
         User user = ((User) connectedUser.getPrincipal());
-        Page<Feedback> feedbacks = feedBackRepository.findAllByBookId(bookId, pageable);
+        Page<FeedbackView> feedbacks = feedBackRepository.findAllByBookId(bookId, pageable);
         List<FeedbackResponse> feedbackResponses = feedbacks.stream()
                 .map(f -> feedbackMapper.toFeedbackResponse(f, user.getId()))
                 .toList();
@@ -58,4 +87,45 @@ public class FeedbackService {
         );
 
     }
+
+    /**
+     * Распределение оценок книги по звездам из счетчиков, без чтения отзывов.
+     */
+    public RatingHistogramResponse findRatingHistogram(Long bookId) {
+        return ratingHistogramStore.find(bookId);
+    }
+
+    /**
+     * Порция отзывов книги после курсора, от новых к старым. В отличие от постраничного списка
+     * не считает общее число отзывов и не пропускает OFFSET строк, поэтому стоимость не зависит от глубины.
+     *
+     * @param bookId идентификатор книги
+     * @param cursor курсор из предыдущей порции или null для первой
+     * @param size размер порции, не больше {@link #MAX_SLICE_SIZE}
+     * @param connectedUser аутентифицированный пользователь
+     * @return отзывы и курсор следующей порции
+     */
+    public FeedbackSliceResponse findFeedbackSliceByBook(Long bookId, String cursor, int size, Authentication connectedUser) {
+        if (size < 1 || size > MAX_SLICE_SIZE) {
+            throw new OperationNotPermittedException("Slice size must be between 1 and " + MAX_SLICE_SIZE);
+        }
+        User user = ((User) connectedUser.getPrincipal());
+        // Лишняя строка показывает, есть ли следующая порция
+        Limit limit = Limit.of(size + 1);
+        List<FeedbackView> feedbacks;
+        if (cursor == null || cursor.isBlank()) {
+            feedbacks = feedBackRepository.findFirstByBookId(bookId, limit);
+        } else {
+            FeedbackCursor position = FeedbackCursor.decode(cursor);
+            feedbacks = feedBackRepository.findNextByBookId(bookId, position.createdDate(), position.id(), limit);
+        }
+        boolean hasNext = feedbacks.size() > size;
+        List<FeedbackView> slice = hasNext ? feedbacks.subList(0, size) : feedbacks;
+        return new FeedbackSliceResponse(
+                slice.stream()
+                        .map(f -> feedbackMapper.toFeedbackResponse(f, user.getId()))
+                        .toList(),
+                hasNext ? FeedbackCursor.of(slice.getLast()).encode() : null
+        );
+    }
 }
@@ -0,0 +1,15 @@
+package com.example.book_back.feedback;
+
+import java.util.List;
+
+/**
+ * Порция отзывов при постраничном чтении по курсору.
+ *
+ * @param content отзывы порции
+ * @param nextCursor курсор следующей порции, null на последней
+ */
+public record FeedbackSliceResponse(
+        List<FeedbackResponse> content,
+        String nextCursor
+) {
+}
@@ -0,0 +1,16 @@
+package com.example.book_back.feedback;
+
+import java.time.LocalDateTime;
+
+/**
+ * Поля отзыва для списков. Все они есть в индексе feedback_book_created_idx,
+ * поэтому список читается без обращения к таблице.
+ */
+public record FeedbackView(
+        Long id,
+        Double note,
+        String comment,
+        Long createdBy,
+        LocalDateTime createdDate
+) {
+}
@@ -0,0 +1,18 @@
+package com.example.book_back.feedback;
+
+/**
+ * Число оценок книги по звездам.
+ */
+public record RatingHistogramResponse(
+        Long bookId,
+        long oneStar,
+        long twoStars,
+        long threeStars,
+        long fourStars,
+        long fiveStars
+) {
+
+    public long total() {
+        return oneStar + twoStars + threeStars + fourStars + fiveStars;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.book_back.feedback;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Распределение оценок по звездам в book_rating_stripe_t. Счетчики книги разбиты на
+ * application.feedback.rating-stripes строк: отзыв увеличивает счетчик в случайной строке,
+ * чтение суммирует строки книги по первичному ключу. Запросы выполняются в текущей транзакции JPA,
+ * поэтому счетчик меняется вместе с сохранением отзыва.
+ */
+@Component
+@RequiredArgsConstructor
+public class RatingHistogramStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${application.feedback.rating-stripes:8}")
+    private int stripes;
+
+    /**
+     * Учитывает оценку {@code note} книги.
+     */
+    public void increment(Long bookId, double note) {
+        String column = "star" + star(note);
+        jdbcTemplate.update("INSERT INTO book_rating_stripe_t (book_id, stripe, " + column + ") VALUES (?, ?, 1) "
+                        + "ON CONFLICT (book_id, stripe) DO UPDATE SET " + column + " = book_rating_stripe_t." + column + " + 1",
+                bookId, ThreadLocalRandom.current().nextInt(stripes));
+    }
+
+    public RatingHistogramResponse find(Long bookId) {
+        return jdbcTemplate.queryForObject("""
+                SELECT COALESCE(SUM(star1), 0), COALESCE(SUM(star2), 0), COALESCE(SUM(star3), 0),
+                       COALESCE(SUM(star4), 0), COALESCE(SUM(star5), 0)
+                FROM book_rating_stripe_t
+                WHERE book_id = ?
+                """, (resultSet, rowNum) -> new RatingHistogramResponse(
+                        bookId,
+                        resultSet.getLong(1),
+                        resultSet.getLong(2),
+                        resultSet.getLong(3),
+                        resultSet.getLong(4),
+                        resultSet.getLong(5)
+                ), bookId);
+    }
+
+    /**
+     * Пересчитывает распределение всех книг по feedback_t, например после загрузки отзывов через COPY.
+     */
+    public void rebuild() {
+        jdbcTemplate.execute("TRUNCATE book_rating_stripe_t");
+        jdbcTemplate.execute("""
+                INSERT INTO book_rating_stripe_t (book_id, stripe, star1, star2, star3, star4, star5)
+                SELECT book_id,
+                       0,
+                       COUNT(*) FILTER (WHERE star = 1),
+                       COUNT(*) FILTER (WHERE star = 2),
+                       COUNT(*) FILTER (WHERE star = 3),
+                       COUNT(*) FILTER (WHERE star = 4),
+                       COUNT(*) FILTER (WHERE star = 5)
+                FROM (
+                    SELECT book_id, LEAST(GREATEST(FLOOR(note + 0.5), 1), 5) AS star
+                    FROM feedback_t
+                    WHERE book_id IS NOT NULL
+                    AND note IS NOT NULL
+                ) feedback
+                GROUP BY book_id
+                """);
+    }
+
+    /**
+     * Звезда оценки: округление половин вверх в пределах 1-5, как {@code FLOOR(note + 0.5)} в {@link #rebuild()}
+     * и миграции V7. ROUND(float8) в PostgreSQL округляет половины к четному, и оценки 2.5 и 4.5 попали бы
+     * в другую звезду.
+     */
+    static int star(double note) {
+        return (int) Math.max(1, Math.min(5, Math.round(note)));
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.book_back.file;
+
+import lombok.Getter;
+
+/**
+ * Фиксированные уменьшенные копии обложки. Размер - сторона квадрата, в который вписывается изображение.
+ */
+@Getter
+public enum CoverRendition {
+
+    THUMBNAIL(240, "thumb"),
+    DETAIL(720, "detail")
+    ;
+
+    private final int maxSize;
+    private final String suffix;
+
+    CoverRendition(int maxSize, String suffix) {
+        this.maxSize = maxSize;
+        this.suffix = suffix;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.book_back.file;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CoverRenditionService {
+
+    private static final int LARGEST_RENDITION = Arrays.stream(CoverRendition.values())
+            .mapToInt(CoverRendition::getMaxSize)
+            .max()
+            .orElseThrow();
+
+    private final FileStorageService fileStorageService;
+
+    /**
+     * Создает уменьшенные копии обложки и сохраняет их в хранилище обложек.
+     * Изображение декодируется один раз, сразу с прореживанием до размера,
+     * достаточного для самой большой копии, поэтому большой оригинал не разворачивается в памяти целиком.
+     *
+     * @param originalReference ссылка на оригинал обложки
+     * @return ссылки на созданные копии; пустая карта, если изображение не удалось прочитать
+     */
+    public Map<CoverRendition, String> createRenditions(String originalReference) {
+        Map<CoverRendition, String> renditions = new EnumMap<>(CoverRendition.class);
+        try {
+            // Ключ оригинала - хэш содержимого, поэтому уже созданные копии того же изображения переиспользуются
+            for (CoverRendition rendition : CoverRendition.values()) {
+                String existing = fileStorageService.findRendition(originalReference, rendition);
+                if (existing != null) {
+                    renditions.put(rendition, existing);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to look up renditions of cover {}", originalReference, e);
+        }
+        if (renditions.size() == CoverRendition.values().length) {
+            return renditions;
+        }
+
+        BufferedImage source = decode(originalReference);
+        if (source == null) {
+            log.warn("Cover {} is not a readable image, renditions skipped", originalReference);
+            return renditions;
+        }
+
+        for (CoverRendition rendition : CoverRendition.values()) {
+            if (renditions.containsKey(rendition)) {
+                continue;
+            }
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                ImageIO.write(scale(source, rendition.getMaxSize()), "jpg", output);
+                String renditionReference = fileStorageService.saveRendition(originalReference, rendition, output.toByteArray());
+                if (renditionReference != null) {
+                    renditions.put(rendition, renditionReference);
+                }
+            } catch (IOException e) {
+                log.error("Cover rendition {} of {} was not saved", rendition, originalReference, e);
+            }
+        }
+        return renditions;
+    }
+
+    private BufferedImage decode(String reference) {
+        try (InputStream content = fileStorageService.openFile(reference);
+             ImageInputStream input = content == null ? null : ImageIO.createImageInputStream(content)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int largestSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+
+                // Оставляем двукратный запас над самой большой копией для качественного уменьшения
+                int subsampling = Math.max(1, largestSide / (2 * LARGEST_RENDITION));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to decode cover {}", reference, e);
+            return null;
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source, int maxSize) {
+        double ratio = Math.min(1.0, Math.min(
+                (double) maxSize / source.getWidth(),
+                (double) maxSize / source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        // JPEG не поддерживает прозрачность, поэтому рисуем в RGB на белом фоне
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+}
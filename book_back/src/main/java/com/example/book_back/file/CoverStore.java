@@ -0,0 +1,75 @@
+package com.example.book_back.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Хранилище файлов обложек. Реализация выбирается настройкой {@code application.file.store}.
+ * <p>
+ * Ключ - имя содержимого: {@code <hash>.<ext>} для оригинала и {@code <hash>_<suffix>.jpg} для уменьшенной копии.
+ * Ссылка - строка, которая сохраняется в книге и по которой содержимое читается.
+ */
+public interface CoverStore {
+
+    /**
+     * Сохраняет содержимое файла под ключом. Файл может быть перемещен или удален хранилищем.
+     *
+     * @return ссылка на сохраненное содержимое
+     */
+    String store(String key, Path content) throws IOException;
+
+    /**
+     * Сохраняет содержимое под ключом.
+     *
+     * @return ссылка на сохраненное содержимое
+     */
+    String store(String key, byte[] content) throws IOException;
+
+    /**
+     * Проверяет, сохранен ли ключ, и обновляет время его использования, чтобы сборщик мусора его не удалил.
+     *
+     * @return ссылка на содержимое или null, если ключ не сохранен
+     */
+    String touch(String key) throws IOException;
+
+    /**
+     * @return ключ, под которым сохранена ссылка, или null, если ссылка не из этого хранилища
+     */
+    String keyOf(String reference);
+
+    /**
+     * @return поток с содержимым или null, если содержимого нет
+     */
+    InputStream open(String reference) throws IOException;
+
+    /**
+     * @return содержимое целиком или null, если содержимого нет
+     */
+    byte[] read(String reference);
+
+    /**
+     * Удаляет оригиналы, не использовавшиеся с момента {@code threshold} и не используемые книгами,
+     * вместе с их уменьшенными копиями.
+     *
+     * @param threshold  время, раньше которого записи считаются неиспользуемыми
+     * @param referenced возвращает те ссылки на оригиналы из переданных, на которые ссылаются книги
+     * @return число удаленных записей
+     */
+    int collectGarbage(Instant threshold, Function<Collection<String>, Set<String>> referenced) throws IOException;
+
+    /**
+     * @return хэш содержимого из ключа оригинала или копии
+     */
+    static String contentHash(String key) {
+        int end = key.indexOf('_');
+        if (end < 0) {
+            end = key.indexOf('.');
+        }
+        return end < 0 ? key : key.substring(0, end);
+    }
+}
@@ -1,76 +1,394 @@
 package com.example.book_back.file;
 
-import com.example.book_back.book.Book;
+import com.example.book_back.exception.FileUploadException;
 import jakarta.annotation.Nonnull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
-import static java.io.File.separator;
+import static com.example.book_back.handler.BusinessErrorCodes.CONTENT_HASH_MISMATCH;
+import static com.example.book_back.handler.BusinessErrorCodes.FILE_TOO_LARGE;
+import static com.example.book_back.handler.BusinessErrorCodes.UNSUPPORTED_FILE_TYPE;
+import static com.example.book_back.handler.BusinessErrorCodes.UPLOAD_CAPACITY_EXCEEDED;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class FileStorageService {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Сигнатуры поддерживаемых форматов изображений: JPEG, PNG, GIF и WEBP (RIFF....WEBP).
+     */
+    private static final byte[][] IMAGE_SIGNATURES = {
+            {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},
+            {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'},
+            {'G', 'I', 'F', '8'},
+            {'R', 'I', 'F', 'F'}
+    };
+    private static final String[] IMAGE_EXTENSIONS = {"jpg", "png", "gif", "webp"};
+    private static final int SIGNATURE_LENGTH = 12;
+    private static final String TEMPORARY_DIRECTORY = "tmp";
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+
     @Value("${application.file.uploads.photos-output-path}")
     private String fileUploadPath;
 
-    public String saveFile(
-            @Nonnull MultipartFile sourceFile,
-            @Nonnull Long userId) {
+    @Value("${spring.servlet.multipart.max-file-size:50MB}")
+    private DataSize maxFileSize;
+
+    @Value("${application.file.uploads.max-in-flight-size:256MB}")
+    private DataSize maxInFlightSize;
 
-        final String fileUploadSubPath = "users" + separator + userId;
+    /**
+     * Суммарный размер загрузок, которые сейчас копируются на диск.
+     */
+    private final AtomicLong inFlightBytes = new AtomicLong();
 
-        return uploadFile(sourceFile, fileUploadSubPath);
+    private final CoverStore coverStore;
 
+    /**
+     * Сохраняет обложку, загруженную как multipart/form-data.
+     * Контейнер сервлетов разбирает multipart-тело целиком до вызова контроллера, поэтому здесь файл
+     * уже лежит во временном каталоге Tomcat, а лимит одновременных загрузок учитывает только копирование
+     * в хранилище. Потоковая загрузка без промежуточной копии - {@link #saveFile(InputStream, long, String)}.
+     * Файл читается дважды: сначала считается хэш, и уже сохраненная обложка не копируется повторно.
+     *
+     * @return ссылка на сохраненную обложку или null, если файл сохранить не удалось
+     */
+    public String saveFile(@Nonnull MultipartFile sourceFile) {
+        if (sourceFile.getSize() > maxFileSize.toBytes()) {
+            throw new FileUploadException(FILE_TOO_LARGE, "File size exceeds " + maxFileSize);
+        }
+        try {
+            StoredContent content;
+            try (InputStream input = sourceFile.getInputStream()) {
+                content = digest(input);
+            }
+            String existing = coverStore.touch(content.key());
+            if (existing != null) {
+                log.info("Duplicate cover, reusing " + existing);
+                return existing;
+            }
+            try (InputStream input = sourceFile.getInputStream()) {
+                return saveFile(input, sourceFile.getSize(), content.hash());
+            }
+        } catch (IOException e) {
+            log.error("File was not saved", e);
+            return null;
+        }
     }
 
-    private String uploadFile(
-            @Nonnull MultipartFile sourceFile,
-            @Nonnull String fileUploadSubPath) {
+    /**
+     * Сохраняет обложку в хранилище под ключом {@code <sha256>.<ext>}, читая ее прямо из тела запроса.
+     * Место в лимите одновременных загрузок резервируется до чтения первого байта: по заявленному размеру,
+     * а если он неизвестен - по максимальному размеру файла.
+     * Одинаковые изображения хранятся один раз. Если клиент заранее сообщил хэш и такая обложка уже есть,
+     * содержимое только дочитывается для проверки хэша и на диск не пишется.
+     * Неиспользуемые обложки удаляет {@link com.example.book_back.book.BookCoverGarbageCollector}.
+     *
+     * @param declaredSize размер из Content-Length или -1, если он неизвестен
+     * @param declaredHash SHA-256 содержимого в hex, заявленный клиентом, или null
+     * @return ссылка на сохраненную обложку или null, если файл сохранить не удалось
+     */
+    public String saveFile(@Nonnull InputStream sourceContent, long declaredSize, String declaredHash) {
+        if (declaredSize > maxFileSize.toBytes()) {
+            throw new FileUploadException(FILE_TOO_LARGE, "File size exceeds " + maxFileSize);
+        }
+        final String expectedHash = normalizeHash(declaredHash);
+        final long reserved = declaredSize < 0 ? maxFileSize.toBytes() : declaredSize;
+        reserve(reserved);
+
+        Path tempFile = null;
+        try (ReadableByteChannel source = Channels.newChannel(sourceContent)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            String extension = readExtension(source, buffer);
 
-        final String finalUploadPath = fileUploadPath + separator + fileUploadSubPath;
-        File targetFolder = new File(finalUploadPath);
-        if (!targetFolder.exists()) {
-            boolean folderCreated = targetFolder.mkdirs();
-            if (!folderCreated) {
-                log.warn("Failed to create the target folder");
-                return null;
+            if (expectedHash != null) {
+                String existing = coverStore.touch(expectedHash + "." + extension);
+                if (existing != null) {
+                    verify(expectedHash, transfer(source, buffer, null));
+                    log.info("Duplicate cover, reusing " + existing);
+                    return existing;
+                }
             }
-        }
 
-        final String fileExtension = getFileExtension(sourceFile.getOriginalFilename());
-        String targetFilePath = finalUploadPath + separator + System.currentTimeMillis() + "." + fileExtension;
-        Path targetFile = Paths.get(targetFilePath);
+            Path temporaryDirectory = getTemporaryDirectory();
+            Files.createDirectories(temporaryDirectory);
 
-        try {
-            Files.write(targetFile, sourceFile.getBytes());
-            log.info("File saved to " + targetFilePath);
-            return targetFilePath;
-        }catch (IOException e) {
+            // Временный файл в той же файловой системе, чтобы перенос в хранилище был атомарным
+            tempFile = Files.createTempFile(temporaryDirectory, "upload-", ".part");
+            String hash;
+            try (FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                hash = transfer(source, buffer, target);
+            }
+            if (expectedHash != null) {
+                verify(expectedHash, hash);
+            }
+            String key = hash + "." + extension;
+
+            // touch не находит обложку, удаленную сборщиком мусора после проверки, и тогда она сохраняется заново
+            String existing = coverStore.touch(key);
+            if (existing != null) {
+                log.info("Duplicate cover, reusing " + existing);
+                return existing;
+            }
+
+            String reference = coverStore.store(key, tempFile);
+            log.info("File saved to " + reference);
+            return reference;
+        } catch (IOException e) {
             log.error("File was not saved", e);
+        } finally {
+            inFlightBytes.addAndGet(-reserved);
+            deleteQuietly(tempFile);
         }
         return null;
-        
+
+    }
+
+    /**
+     * @return содержимое обложки или копии по ссылке, null если его нет
+     */
+    public byte[] readFile(String reference) {
+        return reference == null ? null : coverStore.read(reference);
+    }
+
+    /**
+     * @return поток с содержимым обложки или null, если его нет
+     */
+    public InputStream openFile(@Nonnull String reference) throws IOException {
+        return coverStore.open(reference);
+    }
+
+    /**
+     * Возвращает ссылку на уже созданную уменьшенную копию обложки.
+     *
+     * @return ссылка или null, если копии еще нет или оригинал хранится вне хранилища
+     */
+    public String findRendition(@Nonnull String originalReference, @Nonnull CoverRendition rendition) throws IOException {
+        String key = renditionKey(originalReference, rendition);
+        return key == null ? null : coverStore.touch(key);
+    }
+
+    /**
+     * Сохраняет уменьшенную копию обложки рядом с оригиналом.
+     *
+     * @return ссылка на копию или null, если оригинал хранится вне хранилища
+     */
+    public String saveRendition(
+            @Nonnull String originalReference,
+            @Nonnull CoverRendition rendition,
+            @Nonnull byte[] content) throws IOException {
+        String key = renditionKey(originalReference, rendition);
+        return key == null ? null : coverStore.store(key, content);
+    }
+
+    private String renditionKey(String originalReference, CoverRendition rendition) {
+        String originalKey = coverStore.keyOf(originalReference);
+        if (originalKey == null) {
+            return null;
+        }
+        return CoverStore.contentHash(originalKey) + "_" + rendition.getSuffix() + ".jpg";
+    }
+
+    /**
+     * Удаляет неиспользуемые обложки и оставшиеся после сбоев временные файлы.
+     *
+     * @return число удаленных файлов и записей
+     */
+    public int collectGarbage(Instant threshold, Function<Collection<String>, Set<String>> referenced) throws IOException {
+        int deleted = 0;
+        Path temporaryDirectory = getTemporaryDirectory();
+        if (Files.isDirectory(temporaryDirectory)) {
+            try (Stream<Path> files = Files.list(temporaryDirectory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (Files.getLastModifiedTime(file).toInstant().isBefore(threshold) && Files.deleteIfExists(file)) {
+                        deleted++;
+                    }
+                }
+            }
+        }
+        return deleted + coverStore.collectGarbage(threshold, referenced);
+    }
+
+    private Path getTemporaryDirectory() {
+        return Paths.get(fileUploadPath, TEMPORARY_DIRECTORY);
+    }
+
+    /**
+     * Хэш и формат содержимого, посчитанные при чтении.
+     */
+    private record StoredContent(String hash, String extension) {
+
+        String key() {
+            return hash + "." + extension;
+        }
+    }
+
+    /**
+     * Считает хэш и формат содержимого, ничего не записывая на диск.
+     */
+    private StoredContent digest(InputStream sourceContent) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(sourceContent);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        String extension = readExtension(source, buffer);
+        return new StoredContent(transfer(source, buffer, null), extension);
+    }
+
+    /**
+     * Дочитывает заголовок в буфер и определяет по нему формат, до записи чего-либо на диск.
+     */
+    private String readExtension(ReadableByteChannel source, ByteBuffer buffer) throws IOException {
+        while (buffer.position() < SIGNATURE_LENGTH && source.read(buffer) != -1) {
+            // дочитываем заголовок
+        }
+        return detectExtension(buffer);
+    }
+
+    /**
+     * Дочитывает содержимое, начиная с уже прочитанного в буфер, и считает его хэш.
+     *
+     * @param target файл, в который копируется содержимое, или null, если его нужно только прочитать
+     * @return SHA-256 содержимого в hex
+     */
+    private String transfer(ReadableByteChannel source, ByteBuffer buffer, FileChannel target) throws IOException {
+        final long limit = maxFileSize.toBytes();
+        final MessageDigest digest = sha256();
+        long read = 0;
+        do {
+            read += buffer.position();
+            if (read > limit) {
+                throw new FileUploadException(FILE_TOO_LARGE, "File size exceeds " + maxFileSize);
+            }
+            buffer.flip();
+            digest.update(buffer.duplicate());
+            while (target != null && buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            buffer.clear();
+        } while (source.read(buffer) != -1);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Проверяет формат заявленного хэша: он становится частью пути в хранилище.
+     *
+     * @return хэш в нижнем регистре или null, если он не заявлен
+     */
+    private static String normalizeHash(String declaredHash) {
+        if (declaredHash == null || declaredHash.isBlank()) {
+            return null;
+        }
+        String hash = declaredHash.trim().toLowerCase(Locale.ROOT);
+        if (!SHA256_HEX.matcher(hash).matches()) {
+            throw new FileUploadException(CONTENT_HASH_MISMATCH, "Declared hash is not a SHA-256 hex digest");
+        }
+        return hash;
     }
 
-    private String getFileExtension(String fileName) {
-        if(fileName == null || fileName.isEmpty()) {
-            return "";
+    private static void verify(String expectedHash, String actualHash) {
+        if (!expectedHash.equals(actualHash)) {
+            throw new FileUploadException(CONTENT_HASH_MISMATCH, "Content does not match the declared hash");
         }
-        int lastDotIndex = fileName.lastIndexOf(".");
-        if(lastDotIndex == -1) {
-            return "";
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Определяет формат по сигнатуре в начале файла.
+     *
+     * @return расширение файла для найденного формата
+     */
+    private String detectExtension(ByteBuffer buffer) {
+        byte[] header = new byte[Math.min(buffer.position(), SIGNATURE_LENGTH)];
+        buffer.get(0, header);
+        for (int i = 0; i < IMAGE_SIGNATURES.length; i++) {
+            byte[] signature = IMAGE_SIGNATURES[i];
+            if (startsWith(header, signature)) {
+                // RIFF-контейнер принимаем только с типом WEBP
+                if (signature[0] == 'R' && !(header.length >= 12
+                        && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P')) {
+                    break;
+                }
+                return IMAGE_EXTENSIONS[i];
+            }
+        }
+        throw new FileUploadException(UNSUPPORTED_FILE_TYPE, "Only JPEG, PNG, GIF and WEBP images are supported");
+    }
+
+    private static boolean startsWith(byte[] header, byte[] signature) {
+        if (header.length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (header[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Резервирует место в глобальном лимите одновременно загружаемых байтов.
+     */
+    private void reserve(long bytes) {
+        final long limit = maxInFlightSize.toBytes();
+        while (true) {
+            long current = inFlightBytes.get();
+            if (current + bytes > limit) {
+                throw new FileUploadException(UPLOAD_CAPACITY_EXCEEDED, "Upload capacity exceeded");
+            }
+            if (inFlightBytes.compareAndSet(current, current + bytes)) {
+                return;
+            }
+        }
+    }
+
+    public long getInFlightBytes() {
+        return inFlightBytes.get();
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Temporary file {} was not deleted", file, e);
         }
-        return fileName.substring(lastDotIndex + 1).toLowerCase();
     }
 }
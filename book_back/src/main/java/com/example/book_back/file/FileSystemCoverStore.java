@@ -0,0 +1,251 @@
+package com.example.book_back.file;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище обложек по файлу на каждую обложку: {@code covers/ab/cd/<key>}.
+ * Двухуровневое разбиение по первым байтам хэша держит каталоги небольшими. Ссылка - путь к файлу.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "application.file.store", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemCoverStore implements CoverStore {
+
+    private static final String COVERS_DIRECTORY = "covers";
+    private static final int BATCH_SIZE = 500;
+    /**
+     * Суффикс, под которым оригинал переименовывается перед удалением.
+     */
+    private static final String DELETING_SUFFIX = ".deleting";
+
+    @Value("${application.file.uploads.photos-output-path}")
+    private String fileUploadPath;
+
+    public Path getCoversDirectory() {
+        return Paths.get(fileUploadPath, COVERS_DIRECTORY);
+    }
+
+    private Path blobPath(String key) {
+        String hash = CoverStore.contentHash(key);
+        return getCoversDirectory()
+                .resolve(hash.substring(0, 2))
+                .resolve(hash.substring(2, 4))
+                .resolve(key);
+    }
+
+    @Override
+    public String store(String key, Path content) throws IOException {
+        Path target = blobPath(key);
+        Files.createDirectories(target.getParent());
+        // Одновременная загрузка того же содержимого заменит файл идентичным, это безопасно
+        Files.move(content, target, StandardCopyOption.ATOMIC_MOVE);
+        return target.toString();
+    }
+
+    @Override
+    public String store(String key, byte[] content) throws IOException {
+        Files.createDirectories(getCoversDirectory());
+        Path tempFile = Files.createTempFile(getCoversDirectory(), "store-", ".part");
+        try {
+            Files.write(tempFile, content);
+            return store(key, tempFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    @Override
+    public String touch(String key) throws IOException {
+        Path target = blobPath(key);
+        try {
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            return target.toString();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String keyOf(String reference) {
+        Path path = Paths.get(reference);
+        return path.startsWith(getCoversDirectory()) ? path.getFileName().toString() : null;
+    }
+
+    @Override
+    public InputStream open(String reference) throws IOException {
+        try {
+            return Files.newInputStream(Paths.get(reference));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] read(String reference) {
+        return FileUtils.readFileFromLocation(reference);
+    }
+
+    @Override
+    public int collectGarbage(Instant threshold, Function<Collection<String>, Set<String>> referenced) throws IOException {
+        Path coversDirectory = getCoversDirectory();
+        if (!Files.isDirectory(coversDirectory)) {
+            return 0;
+        }
+        // Путь к оригиналу -> оригинал и его уменьшенные копии
+        Map<String, List<Path>> candidates = new HashMap<>();
+        int deleted = 0;
+
+        try (Stream<Path> directories = Files.walk(coversDirectory, 2)) {
+            Iterable<Path> leafDirectories = directories
+                    .filter(path -> coversDirectory.relativize(path).getNameCount() == 2)
+                    .filter(Files::isDirectory)::iterator;
+            for (Path directory : leafDirectories) {
+                deleted += collectCandidates(directory, threshold, candidates);
+                if (candidates.size() >= BATCH_SIZE) {
+                    deleted += sweep(candidates, threshold, referenced);
+                    candidates.clear();
+                }
+            }
+        }
+        deleted += sweep(candidates, threshold, referenced);
+
+        try (Stream<Path> files = Files.list(coversDirectory)) {
+            deleted += delete(files
+                    .filter(file -> file.getFileName().toString().endsWith(".part"))
+                    .filter(file -> isOlderThan(List.of(file), threshold))
+                    .toList());
+        }
+        return deleted;
+    }
+
+    /**
+     * Группирует файлы каталога по хэшу и добавляет в кандидаты группы, в которых все файлы старше порога.
+     * Копии, у которых уже нет оригинала, и оставшиеся после сбоя переименованные оригиналы удаляются сразу.
+     *
+     * @return число удаленных файлов
+     */
+    private int collectCandidates(Path directory, Instant threshold, Map<String, List<Path>> candidates) throws IOException {
+        Map<String, List<Path>> groups = new HashMap<>();
+        List<Path> abandoned = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                if (file.getFileName().toString().endsWith(DELETING_SUFFIX)) {
+                    abandoned.add(file);
+                } else {
+                    groups.computeIfAbsent(CoverStore.contentHash(file.getFileName().toString()), hash -> new ArrayList<>())
+                            .add(file);
+                }
+            });
+        }
+
+        int deleted = delete(abandoned.stream().filter(file -> isOlderThan(List.of(file), threshold)).toList());
+        for (List<Path> group : groups.values()) {
+            if (!isOlderThan(group, threshold)) {
+                continue;
+            }
+            Path original = group.stream()
+                    .filter(file -> file.getFileName().toString().indexOf('_') < 0)
+                    .findFirst()
+                    .orElse(null);
+            if (original == null) {
+                deleted += delete(group);
+            } else {
+                candidates.put(original.toString(), group);
+            }
+        }
+        return deleted;
+    }
+
+    private int sweep(
+            Map<String, List<Path>> candidates,
+            Instant threshold,
+            Function<Collection<String>, Set<String>> referenced) {
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        Set<String> used = referenced.apply(candidates.keySet());
+        int deleted = 0;
+        for (Map.Entry<String, List<Path>> candidate : candidates.entrySet()) {
+            // Повторная проверка времени: повторная загрузка того же изображения обновляет его
+            if (!used.contains(candidate.getKey()) && isOlderThan(candidate.getValue(), threshold)) {
+                deleted += deleteUnlessTouched(Paths.get(candidate.getKey()), candidate.getValue(), threshold);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Удаляет оригинал с копиями, если его не обновила повторная загрузка.
+     * Оригинал сначала атомарно переименовывается: {@link #touch} после этого его не находит и загрузка сохраняет
+     * файл заново, а обновление, успевшее до переименования, видно по времени изменения, и тогда файл возвращается.
+     *
+     * @return число удаленных файлов
+     */
+    private int deleteUnlessTouched(Path original, List<Path> group, Instant threshold) {
+        Path deleting = original.resolveSibling(original.getFileName() + DELETING_SUFFIX);
+        try {
+            Files.move(original, deleting, StandardCopyOption.ATOMIC_MOVE);
+            if (!isOlderThan(List.of(deleting), threshold)) {
+                // Загрузка могла уже сохранить файл заново: содержимое то же, замена безопасна
+                Files.move(deleting, original, StandardCopyOption.ATOMIC_MOVE);
+                return 0;
+            }
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            log.warn("Cover file {} was not deleted", original, e);
+            return 0;
+        }
+        List<Path> files = new ArrayList<>(group);
+        files.set(files.indexOf(original), deleting);
+        return delete(files);
+    }
+
+    private static boolean isOlderThan(List<Path> files, Instant threshold) {
+        for (Path file : files) {
+            try {
+                if (Files.getLastModifiedTime(file).toInstant().isAfter(threshold)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int delete(List<Path> files) {
+        int deleted = 0;
+        for (Path file : files) {
+            try {
+                if (Files.deleteIfExists(file)) {
+                    deleted++;
+                }
+            } catch (IOException e) {
+                log.warn("Cover file {} was not deleted", file, e);
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,664 @@
+package com.example.book_back.file;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Хранилище обложек в больших файлах-сегментах, в которые обложки только дописываются.
+ * Вместо миллионов мелких файлов - несколько сегментов и индекс смещений в памяти,
+ * а чтение идет из отображенных в память сегментов без открытия файлов.
+ * <p>
+ * Формат записи: {@code magic, тип, длина ключа, время, длина данных, CRC32, ключ, данные}.
+ * Заголовок с magic записывается последним, поэтому оборванная при сбое запись при восстановлении не видна.
+ * Индекс сохраняется в контрольную точку после сборки мусора и при остановке; при запуске он читается из нее,
+ * а сегменты сканируются только с позиций, записанных в контрольной точке. Без нее читаются все сегменты.
+ * Удаление дописывает запись-надгробие, место освобождается уплотнением сегментов.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "application.file.store", havingValue = "pack")
+public class PackCoverStore implements CoverStore {
+
+    static final String REFERENCE_PREFIX = "pack:";
+
+    private static final int MAGIC = 0x43565250;
+    private static final byte BLOB = 1;
+    private static final byte TOMBSTONE = 2;
+    private static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES + Short.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".pack";
+    private static final int BATCH_SIZE = 500;
+    private static final String CHECKPOINT_FILE = "index.checkpoint";
+    private static final int CHECKPOINT_MAGIC = 0x43565049;
+
+    @Value("${application.file.pack.directory:${application.file.uploads.photos-output-path}/packs}")
+    private String directory;
+
+    @Value("${application.file.pack.segment-size:256MB}")
+    private DataSize segmentSize;
+
+    /**
+     * Доля мертвых записей, начиная с которой сегмент уплотняется.
+     */
+    @Value("${application.file.pack.compaction-threshold:0.5}")
+    private double compactionThreshold;
+
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+
+    /**
+     * Запись, удаление и уплотнение выполняются под этой блокировкой, чтение - без блокировок.
+     */
+    private final Object writeLock = new Object();
+    private Segment active;
+
+    /**
+     * Положение записи в сегменте. Время использования сохраняется только в контрольной точке,
+     * для записей, дописанных после нее, оно после перезапуска начинается с времени записи.
+     */
+    private static final class Entry {
+        private final int segment;
+        private final int offset;
+        private final int size;
+        private final int dataOffset;
+        private final int dataLength;
+        private volatile long lastUsed;
+
+        private Entry(int segment, int offset, int size, int dataOffset, int dataLength, long lastUsed) {
+            this.segment = segment;
+            this.offset = offset;
+            this.size = size;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final Path path;
+        /**
+         * Отображение сегмента; после удаления сегмента ссылка сбрасывается, и отображение освобождается,
+         * как только читатели закончат работу с выданными срезами.
+         */
+        private volatile MappedByteBuffer buffer;
+        /**
+         * Конец последней целой записи.
+         */
+        private int position;
+        /**
+         * Суммарный размер записей сегмента, на которые ссылается индекс.
+         */
+        private long liveBytes;
+
+        private Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+
+    private record Record(byte type, String key, int offset, int size, int dataOffset, int dataLength, long timestamp) {
+    }
+
+    /**
+     * Открывает сегменты и восстанавливает индекс из контрольной точки и записей, дописанных после нее.
+     * Оборванная запись в конце сегмента отбрасывается.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        Path root = Paths.get(directory);
+        Files.createDirectories(root);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(root)) {
+            files = list.filter(file -> segmentId(file) > 0)
+                    .sorted(Comparator.comparingInt(PackCoverStore::segmentId))
+                    .toList();
+        }
+
+        synchronized (writeLock) {
+            List<Segment> opened = new ArrayList<>();
+            for (Path file : files) {
+                Segment segment = mapSegment(segmentId(file), file, false);
+                segments.put(segment.id, segment);
+                opened.add(segment);
+            }
+            Map<Integer, Integer> checkpointed = readCheckpoint(root.resolve(CHECKPOINT_FILE));
+            long scanned = 0;
+            for (Segment segment : opened) {
+                int from = checkpointed.getOrDefault(segment.id, 0);
+                segment.position = scan(segment, from, record -> {
+                    if (record.type() == BLOB) {
+                        release(index.put(record.key(), entry(segment, record)));
+                        segment.liveBytes += record.size();
+                    } else {
+                        release(index.remove(record.key()));
+                    }
+                });
+                scanned += segment.position - from;
+                active = segment;
+            }
+            // Записи сегментов, уплотненных после контрольной точки, уже заменены перенесенными
+            index.values().removeIf(entry -> !segments.containsKey(entry.segment));
+            log.info("Cover pack store opened: {} segments, {} entries, {} bytes scanned",
+                    segments.size(), index.size(), scanned);
+        }
+    }
+
+    /**
+     * Сохраняет индекс и позиции сегментов, чтобы следующий запуск не читал сегменты целиком.
+     * Файл пишется рядом и атомарно заменяет прежний.
+     */
+    @PreDestroy
+    public void checkpoint() throws IOException {
+        Path root = Paths.get(directory);
+        Path target = root.resolve(CHECKPOINT_FILE);
+        Path temporary = root.resolve(CHECKPOINT_FILE + ".part");
+        synchronized (writeLock) {
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                CheckedOutputStream checked = new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel)), new CRC32());
+                DataOutputStream output = new DataOutputStream(checked);
+                output.writeInt(CHECKPOINT_MAGIC);
+                output.writeInt(segments.size());
+                for (Segment segment : segments.values()) {
+                    output.writeInt(segment.id);
+                    output.writeInt(segment.position);
+                    output.writeLong(segment.liveBytes);
+                }
+                output.writeInt(index.size());
+                for (Map.Entry<String, Entry> indexed : index.entrySet()) {
+                    Entry entry = indexed.getValue();
+                    output.writeUTF(indexed.getKey());
+                    output.writeInt(entry.segment);
+                    output.writeInt(entry.offset);
+                    output.writeInt(entry.size);
+                    output.writeInt(entry.dataOffset);
+                    output.writeInt(entry.dataLength);
+                    output.writeLong(entry.lastUsed);
+                }
+                output.writeLong(checked.getChecksum().getValue());
+                output.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Загружает индекс из контрольной точки. Поврежденная или не подходящая к сегментам контрольная точка
+     * пропускается, и тогда сегменты читаются целиком.
+     *
+     * @return позиции сегментов, до которых записи уже учтены в индексе
+     */
+    private Map<Integer, Integer> readCheckpoint(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return Map.of();
+        }
+        Map<Integer, Integer> positions = new HashMap<>();
+        Map<Integer, Long> liveBytes = new HashMap<>();
+        Map<String, Entry> entries = new HashMap<>();
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file)), new CRC32())) {
+            DataInputStream input = new DataInputStream(checked);
+            if (input.readInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Unknown checkpoint format");
+            }
+            int segmentCount = input.readInt();
+            for (int i = 0; i < segmentCount; i++) {
+                int id = input.readInt();
+                positions.put(id, input.readInt());
+                liveBytes.put(id, input.readLong());
+            }
+            int entryCount = input.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String key = input.readUTF();
+                entries.put(key, new Entry(input.readInt(), input.readInt(), input.readInt(),
+                        input.readInt(), input.readInt(), input.readLong()));
+            }
+            long checksum = checked.getChecksum().getValue();
+            if (input.readLong() != checksum) {
+                throw new IOException("Checkpoint checksum mismatch");
+            }
+        } catch (IOException e) {
+            log.warn("Cover pack checkpoint {} is not usable, scanning all segments", file, e);
+            return Map.of();
+        }
+
+        for (Map.Entry<Integer, Integer> position : positions.entrySet()) {
+            Segment segment = segments.get(position.getKey());
+            if (segment != null && position.getValue() > segment.buffer.capacity()) {
+                log.warn("Cover pack checkpoint {} does not match segment {}, scanning all segments", file, segment.id);
+                return Map.of();
+            }
+        }
+        index.putAll(entries);
+        liveBytes.forEach((id, bytes) -> {
+            Segment segment = segments.get(id);
+            if (segment != null) {
+                segment.liveBytes = bytes;
+            }
+        });
+        return positions;
+    }
+
+    @Override
+    public String store(String key, Path content) throws IOException {
+        try (FileChannel channel = FileChannel.open(content, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Cover is too large for the pack store");
+            }
+            return store(key, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    @Override
+    public String store(String key, byte[] content) throws IOException {
+        return store(key, ByteBuffer.wrap(content));
+    }
+
+    private String store(String key, ByteBuffer content) throws IOException {
+        synchronized (writeLock) {
+            Entry existing = index.get(key);
+            if (existing != null) {
+                existing.lastUsed = System.currentTimeMillis();
+            } else {
+                Entry entry = append(BLOB, key, content, System.currentTimeMillis());
+                index.put(key, entry);
+                segments.get(entry.segment).liveBytes += entry.size;
+            }
+            return REFERENCE_PREFIX + key;
+        }
+    }
+
+    @Override
+    public String touch(String key) {
+        while (true) {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            entry.lastUsed = System.currentTimeMillis();
+            // Запись могли удалить или перенести уплотнением до обновления времени: тогда проверяем заново
+            if (index.get(key) == entry) {
+                return REFERENCE_PREFIX + key;
+            }
+        }
+    }
+
+    @Override
+    public String keyOf(String reference) {
+        return reference != null && reference.startsWith(REFERENCE_PREFIX)
+                ? reference.substring(REFERENCE_PREFIX.length())
+                : null;
+    }
+
+    @Override
+    public InputStream open(String reference) throws IOException {
+        String key = keyOf(reference);
+        if (key == null) {
+            // Обложки, сохраненные до переключения хранилища, остаются отдельными файлами
+            try {
+                return reference == null ? null : Files.newInputStream(Paths.get(reference));
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+        ByteBuffer content = slice(key);
+        return content == null ? null : new ByteBufferInputStream(content);
+    }
+
+    @Override
+    public byte[] read(String reference) {
+        String key = keyOf(reference);
+        if (key == null) {
+            return FileUtils.readFileFromLocation(reference);
+        }
+        ByteBuffer content = slice(key);
+        if (content == null) {
+            return null;
+        }
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Возвращает содержимое записи как срез отображенного сегмента, без копирования.
+     * Сегмент, удаленный уплотнением, остается отображенным, пока на срез есть ссылки.
+     */
+    private ByteBuffer slice(String key) {
+        while (true) {
+            Entry entry = index.get(key);
+            if (entry == null) {
+                return null;
+            }
+            Segment segment = segments.get(entry.segment);
+            MappedByteBuffer buffer = segment == null ? null : segment.buffer;
+            if (buffer != null) {
+                return buffer.slice(entry.dataOffset, entry.dataLength).asReadOnlyBuffer();
+            }
+            // Запись перенесена уплотнением между чтением индекса и сегмента, читаем индекс заново
+        }
+    }
+
+    @Override
+    public int collectGarbage(Instant threshold, Function<Collection<String>, Set<String>> referenced) throws IOException {
+        long thresholdMillis = threshold.toEpochMilli();
+        List<String> candidates = new ArrayList<>();
+        int deleted = 0;
+        for (Map.Entry<String, Entry> entry : index.entrySet()) {
+            if (entry.getKey().indexOf('_') < 0 && entry.getValue().lastUsed < thresholdMillis) {
+                candidates.add(REFERENCE_PREFIX + entry.getKey());
+                if (candidates.size() >= BATCH_SIZE) {
+                    deleted += sweep(candidates, thresholdMillis, referenced);
+                    candidates.clear();
+                }
+            }
+        }
+        deleted += sweep(candidates, thresholdMillis, referenced);
+        compact();
+        checkpoint();
+        return deleted;
+    }
+
+    private int sweep(List<String> candidates, long thresholdMillis, Function<Collection<String>, Set<String>> referenced)
+            throws IOException {
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        Set<String> used = referenced.apply(candidates);
+        int deleted = 0;
+        synchronized (writeLock) {
+            for (String reference : candidates) {
+                String key = keyOf(reference);
+                Entry entry = index.get(key);
+                // Повторная проверка времени: повторная загрузка того же изображения обновляет его
+                if (used.contains(reference) || entry == null || entry.lastUsed >= thresholdMillis) {
+                    continue;
+                }
+                if (!deleteUnlessTouched(key, thresholdMillis)) {
+                    continue;
+                }
+                deleted++;
+                String hash = CoverStore.contentHash(key);
+                for (CoverRendition rendition : CoverRendition.values()) {
+                    deleted += delete(hash + "_" + rendition.getSuffix() + ".jpg");
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Удаляет оригинал, если его не обновила повторная загрузка. Запись сначала убирается из индекса:
+     * {@link #touch} после этого ее не находит и загрузка сохраняет обложку заново,
+     * а обновление, успевшее раньше, видно по времени использования, и тогда запись возвращается в индекс.
+     */
+    private boolean deleteUnlessTouched(String key, long thresholdMillis) throws IOException {
+        Entry removed = index.remove(key);
+        if (removed == null) {
+            return false;
+        }
+        if (removed.lastUsed >= thresholdMillis) {
+            index.put(key, removed);
+            return false;
+        }
+        release(removed);
+        append(TOMBSTONE, key, ByteBuffer.allocate(0), System.currentTimeMillis());
+        return true;
+    }
+
+    private int delete(String key) throws IOException {
+        Entry removed = index.remove(key);
+        if (removed == null) {
+            return 0;
+        }
+        release(removed);
+        append(TOMBSTONE, key, ByteBuffer.allocate(0), System.currentTimeMillis());
+        return 1;
+    }
+
+    /**
+     * Переносит живые записи из сегментов с большой долей мертвых записей в активный сегмент
+     * и удаляет освободившиеся сегменты.
+     */
+    public void compact() throws IOException {
+        synchronized (writeLock) {
+            List<Segment> sealed = segments.values().stream()
+                    .filter(segment -> segment != active)
+                    .sorted(Comparator.comparingInt(segment -> segment.id))
+                    .toList();
+            for (Segment segment : sealed) {
+                double deadRatio = segment.position == 0 ? 1.0 : 1.0 - (double) segment.liveBytes / segment.position;
+                if (deadRatio >= compactionThreshold) {
+                    compact(segment);
+                }
+            }
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        boolean hasOlderSegments = segments.keySet().stream().anyMatch(id -> id < segment.id);
+        List<Record> records = new ArrayList<>();
+        scan(segment, 0, records::add);
+
+        for (Record record : records) {
+            Entry entry = index.get(record.key());
+            if (record.type() == BLOB && entry != null && entry.segment == segment.id && entry.offset == record.offset()) {
+                Entry moved = append(BLOB, record.key(),
+                        segment.buffer.slice(record.dataOffset(), record.dataLength()), record.timestamp());
+                moved.lastUsed = entry.lastUsed;
+                index.put(record.key(), moved);
+                segments.get(moved.segment).liveBytes += moved.size;
+            } else if (record.type() == TOMBSTONE && hasOlderSegments && !index.containsKey(record.key())) {
+                // Без надгробия запись из более старого сегмента ожила бы при восстановлении
+                append(TOMBSTONE, record.key(), ByteBuffer.allocate(0), record.timestamp());
+            }
+        }
+
+        // Перенесенные записи уже сброшены на диск, только после этого удаляем старый сегмент
+        segments.remove(segment.id);
+        segment.buffer = null;
+        Files.deleteIfExists(segment.path);
+        log.info("Cover pack segment {} compacted, {} records checked", segment.id, records.size());
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Дописывает запись в активный сегмент. Вызывается под блокировкой записи.
+     */
+    private Entry append(byte type, String key, ByteBuffer content, long timestamp) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int dataLength = content.remaining();
+        long recordSize = (long) HEADER_SIZE + keyBytes.length + dataLength;
+        Segment segment = activeSegment(recordSize);
+
+        int offset = segment.position;
+        int dataOffset = offset + HEADER_SIZE + keyBytes.length;
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes);
+        crc.update(content.duplicate());
+
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.put(offset + HEADER_SIZE, keyBytes);
+        buffer.put(dataOffset, content, content.position(), dataLength);
+        buffer.put(offset + 4, type)
+                .putShort(offset + 5, (short) keyBytes.length)
+                .putLong(offset + 7, timestamp)
+                .putInt(offset + 15, dataLength)
+                .putInt(offset + 19, (int) crc.getValue());
+        buffer.force(offset + 4, (int) recordSize - 4);
+        // Запись становится видимой для восстановления только после того, как все остальное на диске
+        buffer.putInt(offset, MAGIC);
+        buffer.force(offset, Integer.BYTES);
+
+        segment.position = offset + (int) recordSize;
+        return new Entry(segment.id, offset, (int) recordSize, dataOffset, dataLength, timestamp);
+    }
+
+    private Segment activeSegment(long recordSize) throws IOException {
+        if (recordSize > segmentSize.toBytes()) {
+            throw new IOException("Cover of " + recordSize + " bytes does not fit into a pack segment of " + segmentSize);
+        }
+        if (active == null || active.position + recordSize > active.buffer.capacity()) {
+            int id = active == null ? 1 : active.id + 1;
+            Path file = Paths.get(directory).resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+            active = mapSegment(id, file, true);
+            segments.put(id, active);
+        }
+        return active;
+    }
+
+    private Segment mapSegment(int id, Path file, boolean create) throws IOException {
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Новый сегмент сразу отображается целиком: файл растет до полного размера, но остается разреженным
+            long size = create ? segmentSize.toBytes() : channel.size();
+            return new Segment(id, file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        }
+    }
+
+    /**
+     * Читает записи сегмента по порядку, начиная с {@code from}, до первой неполной или поврежденной.
+     *
+     * @return смещение конца последней целой записи
+     */
+    private int scan(Segment segment, int from, Consumer<Record> consumer) {
+        MappedByteBuffer buffer = segment.buffer;
+        int capacity = buffer.capacity();
+        int position = from;
+        while (position + HEADER_SIZE <= capacity && buffer.getInt(position) == MAGIC) {
+            byte type = buffer.get(position + 4);
+            int keyLength = Short.toUnsignedInt(buffer.getShort(position + 5));
+            long timestamp = buffer.getLong(position + 7);
+            int dataLength = buffer.getInt(position + 15);
+            int checksum = buffer.getInt(position + 19);
+            long end = (long) position + HEADER_SIZE + keyLength + dataLength;
+            if ((type != BLOB && type != TOMBSTONE) || dataLength < 0 || end > capacity) {
+                log.warn("Cover pack segment {} is truncated at {}", segment.id, position);
+                break;
+            }
+            int keyOffset = position + HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(keyOffset, keyLength + dataLength));
+            if ((int) crc.getValue() != checksum) {
+                log.warn("Cover pack segment {} has a torn record at {}", segment.id, position);
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(keyOffset, keyBytes);
+            consumer.accept(new Record(type, new String(keyBytes, StandardCharsets.UTF_8), position,
+                    (int) (end - position), keyOffset + keyLength, dataLength, timestamp));
+            position = (int) end;
+        }
+        return position;
+    }
+
+    private Entry entry(Segment segment, Record record) {
+        return new Entry(segment.id, record.offset(), record.size(), record.dataOffset(), record.dataLength(), record.timestamp());
+    }
+
+    /**
+     * Учитывает, что запись больше не используется индексом.
+     */
+    private void release(Entry entry) {
+        if (entry == null) {
+            return;
+        }
+        Segment segment = segments.get(entry.segment);
+        if (segment != null) {
+            segment.liveBytes -= entry.size;
+        }
+    }
+
+    private static int segmentId(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Поток для чтения среза отображенного сегмента.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
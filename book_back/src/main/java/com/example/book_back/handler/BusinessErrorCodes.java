@@ -12,7 +12,15 @@ public enum BusinessErrorCodes {
     NEW_PASSWORD_DOES_NOT_MATCH(301, BAD_REQUEST, "New password does not match"),
     ACCOUNT_LOCKED(302, FORBIDDEN, "Account is locked"),
     ACCOUNT_DISABLED(303, FORBIDDEN, "Account is disabled"),
-    BAD_CREDENTIALS(304, FORBIDDEN, "Login and/or password are incorrect")
+    BAD_CREDENTIALS(304, FORBIDDEN, "Login and/or password are incorrect"),
+    FILE_TOO_LARGE(400, PAYLOAD_TOO_LARGE, "File is too large"),
+    UNSUPPORTED_FILE_TYPE(401, UNSUPPORTED_MEDIA_TYPE, "File type is not supported"),
+    UPLOAD_CAPACITY_EXCEEDED(402, SERVICE_UNAVAILABLE, "Too many uploads in progress, try again later"),
+    CONTENT_HASH_MISMATCH(403, BAD_REQUEST, "File content does not match the declared hash"),
+    UNKNOWN_FIELD(500, BAD_REQUEST, "Unknown field requested"),
+    STALE_VERSION(501, CONFLICT, "The resource was modified by another request"),
+    INVALID_CURSOR(502, BAD_REQUEST, "Invalid pagination cursor"),
+    RATE_LIMIT_EXCEEDED(600, TOO_MANY_REQUESTS, "Too many requests")
 
     ;
 
@@ -1,6 +1,10 @@
 package com.example.book_back.handler;
 
+import com.example.book_back.exception.FileUploadException;
+import com.example.book_back.exception.InvalidCursorException;
 import com.example.book_back.exception.OperationNotPermittedException;
+import com.example.book_back.exception.StaleVersionException;
+import com.example.book_back.exception.UnknownFieldException;
 import jakarta.mail.MessagingException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -189,4 +193,81 @@ public class GlobalExceptionHandler {
                                 .build()
                 );
     }
+
+    /**
+     * Обработчик исключения FileUploadException.
+     * Возвращает статус и код бизнес-ошибки, указанные в исключении.
+     *
+     * @param exp Исключение FileUploadException
+     * @return ResponseEntity с кодом статуса из бизнес-ошибки и телом, содержащим объект ExceptionResponse
+     */
+    @ExceptionHandler(FileUploadException.class)
+    public ResponseEntity<ExceptionResponse> handleException(FileUploadException exp) {
+        return ResponseEntity
+                .status(exp.getErrorCode().getHttpStatus())
+                .body(
+                        ExceptionResponse.builder()
+                                .businessErrorCode(exp.getErrorCode().getCode())
+                                .businessExceptionDescription(exp.getErrorCode().getDescription())
+                                .error(exp.getMessage())
+                                .build()
+                );
+    }
+
+    /**
+     * Обработчик исключения UnknownFieldException: в параметре fields запрошено неизвестное поле.
+     *
+     * @param exp Исключение UnknownFieldException
+     * @return ResponseEntity с кодом статуса BAD_REQUEST и телом, содержащим объект ExceptionResponse
+     */
+    @ExceptionHandler(UnknownFieldException.class)
+    public ResponseEntity<ExceptionResponse> handleException(UnknownFieldException exp) {
+        return ResponseEntity
+                .status(UNKNOWN_FIELD.getHttpStatus())
+                .body(
+                        ExceptionResponse.builder()
+                                .businessErrorCode(UNKNOWN_FIELD.getCode())
+                                .businessExceptionDescription(UNKNOWN_FIELD.getDescription())
+                                .error(exp.getMessage())
+                                .build()
+                );
+    }
+
+    /**
+     * Обработчик исключения StaleVersionException: книга изменилась после того, как клиент прочитал ее версию.
+     *
+     * @param exp Исключение StaleVersionException
+     * @return ResponseEntity с кодом статуса CONFLICT и телом, содержащим объект ExceptionResponse
+     */
+    @ExceptionHandler(StaleVersionException.class)
+    public ResponseEntity<ExceptionResponse> handleException(StaleVersionException exp) {
+        return ResponseEntity
+                .status(STALE_VERSION.getHttpStatus())
+                .body(
+                        ExceptionResponse.builder()
+                                .businessErrorCode(STALE_VERSION.getCode())
+                                .businessExceptionDescription(STALE_VERSION.getDescription())
+                                .error(exp.getMessage())
+                                .build()
+                );
+    }
+
+    /**
+     * Обработчик исключения InvalidCursorException: курсор постраничного чтения поврежден или подделан.
+     *
+     * @param exp Исключение InvalidCursorException
+     * @return ResponseEntity с кодом статуса BAD_REQUEST и телом, содержащим объект ExceptionResponse
+     */
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<ExceptionResponse> handleException(InvalidCursorException exp) {
+        return ResponseEntity
+                .status(INVALID_CURSOR.getHttpStatus())
+                .body(
+                        ExceptionResponse.builder()
+                                .businessErrorCode(INVALID_CURSOR.getCode())
+                                .businessExceptionDescription(INVALID_CURSOR.getDescription())
+                                .error(exp.getMessage())
+                                .build()
+                );
+    }
 }
@@ -0,0 +1,228 @@
+package com.example.book_back.history;
+
+import com.example.book_back.notification.LoanNotification;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Текущие займы (возврат не подтвержден) в памяти: для каждого читателя - множество книг у него на руках
+ * в виде {@link CompactBitmap}. Позволяет отказать в повторном займе и отметить книги «у вас на руках»
+ * на странице каталога без запросов к базе.
+ * <p>
+ * Индекс строится по горячей секции истории при старте и затем каждые application.active-loans.rebuild-interval,
+ * а между перестройками меняется после фиксации транзакции займа или подтверждения возврата и по уведомлениям
+ * {@link LoanNotification} о займах и возвратах на других узлах. Уведомление может задержаться или потеряться,
+ * поэтому отказ в займе по индексу подтверждается по базе, а отсутствие займа в индексе не доказывает,
+ * что его нет. Отметки «у вас на руках» в каталоге могут отставать до следующего уведомления или перестройки.
+ * Идентификаторы больше {@link Integer#MAX_VALUE} в индекс не попадают и всегда проверяются по базе.
+ */
+@Component
+@Slf4j
+public class ActiveLoanIndex {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Long, CompactBitmap> booksByUser = new HashMap<>();
+    /**
+     * Изменения, зафиксированные во время перестройки: применяются и к новому индексу.
+     */
+    private List<Change> pendingChanges;
+
+    public ActiveLoanIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(
+            initialDelayString = "${application.active-loans.rebuild-interval:PT10M}",
+            fixedDelayString = "${application.active-loans.rebuild-interval:PT10M}"
+    )
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            if (pendingChanges != null) {
+                return;
+            }
+            pendingChanges = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Map<Long, CompactBitmap> books = new HashMap<>();
+        boolean built = false;
+        try {
+            long started = System.currentTimeMillis();
+            jdbcTemplate.query("""
+                    SELECT user_id, book_id
+                    FROM book_transaction_history_t
+                    WHERE archived = false
+                    AND return_approved = false
+                    AND user_id IS NOT NULL
+                    AND book_id IS NOT NULL
+                    """, resultSet -> {
+                add(books, resultSet.getLong(1), resultSet.getLong(2));
+            });
+            built = true;
+            log.info("Active loan index built in {} ms: {} readers",
+                    System.currentTimeMillis() - started, books.size());
+        } catch (DataAccessException e) {
+            log.error("Active loan index build failed", e);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (built) {
+                    for (Change change : pendingChanges) {
+                        change.apply(books);
+                    }
+                    booksByUser = books;
+                }
+                pendingChanges = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Книга на руках у читателя. false, если индекс еще не построен или об этом займе он не знает.
+     */
+    public boolean isBorrowedBy(Long userId, Long bookId) {
+        if (!indexable(userId) || !indexable(bookId)) {
+            return false;
+        }
+        lock.readLock().lock();
+        try {
+            CompactBitmap books = booksByUser.get(userId);
+            return books != null && books.contains(bookId.intValue());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Какие из книг сейчас на руках у читателя.
+     */
+    public Set<Long> borrowedBy(Long userId, Collection<Long> bookIds) {
+        Set<Long> borrowed = new HashSet<>();
+        if (!indexable(userId)) {
+            return borrowed;
+        }
+        lock.readLock().lock();
+        try {
+            CompactBitmap books = booksByUser.get(userId);
+            if (books == null) {
+                return borrowed;
+            }
+            for (Long bookId : bookIds) {
+                if (indexable(bookId) && books.contains(bookId.intValue())) {
+                    borrowed.add(bookId);
+                }
+            }
+            return borrowed;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Отмечает займ после фиксации текущей транзакции (сразу, если транзакции нет).
+     */
+    public void borrowedAfterCommit(Long userId, Long bookId) {
+        afterCommit(new Change(userId, bookId, true));
+    }
+
+    /**
+     * Снимает займ после фиксации текущей транзакции (сразу, если транзакции нет).
+     */
+    public void releasedAfterCommit(Long userId, Long bookId) {
+        afterCommit(new Change(userId, bookId, false));
+    }
+
+    /**
+     * Применяет займы и подтвержденные возвраты со всех узлов. Изменения этого узла к этому моменту
+     * уже применены после фиксации, повторное применение ничего не меняет.
+     */
+    @EventListener
+    public void onLoanNotification(LoanNotification notification) {
+        switch (notification.type()) {
+            case BORROWED -> apply(new Change(notification.borrowerId(), notification.bookId(), true));
+            case RETURN_APPROVED -> apply(new Change(notification.borrowerId(), notification.bookId(), false));
+            case RETURNED -> {
+                // Книга остается у читателя до подтверждения возврата
+            }
+        }
+    }
+
+    private void afterCommit(Change change) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(change);
+                }
+            });
+        } else {
+            apply(change);
+        }
+    }
+
+    private void apply(Change change) {
+        lock.writeLock().lock();
+        try {
+            change.apply(booksByUser);
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void add(Map<Long, CompactBitmap> booksByUser, Long userId, Long bookId) {
+        if (!indexable(userId) || !indexable(bookId)) {
+            return;
+        }
+        booksByUser.computeIfAbsent(userId, id -> new CompactBitmap()).add(bookId.intValue());
+    }
+
+    private static void remove(Map<Long, CompactBitmap> booksByUser, Long userId, Long bookId) {
+        if (!indexable(userId) || !indexable(bookId)) {
+            return;
+        }
+        CompactBitmap books = booksByUser.get(userId);
+        if (books != null && books.remove(bookId.intValue()) && books.isEmpty()) {
+            booksByUser.remove(userId);
+        }
+    }
+
+    private static boolean indexable(Long id) {
+        return id != null && id >= 0 && id <= Integer.MAX_VALUE;
+    }
+
+    private record Change(Long userId, Long bookId, boolean borrowed) {
+
+        void apply(Map<Long, CompactBitmap> booksByUser) {
+            if (borrowed) {
+                add(booksByUser, userId, bookId);
+            } else {
+                remove(booksByUser, userId, bookId);
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@ import lombok.experimental.SuperBuilder;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+// Таблица секционирована по archived и created_date, схема и индексы - в db/migration (V2__partition_transaction_history.sql)
 @Table(name = "book_transaction_history_t")
 public class BookTransactionHistory extends BaseEntity {
     @ManyToOne
@@ -24,6 +25,18 @@ public class BookTransactionHistory extends BaseEntity {
     @ManyToOne
     @JoinColumn(name = "book_id")
     private Book book;
+    /**
+     * Владелец книги на момент займа, копия book_t.owner_id: запросы владельца по займам
+     * фильтруются по индексу этой таблицы без соединения с book_t.
+     */
+    @Column(name = "owner_id", nullable = false, updatable = false)
+    private Long ownerId;
     private boolean returned;
     private boolean returnApproved;
+    /**
+     * Займ закрыт и перенесен в архивную секцию. Выставляет только {@link HistoryArchiver};
+     * запросы по текущим займам фильтруют archived = false и читают одну горячую секцию.
+     */
+    @Column(name = "archived", insertable = false, updatable = false)
+    private boolean archived;
 }
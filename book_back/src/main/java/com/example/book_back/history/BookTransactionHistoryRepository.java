@@ -1,13 +1,25 @@
 package com.example.book_back.history;
 
+import com.example.book_back.book.ActiveLoan;
+import com.example.book_back.book.BookFingerprint;
+import com.example.book_back.book.BorrowedBookSummary;
+import com.example.book_back.book.PendingReturnResponse;
+import com.example.book_back.notification.LoanParticipants;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+/**
+ * Запросы по текущим займам явно фильтруют archived = false: так PostgreSQL отбрасывает архивные секции
+ * еще при планировании и читает только горячую секцию. Списки истории принимают набор допустимых
+ * значений archived и заходят в архив, только если клиент попросил об этом.
+ */
 public interface BookTransactionHistoryRepository extends JpaRepository<BookTransactionHistory, Long> {
     @Query("""
             SELECT
@@ -16,6 +28,7 @@ public interface BookTransactionHistoryRepository extends JpaRepository<BookTran
             WHERE bookTransactionHistory.user.id = :userId
             AND bookTransactionHistory.book.id = :bookId
             AND bookTransactionHistory.returnApproved = false
+            AND bookTransactionHistory.archived = false
             """)
     boolean isAlreadyBorrowedByUser(@Param("bookId") Long bookId, @Param("userId") Long userId);
 
@@ -25,39 +38,285 @@ public interface BookTransactionHistoryRepository extends JpaRepository<BookTran
             FROM BookTransactionHistory bookTransactionHistory
             WHERE bookTransactionHistory.book.id = :bookId
             AND bookTransactionHistory.returnApproved = false
+            AND bookTransactionHistory.archived = false
             """)
     boolean isAlreadyBorrowed(@Param("bookId") Long bookId);
 
+    /**
+     * Незакрытые займы сразу всех книг страницы одним запросом по частичному индексу history_active_book_idx.
+     *
+     * @param bookIds идентификаторы книг страницы
+     * @return займы; книги без займа в результат не попадают
+     */
     @Query("""
-            SELECT transaction
-            FROM BookTransactionHistory  transaction
-            WHERE transaction.user.id = :userId
-            AND transaction.book.id = :bookId
-            AND transaction.returned = false
-            AND transaction.returnApproved = false
+            SELECT new com.example.book_back.book.ActiveLoan(
+                history.book.id,
+                CONCAT(borrower.firstName, ' ', borrower.lastName)
+            )
+            FROM BookTransactionHistory history
+            JOIN history.user borrower
+            WHERE history.book.id IN :bookIds
+            AND history.returnApproved = false
+            AND history.archived = false
+            ORDER BY history.id
             """)
-    Optional<BookTransactionHistory> findByBookIdAndUserId(@Param("bookId") Long bookId, @Param("userId") Long userId);
+    List<ActiveLoan> findActiveLoans(@Param("bookIds") Collection<Long> bookIds);
 
+    /**
+     * Участники займа для уведомления о нем.
+     */
     @Query("""
-            SELECT transaction
-            FROM BookTransactionHistory  transaction
-            WHERE transaction.book.owner.id = :userId
-            AND transaction.book.id = :bookId
-            AND transaction.returned = true
-            AND transaction.returnApproved = false
+            SELECT new com.example.book_back.notification.LoanParticipants(
+                history.id,
+                book.id,
+                book.title,
+                history.user.id,
+                book.owner.id
+            )
+            FROM BookTransactionHistory history
+            JOIN history.book book
+            WHERE history.id = :historyId
             """)
-    Optional<BookTransactionHistory> findByBookIdAndOwnerId(@Param("bookId") Long bookId, @Param("userId") Long userId);
+    Optional<LoanParticipants> findLoanParticipants(@Param("historyId") Long historyId);
 
-    @Query("""
-            SELECT history
+    /**
+     * Отмечает займ пользователя возвращенным одним запросом и возвращает идентификатор записи.
+     * Книга должна быть доступна и не принадлежать пользователю. Состояние займа проверяется и во внешнем
+     * WHERE, поэтому при одновременных запросах строку обновит только первый.
+     *
+     * @return идентификатор обновленной записи или пусто, если подходящего займа нет
+     */
+    @Query(nativeQuery = true, value = """
+            UPDATE book_transaction_history_t history
+            SET returned = true,
+                version = history.version + 1,
+                last_modified_date = LOCALTIMESTAMP,
+                last_modified_by = :userId
+            WHERE history.id = (
+                SELECT candidate.id
+                FROM book_transaction_history_t candidate
+                JOIN book_t book ON book.id = candidate.book_id
+                WHERE candidate.book_id = :bookId
+                AND candidate.user_id = :userId
+                AND candidate.returned = false
+                AND candidate.return_approved = false
+                AND candidate.archived = false
+                AND book.archived = false
+                AND book.shareable = true
+                AND book.owner_id <> :userId
+                ORDER BY candidate.id
+                LIMIT 1
+            )
+            AND history.returned = false
+            AND history.return_approved = false
+            AND history.archived = false
+            RETURNING history.id
+            """)
+    Optional<Long> markReturned(@Param("bookId") Long bookId, @Param("userId") Long userId);
+
+    /**
+     * Подтверждает возврат книги владельцем одним запросом и возвращает закрытый займ.
+     *
+     * @return закрытый займ или пусто, если возвращенного неподтвержденного займа нет
+     */
+    @Query(nativeQuery = true, value = """
+            UPDATE book_transaction_history_t history
+            SET return_approved = true,
+                version = history.version + 1,
+                last_modified_date = LOCALTIMESTAMP,
+                last_modified_by = :ownerId
+            WHERE history.id = (
+                SELECT candidate.id
+                FROM book_transaction_history_t candidate
+                JOIN book_t book ON book.id = candidate.book_id
+                WHERE candidate.owner_id = :ownerId
+                AND candidate.book_id = :bookId
+                AND candidate.returned = true
+                AND candidate.return_approved = false
+                AND candidate.archived = false
+                AND book.archived = false
+                AND book.shareable = true
+                ORDER BY candidate.id
+                LIMIT 1
+            )
+            AND history.return_approved = false
+            AND history.archived = false
+            RETURNING history.id AS "historyId", history.book_id AS "bookId", history.user_id AS "borrowerId"
+            """)
+    Optional<ClosedLoan> approveReturn(@Param("bookId") Long bookId, @Param("ownerId") Long ownerId);
+
+    /**
+     * Подтверждает все ожидающие возвраты книг владельца одним запросом. Условия для книги те же,
+     * что у {@link #approveReturn}; строки выбираются по частичному индексу history_pending_approval_idx.
+     *
+     * @return закрытые займы
+     */
+    @Query(nativeQuery = true, value = """
+            UPDATE book_transaction_history_t history
+            SET return_approved = true,
+                version = history.version + 1,
+                last_modified_date = LOCALTIMESTAMP,
+                last_modified_by = :ownerId
+            FROM book_t book
+            WHERE book.id = history.book_id
+            AND history.owner_id = :ownerId
+            AND history.returned = true
+            AND history.return_approved = false
+            AND history.archived = false
+            AND book.archived = false
+            AND book.shareable = true
+            RETURNING history.id AS "historyId", history.book_id AS "bookId", history.user_id AS "borrowerId"
+            """)
+    List<ClosedLoan> approveAllReturns(@Param("ownerId") Long ownerId);
+
+    /**
+     * Возвращенные книги владельца, ожидающие подтверждения, по частичному индексу history_pending_approval_idx.
+     * Подтвержденные займы в индекс не попадают, поэтому запрос не зависит от длины истории.
+     */
+    @Query(value = """
+            SELECT new com.example.book_back.book.PendingReturnResponse(
+                history.id,
+                book.id,
+                book.title,
+                book.authorName,
+                book.isbn,
+                borrower.id,
+                CONCAT(borrower.firstName, ' ', borrower.lastName),
+                history.createdDate,
+                history.lastModifiedDate
+            )
+            FROM BookTransactionHistory history
+            JOIN history.book book
+            JOIN history.user borrower
+            WHERE history.ownerId = :ownerId
+            AND history.returned = true
+            AND history.returnApproved = false
+            AND history.archived = false
+            """,
+            countQuery = """
+            SELECT COUNT(history)
+            FROM BookTransactionHistory history
+            WHERE history.ownerId = :ownerId
+            AND history.returned = true
+            AND history.returnApproved = false
+            AND history.archived = false
+            """)
+    Page<PendingReturnResponse> findPendingReturns(Pageable pageable, @Param("ownerId") Long ownerId);
+
+    /**
+     * Книги, которые брал пользователь, вместе со средним рейтингом одним запросом, без загрузки сущностей.
+     */
+    @Query(value = """
+            SELECT new com.example.book_back.book.BorrowedBookSummary(
+                book.id,
+                book.title,
+                book.authorName,
+                book.isbn,
+                (SELECT COALESCE(AVG(feedback.note), 0.0) FROM Feedback feedback WHERE feedback.book = book),
+                history.returned,
+                history.returnApproved
+            )
+            FROM BookTransactionHistory history
+            JOIN history.book book
+            WHERE history.user.id = :userId
+            AND history.archived IN :archived
+            """,
+            countQuery = """
+            SELECT COUNT(history)
             FROM BookTransactionHistory history
             WHERE history.user.id = :userId
+            AND history.archived IN :archived
             """)
-    Page<BookTransactionHistory> findAllBorrowedBooks(Pageable pageable, Long userId);
-    @Query("""
-            SELECT history
+    Page<BorrowedBookSummary> findAllBorrowedBooks(
+            Pageable pageable,
+            @Param("userId") Long userId,
+            @Param("archived") Collection<Boolean> archived
+    );
+
+    /**
+     * Займы книг владельца вместе со средним рейтингом одним запросом, без загрузки сущностей.
+     */
+    @Query(value = """
+            SELECT new com.example.book_back.book.BorrowedBookSummary(
+                book.id,
+                book.title,
+                book.authorName,
+                book.isbn,
+                (SELECT COALESCE(AVG(feedback.note), 0.0) FROM Feedback feedback WHERE feedback.book = book),
+                history.returned,
+                history.returnApproved
+            )
+            FROM BookTransactionHistory history
+            JOIN history.book book
+            WHERE history.ownerId = :userId
+            AND history.archived IN :archived
+            """,
+            countQuery = """
+            SELECT COUNT(history)
+            FROM BookTransactionHistory history
+            WHERE history.ownerId = :userId
+            AND history.archived IN :archived
+            """)
+    Page<BorrowedBookSummary> findAllReturnedBooks(
+            Pageable pageable,
+            @Param("userId") Long userId,
+            @Param("archived") Collection<Boolean> archived
+    );
+
+    /**
+     * Отпечатки страницы из {@link #findAllBorrowedBooks(Pageable, Long, Collection)}.
+     * Версии записи и книги только растут, поэтому их сумма меняется при изменении любой из них.
+     */
+    @Query(value = """
+            SELECT new com.example.book_back.book.BookFingerprint(
+                history.id,
+                history.version + book.version,
+                GREATEST(COALESCE(history.lastModifiedDate, history.createdDate), COALESCE(book.lastModifiedDate, book.createdDate)),
+                (SELECT COUNT(feedback) FROM Feedback feedback WHERE feedback.book = book),
+                (SELECT MAX(feedback.createdDate) FROM Feedback feedback WHERE feedback.book = book)
+            )
+            FROM BookTransactionHistory history
+            JOIN history.book book
+            WHERE history.user.id = :userId
+            AND history.archived IN :archived
+            """,
+            countQuery = """
+            SELECT COUNT(history)
+            FROM BookTransactionHistory history
+            WHERE history.user.id = :userId
+            AND history.archived IN :archived
+            """)
+    Page<BookFingerprint> findBorrowedBookFingerprints(
+            Pageable pageable,
+            @Param("userId") Long userId,
+            @Param("archived") Collection<Boolean> archived
+    );
+
+    /**
+     * Отпечатки страницы из {@link #findAllReturnedBooks(Pageable, Long, Collection)}.
+     */
+    @Query(value = """
+            SELECT new com.example.book_back.book.BookFingerprint(
+                history.id,
+                history.version + book.version,
+                GREATEST(COALESCE(history.lastModifiedDate, history.createdDate), COALESCE(book.lastModifiedDate, book.createdDate)),
+                (SELECT COUNT(feedback) FROM Feedback feedback WHERE feedback.book = book),
+                (SELECT MAX(feedback.createdDate) FROM Feedback feedback WHERE feedback.book = book)
+            )
+            FROM BookTransactionHistory history
+            JOIN history.book book
+            WHERE history.ownerId = :userId
+            AND history.archived IN :archived
+            """,
+            countQuery = """
+            SELECT COUNT(history)
             FROM BookTransactionHistory history
-            WHERE history.book.owner.id = :userId
+            WHERE history.ownerId = :userId
+            AND history.archived IN :archived
             """)
-    Page<BookTransactionHistory> findAllReturnedBooks(Pageable pageable, Long userId);
+    Page<BookFingerprint> findReturnedBookFingerprints(
+            Pageable pageable,
+            @Param("userId") Long userId,
+            @Param("archived") Collection<Boolean> archived
+    );
 }
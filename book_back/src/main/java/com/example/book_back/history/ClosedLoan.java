@@ -0,0 +1,13 @@
+package com.example.book_back.history;
+
+/**
+ * Займ, возврат которого подтвержден, из RETURNING запроса подтверждения.
+ */
+public interface ClosedLoan {
+
+    Long getHistoryId();
+
+    Long getBookId();
+
+    Long getBorrowerId();
+}
@@ -0,0 +1,192 @@
+package com.example.book_back.history;
+
+import java.util.Arrays;
+
+/**
+ * Сжатое множество неотрицательных int в духе Roaring: старшие 16 бит значения выбирают контейнер,
+ * младшие хранятся в нем. Контейнер до {@value #ARRAY_MAX} значений - отсортированный char[],
+ * больше - битовая карта на 65536 бит (8 КБ). Множество из нескольких книг читателя занимает десятки байт,
+ * плотные множества (все книги на руках) - около бита на книгу. Не потокобезопасно.
+ */
+final class CompactBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    private char[] keys = new char[0];
+    private Object[] containers = new Object[0];
+    private int[] cardinalities = new int[0];
+    private int size;
+
+    boolean contains(int value) {
+        int index = findKey(high(value));
+        if (index < 0) {
+            return false;
+        }
+        char low = low(value);
+        Object container = containers[index];
+        if (container instanceof long[] words) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) container, 0, cardinalities[index], low) >= 0;
+    }
+
+    /**
+     * @return true, если значения не было
+     */
+    boolean add(int value) {
+        char high = high(value);
+        char low = low(value);
+        int index = findKey(high);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, high, new char[4]);
+        }
+        Object container = containers[index];
+        int cardinality = cardinalities[index];
+        if (container instanceof long[] words) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= bit;
+        } else {
+            char[] values = (char[]) container;
+            int position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            if (cardinality == ARRAY_MAX) {
+                long[] words = toBitmap(values, cardinality);
+                words[low >>> 6] |= 1L << low;
+                containers[index] = words;
+            } else {
+                if (cardinality == values.length) {
+                    values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality << 1));
+                    containers[index] = values;
+                }
+                System.arraycopy(values, position, values, position + 1, cardinality - position);
+                values[position] = low;
+            }
+        }
+        cardinalities[index] = cardinality + 1;
+        return true;
+    }
+
+    /**
+     * @return true, если значение было
+     */
+    boolean remove(int value) {
+        int index = findKey(high(value));
+        if (index < 0) {
+            return false;
+        }
+        char low = low(value);
+        Object container = containers[index];
+        int cardinality = cardinalities[index];
+        if (container instanceof long[] words) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                return false;
+            }
+            words[low >>> 6] &= ~bit;
+            if (cardinality - 1 <= ARRAY_MAX) {
+                containers[index] = toArray(words, cardinality - 1);
+            }
+        } else {
+            char[] values = (char[]) container;
+            int position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+        }
+        if (cardinality == 1) {
+            removeContainer(index);
+        } else {
+            cardinalities[index] = cardinality - 1;
+        }
+        return true;
+    }
+
+    int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += cardinalities[i];
+        }
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Примерный объем в байтах.
+     */
+    long estimatedBytes() {
+        long bytes = 16 + keys.length * 2L + containers.length * 8L + cardinalities.length * 4L;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i] instanceof long[] ? BITMAP_WORDS * 8L : ((char[]) containers[i]).length * 2L;
+        }
+        return bytes;
+    }
+
+    private int findKey(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    private void insertContainer(int index, char high, Object container) {
+        if (size == keys.length) {
+            int capacity = Math.max(1, size << 1);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, size - index);
+        keys[index] = high;
+        containers[index] = container;
+        cardinalities[index] = 0;
+        size++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        System.arraycopy(cardinalities, index + 1, cardinalities, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    private static long[] toBitmap(char[] values, int cardinality) {
+        long[] words = new long[BITMAP_WORDS];
+        for (int i = 0; i < cardinality; i++) {
+            words[values[i] >>> 6] |= 1L << values[i];
+        }
+        return words;
+    }
+
+    private static char[] toArray(long[] words, int cardinality) {
+        char[] values = new char[cardinality];
+        int position = 0;
+        for (int word = 0; word < BITMAP_WORDS; word++) {
+            long bits = words[word];
+            while (bits != 0) {
+                values[position++] = (char) (word << 6 | Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return values;
+    }
+
+    private static char high(int value) {
+        return (char) (value >>> 16);
+    }
+
+    private static char low(int value) {
+        return (char) value;
+    }
+}
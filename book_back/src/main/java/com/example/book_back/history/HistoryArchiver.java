@@ -0,0 +1,107 @@
+package com.example.book_back.history;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Фоновый перенос закрытых займов (возврат подтвержден) из горячей секции истории в архивную через
+ * application.history.archive-after-months после закрытия. Время закрытия - last_modified_date, его обновляет
+ * подтверждение возврата: давно открытый, но недавно закрытый займ остается в списках без includeArchived.
+ * Архив разбит на годовые секции по created_date, недостающие секции создаются перед переносом.
+ * Строки переносятся пачками: каждая пачка - отдельный UPDATE archived = true в своей транзакции,
+ * PostgreSQL сам перемещает строку между секциями.
+ * Открытые займы никогда не архивируются, поэтому запросы по ним читают только горячую секцию.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class HistoryArchiver {
+
+    private static final String ARCHIVE_TABLE = "book_transaction_history_archive";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${application.history.archive-after-months:6}")
+    private int archiveAfterMonths;
+
+    @Value("${application.history.archive-batch-size:5000}")
+    private int batchSize;
+
+    @Scheduled(
+            initialDelayString = "${application.history.archive-interval:PT1H}",
+            fixedDelayString = "${application.history.archive-interval:PT1H}"
+    )
+    public void archive() {
+        try {
+            LocalDateTime cutoff = LocalDate.now().minusMonths(archiveAfterMonths).atStartOfDay();
+            int archived = archiveClosedLoans(cutoff);
+            log.info("Loan history archival finished, {} loans archived", archived);
+        } catch (DataAccessException e) {
+            log.error("Loan history archival failed", e);
+        }
+    }
+
+    /**
+     * Переносит в архив займы, закрытые раньше {@code closedBefore}.
+     *
+     * @param closedBefore граница по дате закрытия займа
+     * @return число перенесенных займов
+     */
+    public int archiveClosedLoans(LocalDateTime closedBefore) {
+        Timestamp before = Timestamp.valueOf(closedBefore);
+        Integer[] years = jdbcTemplate.queryForObject("""
+                SELECT EXTRACT(YEAR FROM MIN(created_date))::int, EXTRACT(YEAR FROM MAX(created_date))::int
+                FROM book_transaction_history_t
+                WHERE archived = false
+                AND return_approved = true
+                AND COALESCE(last_modified_date, created_date) < ?
+                """, (resultSet, rowNum) -> new Integer[]{
+                        (Integer) resultSet.getObject(1), (Integer) resultSet.getObject(2)
+                }, before);
+        if (years == null || years[0] == null) {
+            return 0;
+        }
+        for (int year = years[0]; year <= years[1]; year++) {
+            createArchivePartition(year);
+        }
+
+        int total = 0;
+        int updated;
+        do {
+            updated = jdbcTemplate.update("""
+                    UPDATE book_transaction_history_t
+                    SET archived = true
+                    WHERE archived = false
+                    AND id IN (
+                        SELECT id
+                        FROM book_transaction_history_t
+                        WHERE archived = false
+                        AND return_approved = true
+                        AND COALESCE(last_modified_date, created_date) < ?
+                        LIMIT ?
+                    )
+                    """, before, batchSize);
+            total += updated;
+        } while (updated == batchSize);
+        return total;
+    }
+
+    /**
+     * Создает годовую секцию архива, если ее еще нет.
+     */
+    private void createArchivePartition(int year) {
+        // Имя и границы собираются из числа, параметры в DDL не поддерживаются
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + ARCHIVE_TABLE + "_y" + year
+                + " PARTITION OF " + ARCHIVE_TABLE
+                + " FOR VALUES FROM ('" + year + "-01-01') TO ('" + (year + 1) + "-01-01')");
+    }
+}
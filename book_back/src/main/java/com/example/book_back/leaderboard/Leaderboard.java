@@ -0,0 +1,107 @@
+package com.example.book_back.leaderboard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Ограниченный рейтинг книг: не больше {@code capacity} лучших записей в skip list, упорядоченном по score.
+ * Чтение не блокируется и не обращается к базе; изменения сериализуются монитором рейтинга.
+ * <p>
+ * Книга, чья оценка упала, остается в рейтинге ниже, а книги за его пределами не видны, пока не будет
+ * полной перестройки. Поэтому capacity берется с запасом относительно числа отдаваемых позиций.
+ */
+class Leaderboard {
+
+    private static final Comparator<LeaderboardEntry> ORDER = Comparator
+            .comparingDouble(LeaderboardEntry::score).reversed()
+            .thenComparing(LeaderboardEntry::bookId);
+
+    private final int capacity;
+    private volatile Ranking ranking = new Ranking();
+
+    Leaderboard(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Заменяет рейтинг целиком. Читатели видят либо старый рейтинг, либо новый.
+     */
+    synchronized void replaceAll(Collection<LeaderboardEntry> entries) {
+        Ranking replacement = new Ranking();
+        for (LeaderboardEntry entry : entries) {
+            replacement.add(entry);
+        }
+        replacement.trim(capacity);
+        ranking = replacement;
+    }
+
+    /**
+     * Добавляет или обновляет запись книги, если она попадает в первые {@code capacity} позиций.
+     */
+    synchronized void offer(LeaderboardEntry entry) {
+        Ranking current = ranking;
+        current.remove(entry.bookId());
+        if (current.size < capacity || ORDER.compare(entry, current.entries.last()) < 0) {
+            current.add(entry);
+            current.trim(capacity);
+        }
+    }
+
+    synchronized void remove(Long bookId) {
+        ranking.remove(bookId);
+    }
+
+    boolean contains(Long bookId) {
+        return ranking.byBook.containsKey(bookId);
+    }
+
+    List<LeaderboardEntry> top(int limit) {
+        List<LeaderboardEntry> result = new ArrayList<>(limit);
+        for (LeaderboardEntry entry : ranking.entries) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    private static final class Ranking {
+
+        private final ConcurrentSkipListSet<LeaderboardEntry> entries = new ConcurrentSkipListSet<>(ORDER);
+        private final Map<Long, LeaderboardEntry> byBook = new ConcurrentHashMap<>();
+        // size() у ConcurrentSkipListSet линейный; меняется только под монитором рейтинга
+        private int size;
+
+        private void add(LeaderboardEntry entry) {
+            LeaderboardEntry previous = byBook.put(entry.bookId(), entry);
+            if (previous != null) {
+                entries.remove(previous);
+                size--;
+            }
+            entries.add(entry);
+            size++;
+        }
+
+        private void remove(Long bookId) {
+            LeaderboardEntry previous = byBook.remove(bookId);
+            if (previous != null) {
+                entries.remove(previous);
+                size--;
+            }
+        }
+
+        private void trim(int capacity) {
+            while (size > capacity) {
+                LeaderboardEntry last = entries.pollLast();
+                byBook.remove(last.bookId());
+                size--;
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.book_back.leaderboard;
+
+import com.example.book_back.book.LeaderboardBook;
+
+/**
+ * Книга в рейтинге. Для трендов score хранится в единицах опорного момента, см. {@link LeaderboardService}.
+ */
+public record LeaderboardEntry(
+        Long bookId,
+        String title,
+        String authorName,
+        double score,
+        long count
+) {
+
+    public static LeaderboardEntry of(LeaderboardBook book) {
+        return new LeaderboardEntry(book.getBookId(), book.getTitle(), book.getAuthorName(), book.getScore(), book.getCount());
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.book_back.leaderboard;
+
+import com.example.book_back.book.BookActivityEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class LeaderboardListener {
+
+    private final LeaderboardService leaderboardService;
+
+    /**
+     * После фиксации изменения пересчитывает место книги в затронутых рейтингах: отзыв меняет рейтинг лучших,
+     * займ - популярных, а изменение флагов доступности - оба. Если пересчет не удался, книга займет
+     * свое место при следующей полной перестройке {@link LeaderboardService#rebuild()}.
+     *
+     * @param event изменение книги
+     */
+    @Async
+    @TransactionalEventListener
+    public void onBookActivity(BookActivityEvent event) {
+        try {
+            switch (event.type()) {
+                case RATED -> leaderboardService.refreshRating(event.bookId());
+                case BORROWED -> leaderboardService.refreshTrending(event.bookId());
+                case UPDATED -> {
+                    leaderboardService.refreshRating(event.bookId());
+                    leaderboardService.refreshTrending(event.bookId());
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Leaderboards were not updated for book {}", event.bookId(), e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.book_back.leaderboard;
+
+/**
+ * Позиция рейтинга.
+ *
+ * @param score взвешенная оценка для лучших книг или затухающее число займов для трендов
+ * @param count число отзывов или число займов в окне
+ */
+public record LeaderboardResponse(
+        Long bookId,
+        String title,
+        String authorName,
+        double score,
+        long count
+) {
+}
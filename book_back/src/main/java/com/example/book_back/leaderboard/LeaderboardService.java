@@ -0,0 +1,171 @@
+package com.example.book_back.leaderboard;
+
+import com.example.book_back.book.BookRepository;
+import com.example.book_back.book.LeaderboardBook;
+import com.example.book_back.exception.OperationNotPermittedException;
+import com.example.book_back.feedback.FeedbackRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Рейтинги лучших по отзывам и популярных сейчас книг в памяти. Ответы строятся только из памяти.
+ * <p>
+ * При старте и затем каждые application.leaderboard.rebuild-interval рейтинги перестраиваются по базе.
+ * Между перестройками книга, получившая отзыв или займ, пересчитывается одним запросом и занимает свое место.
+ * <p>
+ * Популярность - число займов за окно, где вес займа убывает вдвое каждые half-life. Чтобы не пересчитывать
+ * все книги с течением времени, оценка хранится относительно опорного момента (момента перестройки):
+ * займ в момент t весит exp((t - landmark) / tau). Порядок от опорного момента не зависит, а текущее значение
+ * получается умножением на exp(-(now - landmark) / tau).
+ */
+@Service
+@Slf4j
+public class LeaderboardService {
+
+    private final BookRepository bookRepository;
+    private final FeedbackRepository feedbackRepository;
+
+    /**
+     * Наибольшее число позиций в ответе.
+     */
+    @Value("${application.leaderboard.max-size:100}")
+    private int maxSize;
+
+    /**
+     * Число книг, которые держит каждый рейтинг; с запасом относительно max-size.
+     */
+    @Value("${application.leaderboard.capacity:1000}")
+    private int capacity;
+
+    /**
+     * Вес средней оценки в байесовском среднем, в отзывах.
+     */
+    @Value("${application.leaderboard.prior-weight:10}")
+    private double priorWeight;
+
+    @Value("${application.leaderboard.trending-window:P30D}")
+    private Duration trendingWindow;
+
+    @Value("${application.leaderboard.trending-half-life:P3D}")
+    private Duration trendingHalfLife;
+
+    private Leaderboard topRated;
+    private Leaderboard trending;
+    /**
+     * Параметры, с которыми построены текущие рейтинги. Пересчет книги, начатый до перестройки,
+     * не попадает в новый рейтинг.
+     */
+    private volatile Basis basis = new Basis(0, LocalDateTime.now());
+
+    public LeaderboardService(BookRepository bookRepository, FeedbackRepository feedbackRepository) {
+        this.bookRepository = bookRepository;
+        this.feedbackRepository = feedbackRepository;
+    }
+
+    @PostConstruct
+    void init() {
+        topRated = new Leaderboard(capacity);
+        trending = new Leaderboard(capacity);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(
+            initialDelayString = "${application.leaderboard.rebuild-interval:PT1H}",
+            fixedDelayString = "${application.leaderboard.rebuild-interval:PT1H}"
+    )
+    public void rebuild() {
+        try {
+            long started = System.currentTimeMillis();
+            Basis rebuilt = new Basis(feedbackRepository.findAverageNote(), LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS));
+            List<LeaderboardEntry> rated = bookRepository.findTopRated(priorWeight, rebuilt.meanNote(), capacity).stream()
+                    .map(LeaderboardEntry::of)
+                    .toList();
+            List<LeaderboardEntry> popular = bookRepository.findTrending(
+                            rebuilt.landmark().minus(trendingWindow), rebuilt.landmark(), tau(), capacity).stream()
+                    .map(LeaderboardEntry::of)
+                    .toList();
+            synchronized (this) {
+                topRated.replaceAll(rated);
+                trending.replaceAll(popular);
+                basis = rebuilt;
+            }
+            log.info("Leaderboards rebuilt in {} ms: {} top rated, {} trending",
+                    System.currentTimeMillis() - started, rated.size(), popular.size());
+        } catch (DataAccessException e) {
+            log.error("Leaderboard rebuild failed", e);
+        }
+    }
+
+    /**
+     * Пересчитывает место книги в рейтинге лучших по отзывам.
+     */
+    public void refreshRating(Long bookId) {
+        Basis current = basis;
+        apply(topRated, bookId, current, bookRepository.findRatedBook(bookId, priorWeight, current.meanNote()));
+    }
+
+    /**
+     * Пересчитывает место книги в рейтинге популярных.
+     */
+    public void refreshTrending(Long bookId) {
+        Basis current = basis;
+        LocalDateTime since = LocalDateTime.now().minus(trendingWindow);
+        apply(trending, bookId, current, bookRepository.findTrendingBook(bookId, since, current.landmark(), tau()));
+    }
+
+    private synchronized void apply(Leaderboard leaderboard, Long bookId, Basis computedWith, Optional<LeaderboardBook> book) {
+        if (computedWith != basis) {
+            // Рейтинг уже перестроен с другими параметрами и учитывает это изменение
+            return;
+        }
+        if (book.isPresent() && book.get().isDisplayable() && book.get().getCount() > 0) {
+            leaderboard.offer(LeaderboardEntry.of(book.get()));
+        } else {
+            leaderboard.remove(bookId);
+        }
+    }
+
+    public List<LeaderboardResponse> findTopRated(int size) {
+        checkSize(size);
+        return topRated.top(size).stream()
+                .map(entry -> new LeaderboardResponse(entry.bookId(), entry.title(), entry.authorName(), entry.score(), entry.count()))
+                .toList();
+    }
+
+    public List<LeaderboardResponse> findTrending(int size) {
+        checkSize(size);
+        Basis current = basis;
+        double decay = Math.exp(-Duration.between(current.landmark(), LocalDateTime.now()).toSeconds() / tau());
+        return trending.top(size).stream()
+                .map(entry -> new LeaderboardResponse(entry.bookId(), entry.title(), entry.authorName(), entry.score() * decay, entry.count()))
+                .toList();
+    }
+
+    private void checkSize(int size) {
+        if (size < 1 || size > maxSize) {
+            throw new OperationNotPermittedException("Leaderboard size must be between 1 and " + maxSize);
+        }
+    }
+
+    /**
+     * Постоянная затухания в секундах: за half-life вес займа уменьшается вдвое.
+     */
+    private double tau() {
+        return trendingHalfLife.toSeconds() / Math.log(2);
+    }
+
+    private record Basis(double meanNote, LocalDateTime landmark) {
+    }
+}
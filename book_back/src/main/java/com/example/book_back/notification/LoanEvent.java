@@ -0,0 +1,25 @@
+package com.example.book_back.notification;
+
+/**
+ * Публикуется сервисом книг при изменении состояния займа. Уведомление отправляется только после фиксации транзакции.
+ *
+ * @param type      что произошло с займом
+ * @param historyId идентификатор записи истории займов
+ */
+public record LoanEvent(Type type, Long historyId) {
+
+    public enum Type {
+        /**
+         * Книгу взяли; уведомляется владелец.
+         */
+        BORROWED,
+        /**
+         * Книгу вернули; уведомляется владелец.
+         */
+        RETURNED,
+        /**
+         * Владелец подтвердил возврат; уведомляется читатель.
+         */
+        RETURN_APPROVED
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.book_back.notification;
+
+/**
+ * Доставка уведомлений о займах на все узлы. На каждом узле уведомление публикуется как событие
+ * приложения {@link LoanNotification}: его получают SSE-подписчики и локальные кэши.
+ * Реализация выбирается параметром {@code application.notifications.bus}.
+ */
+public interface LoanEventBus {
+
+    /**
+     * Доставляет уведомление подписчикам получателя на всех узлах. Не гарантирует доставку:
+     * отключенные в этот момент клиенты перечитывают списки займов при переподключении.
+     */
+    void publish(LoanNotification notification);
+}
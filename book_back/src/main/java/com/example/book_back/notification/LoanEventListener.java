@@ -0,0 +1,36 @@
+package com.example.book_back.notification;
+
+import com.example.book_back.history.BookTransactionHistoryRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class LoanEventListener {
+
+    private final BookTransactionHistoryRepository bookTransactionHistoryRepository;
+    private final LoanEventBus loanEventBus;
+
+    /**
+     * После фиксации изменения займа читает его участников и отправляет уведомление получателю через шину,
+     * чтобы оно дошло до узла, к которому подключен получатель. Об откатившемся займе уведомление не уходит,
+     * а ошибка отправки только записывается в журнал: клиент перечитает списки при переподключении.
+     *
+     * @param event событие займа
+     */
+    @Async
+    @TransactionalEventListener
+    public void onLoanEvent(LoanEvent event) {
+        try {
+            bookTransactionHistoryRepository.findLoanParticipants(event.historyId())
+                    .map(participants -> participants.toNotification(event.type()))
+                    .ifPresent(loanEventBus::publish);
+        } catch (RuntimeException e) {
+            log.warn("Loan notification for history {} was not sent", event.historyId(), e);
+        }
+    }
+}
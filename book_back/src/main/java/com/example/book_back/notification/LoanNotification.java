@@ -0,0 +1,24 @@
+package com.example.book_back.notification;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Уведомление о займе: отправляется клиенту в SSE-потоке и передается между узлами через PostgreSQL NOTIFY.
+ */
+public record LoanNotification(
+        LoanEvent.Type type,
+        Long historyId,
+        Long bookId,
+        String bookTitle,
+        Long borrowerId,
+        Long ownerId
+) {
+
+    /**
+     * Пользователь, которому адресовано уведомление: тот, кто ждет действия другой стороны.
+     */
+    @JsonIgnore
+    public Long recipientId() {
+        return type == LoanEvent.Type.RETURN_APPROVED ? borrowerId : ownerId;
+    }
+}
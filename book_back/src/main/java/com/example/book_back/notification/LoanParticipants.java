@@ -0,0 +1,17 @@
+package com.example.book_back.notification;
+
+/**
+ * Участники займа, выбранные одним запросом для построения уведомления.
+ */
+public record LoanParticipants(
+        Long historyId,
+        Long bookId,
+        String bookTitle,
+        Long borrowerId,
+        Long ownerId
+) {
+
+    public LoanNotification toNotification(LoanEvent.Type type) {
+        return new LoanNotification(type, historyId, bookId, bookTitle, borrowerId, ownerId);
+    }
+}
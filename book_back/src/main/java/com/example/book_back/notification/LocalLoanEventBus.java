@@ -0,0 +1,22 @@
+package com.example.book_back.notification;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Доставка внутри одного узла, без участия базы данных.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "application.notifications.bus", havingValue = "local", matchIfMissing = true)
+public class LocalLoanEventBus implements LoanEventBus {
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Override
+    public void publish(LoanNotification notification) {
+        eventPublisher.publishEvent(notification);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.book_back.notification;
+
+import com.example.book_back.datasource.QueryBudget;
+import com.example.book_back.user.User;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("notifications")
+@RequiredArgsConstructor
+@Tag(name = "Notifications")
+public class NotificationController {
+
+    private final NotificationHub notificationHub;
+
+    /**
+     * Поток уведомлений о займах текущего пользователя (Server-Sent Events).
+     * События: BORROWED и RETURNED приходят владельцу книги, RETURN_APPROVED - читателю.
+     */
+    @QueryBudget(2)
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(Authentication connectedUser) {
+        User user = (User) connectedUser.getPrincipal();
+        return notificationHub.subscribe(user.getId());
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.book_back.notification;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Раздача уведомлений SSE-подписчикам этого узла.
+ * У каждого подписчика своя ограниченная очередь; запись в сокет выполняется в отдельном пуле,
+ * по одной задаче на подписчика, поэтому медленный клиент не задерживает остальных.
+ * Подписчик, очередь которого переполнена, отключается: клиент переподключится и перечитает списки.
+ */
+@Component
+@Slf4j
+public class NotificationHub {
+
+    private final TaskExecutor notificationExecutor;
+    private final Map<Long, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    @Value("${application.notifications.buffer-size:64}")
+    private int bufferSize;
+
+    @Value("${application.notifications.timeout:PT30M}")
+    private Duration timeout;
+
+    @Value("${application.notifications.max-connections-per-user:4}")
+    private int maxConnectionsPerUser;
+
+    public NotificationHub(@Qualifier("notificationExecutor") TaskExecutor notificationExecutor) {
+        this.notificationExecutor = notificationExecutor;
+    }
+
+    /**
+     * Подписывает пользователя на его уведомления. Если у пользователя уже максимум подключений,
+     * самое старое закрывается.
+     */
+    public SseEmitter subscribe(Long userId) {
+        Subscriber subscriber = new Subscriber(userId, new SseEmitter(timeout.toMillis()), new ArrayBlockingQueue<>(bufferSize));
+        subscriber.emitter.onCompletion(() -> remove(subscriber));
+        subscriber.emitter.onTimeout(() -> remove(subscriber));
+        subscriber.emitter.onError(error -> remove(subscriber));
+
+        // Добавление и удаление выполняются под блокировкой ключа, чтобы не потерять подписчика при удалении пустого списка
+        List<Subscriber> userSubscribers = subscribers.compute(userId, (id, list) -> {
+            List<Subscriber> result = list != null ? list : new CopyOnWriteArrayList<>();
+            result.add(subscriber);
+            return result;
+        });
+        // Обходим снимок списка: если его уже убрали из карты или заменили, evict ничего не удаляет и обход прекращается
+        for (Subscriber oldest : userSubscribers) {
+            if (userSubscribers.size() <= maxConnectionsPerUser || !evict(oldest, "too many connections")) {
+                break;
+            }
+        }
+        return subscriber.emitter;
+    }
+
+    /**
+     * @return число подключений пользователя на этом узле
+     */
+    int connectionCount(Long userId) {
+        List<Subscriber> userSubscribers = subscribers.get(userId);
+        return userSubscribers == null ? 0 : userSubscribers.size();
+    }
+
+    /**
+     * Ставит уведомление в очереди всех подключений получателя на этом узле.
+     */
+    @EventListener
+    public void dispatch(LoanNotification notification) {
+        List<Subscriber> userSubscribers = subscribers.get(notification.recipientId());
+        if (userSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : userSubscribers) {
+            enqueue(subscriber, SseEmitter.event()
+                    .name(notification.type().name())
+                    .data(notification, MediaType.APPLICATION_JSON));
+        }
+    }
+
+    /**
+     * Комментарий в поток, чтобы прокси и балансировщики не закрывали простаивающие соединения,
+     * а оборванные соединения обнаруживались без ожидания следующего уведомления.
+     */
+    @Scheduled(
+            initialDelayString = "${application.notifications.heartbeat-interval:PT15S}",
+            fixedDelayString = "${application.notifications.heartbeat-interval:PT15S}"
+    )
+    public void heartbeat() {
+        for (List<Subscriber> userSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : userSubscribers) {
+                enqueue(subscriber, SseEmitter.event().comment("heartbeat"));
+            }
+        }
+    }
+
+    private void enqueue(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        if (!subscriber.queue.offer(event)) {
+            evict(subscriber, "slow consumer");
+            return;
+        }
+        schedule(subscriber);
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (!subscriber.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            notificationExecutor.execute(() -> drain(subscriber));
+        } catch (TaskRejectedException e) {
+            subscriber.draining.set(false);
+            evict(subscriber, "notification pool is saturated");
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while ((event = subscriber.queue.poll()) != null) {
+                subscriber.emitter.send(event);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Клиент отключился; контейнер сообщит об ошибке через onError, но ждать этого не нужно
+            remove(subscriber);
+            return;
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // Уведомление могло прийти между последним poll и сбросом флага
+        if (!subscriber.queue.isEmpty()) {
+            schedule(subscriber);
+        }
+    }
+
+    /**
+     * @return true, если подписчик был подключен и теперь отключен
+     */
+    private boolean evict(Subscriber subscriber, String reason) {
+        if (!remove(subscriber)) {
+            return false;
+        }
+        log.info("SSE subscriber of user {} disconnected: {}", subscriber.userId, reason);
+        subscriber.emitter.complete();
+        return true;
+    }
+
+    private boolean remove(Subscriber subscriber) {
+        AtomicBoolean removed = new AtomicBoolean();
+        subscribers.computeIfPresent(subscriber.userId, (id, list) -> {
+            removed.set(list.remove(subscriber));
+            return list.isEmpty() ? null : list;
+        });
+        subscriber.queue.clear();
+        return removed.get();
+    }
+
+    private record Subscriber(
+            Long userId,
+            SseEmitter emitter,
+            BlockingQueue<SseEmitter.SseEventBuilder> queue,
+            AtomicBoolean draining
+    ) {
+
+        Subscriber(Long userId, SseEmitter emitter, BlockingQueue<SseEmitter.SseEventBuilder> queue) {
+            this(userId, emitter, queue, new AtomicBoolean());
+        }
+    }
+}
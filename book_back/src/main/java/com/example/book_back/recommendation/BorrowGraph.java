@@ -0,0 +1,88 @@
+package com.example.book_back.recommendation;
+
+import java.util.Arrays;
+
+/**
+ * Кто какие книги брал, в сжатом построчном виде (CSR): книги пользователя {@code u} лежат в
+ * {@code userBooks[userOffsets[u] .. userOffsets[u + 1])} как плотные индексы, а {@code bookIds}
+ * переводит индекс в идентификатор книги.
+ */
+final class BorrowGraph {
+
+    final LongIntHashMap index;
+    final long[] bookIds;
+    final int[] userOffsets;
+    final int[] userBooks;
+
+    private BorrowGraph(LongIntHashMap index, long[] bookIds, int[] userOffsets, int[] userBooks) {
+        this.index = index;
+        this.bookIds = bookIds;
+        this.userOffsets = userOffsets;
+        this.userBooks = userBooks;
+    }
+
+    int users() {
+        return userOffsets.length - 1;
+    }
+
+    int books() {
+        return bookIds.length;
+    }
+
+    /**
+     * Накапливает пары (пользователь, книга). Пары должны идти сгруппированными по пользователю,
+     * от последних займов к ранним и без повторов; у пользователя учитываются только первые
+     * {@code maxBooksPerUser} книг, иначе читатели с длинной историей дают квадратичное число пар.
+     */
+    static final class Builder {
+
+        private final int maxBooksPerUser;
+        private final LongIntHashMap index = new LongIntHashMap(1 << 16, -1);
+        private long[] bookIds = new long[1 << 16];
+        private int books;
+        private int[] userOffsets = new int[1 << 16];
+        private int users;
+        private int[] userBooks = new int[1 << 18];
+        private int pairs;
+        private long currentUser;
+        private int currentUserBooks;
+
+        Builder(int maxBooksPerUser) {
+            this.maxBooksPerUser = maxBooksPerUser;
+        }
+
+        void add(long userId, long bookId) {
+            if (users == 0 || userId != currentUser) {
+                if (users + 1 >= userOffsets.length) {
+                    userOffsets = Arrays.copyOf(userOffsets, userOffsets.length << 1);
+                }
+                userOffsets[users++] = pairs;
+                currentUser = userId;
+                currentUserBooks = 0;
+            }
+            if (currentUserBooks == maxBooksPerUser) {
+                return;
+            }
+            int book = index.get(bookId);
+            if (book < 0) {
+                if (books == bookIds.length) {
+                    bookIds = Arrays.copyOf(bookIds, books << 1);
+                }
+                book = books;
+                bookIds[books++] = bookId;
+                index.put(bookId, book);
+            }
+            if (pairs == userBooks.length) {
+                userBooks = Arrays.copyOf(userBooks, pairs << 1);
+            }
+            userBooks[pairs++] = book;
+            currentUserBooks++;
+        }
+
+        BorrowGraph build() {
+            int[] offsets = Arrays.copyOf(userOffsets, users + 1);
+            offsets[users] = pairs;
+            return new BorrowGraph(index, Arrays.copyOf(bookIds, books), offsets, Arrays.copyOf(userBooks, pairs));
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.book_back.recommendation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Разреженная модель совместных займов: для каждой книги - не больше {@code neighborsPerRow} других книг,
+ * которые брали те же читатели, с числом таких читателей, по убыванию. Строки хранятся в массивах int
+ * по плотным индексам книг, без упаковки.
+ * <p>
+ * Модель строится целиком по {@link BorrowGraph} параллельно в fork-join пуле: каждая задача считает
+ * свои строки в собственном рабочем массиве, поэтому задачам не нужна синхронизация. Дальше модель
+ * дополняется по одному займу; новые соседи не добавляются, если модель выходит за бюджет памяти.
+ */
+final class CoOccurrenceModel {
+
+    /**
+     * Число строк в листовой задаче построения.
+     */
+    private static final int ROWS_PER_TASK = 256;
+    private static final int[] EMPTY = new int[0];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LongIntHashMap index;
+    private final int neighborsPerRow;
+    private final long memoryBudget;
+    private long[] bookIds;
+    private int books;
+    private int[][] neighbors;
+    private int[][] counts;
+    private int[] sizes;
+    private long entries;
+
+    private CoOccurrenceModel(LongIntHashMap index, long[] bookIds, int[][] neighbors, int[][] counts,
+                              int neighborsPerRow, long memoryBudget) {
+        this.index = index;
+        this.bookIds = bookIds;
+        this.books = bookIds.length;
+        this.neighbors = neighbors;
+        this.counts = counts;
+        this.neighborsPerRow = neighborsPerRow;
+        this.memoryBudget = memoryBudget;
+        this.sizes = new int[books];
+        for (int book = 0; book < books; book++) {
+            sizes[book] = neighbors[book].length;
+            entries += neighbors[book].length;
+        }
+    }
+
+    /**
+     * Строит модель по истории займов.
+     *
+     * @param neighborsPerRow сколько самых частых соседей хранить для книги
+     * @param memoryBudget    бюджет памяти модели в байтах, учитывается при дополнении
+     * @param pool            пул, в котором считаются строки
+     */
+    static CoOccurrenceModel build(BorrowGraph graph, int neighborsPerRow, long memoryBudget, ForkJoinPool pool) {
+        int books = graph.books();
+        // Обратные списки: пользователи книги b лежат в bookUsers[bookOffsets[b] .. bookOffsets[b + 1])
+        int[] bookOffsets = new int[books + 1];
+        for (int book : graph.userBooks) {
+            bookOffsets[book + 1]++;
+        }
+        for (int book = 0; book < books; book++) {
+            bookOffsets[book + 1] += bookOffsets[book];
+        }
+        int[] bookUsers = new int[graph.userBooks.length];
+        int[] next = Arrays.copyOf(bookOffsets, books);
+        for (int user = 0; user < graph.users(); user++) {
+            for (int i = graph.userOffsets[user]; i < graph.userOffsets[user + 1]; i++) {
+                bookUsers[next[graph.userBooks[i]]++] = user;
+            }
+        }
+
+        int[][] neighbors = new int[books][];
+        int[][] counts = new int[books][];
+        pool.invoke(new RowTask(graph, bookOffsets, bookUsers, neighbors, counts, neighborsPerRow,
+                new ConcurrentLinkedQueue<>(), 0, books));
+        return new CoOccurrenceModel(graph.index, graph.bookIds, neighbors, counts, neighborsPerRow, memoryBudget);
+    }
+
+    /**
+     * Самые частые соседи книги, по убыванию числа общих читателей.
+     */
+    List<Neighbor> related(long bookId, int limit) {
+        lock.readLock().lock();
+        try {
+            int book = index.get(bookId);
+            if (book < 0) {
+                return List.of();
+            }
+            int size = Math.min(limit, sizes[book]);
+            List<Neighbor> result = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                result.add(new Neighbor(bookIds[neighbors[book][i]], counts[book][i]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Учитывает новый займ книги читателем, который раньше брал {@code otherBookIds}.
+     */
+    void addBorrow(long bookId, long[] otherBookIds) {
+        lock.writeLock().lock();
+        try {
+            int book = indexOf(bookId);
+            for (long otherBookId : otherBookIds) {
+                int other = indexOf(otherBookId);
+                if (other != book) {
+                    increment(book, other);
+                    increment(other, book);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int books() {
+        lock.readLock().lock();
+        try {
+            return books;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Примерный объем модели в байтах: таблица индексов, идентификаторы книг и строки.
+     */
+    long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            return bytes(0);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long bytes(long extraEntries) {
+        // Заголовки двух массивов строки и ссылки на них
+        long rowOverhead = 2L * (16 + 8) + Integer.BYTES;
+        return index.estimatedBytes()
+                + (long) bookIds.length * Long.BYTES
+                + (long) neighbors.length * rowOverhead
+                + (entries + extraEntries) * 2 * Integer.BYTES;
+    }
+
+    private int indexOf(long bookId) {
+        int book = index.get(bookId);
+        if (book >= 0) {
+            return book;
+        }
+        if (books == bookIds.length) {
+            int capacity = Math.max(16, books + (books >> 1));
+            bookIds = Arrays.copyOf(bookIds, capacity);
+            neighbors = Arrays.copyOf(neighbors, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+        book = books++;
+        bookIds[book] = bookId;
+        neighbors[book] = EMPTY;
+        counts[book] = EMPTY;
+        index.put(bookId, book);
+        return book;
+    }
+
+    /**
+     * Увеличивает счетчик пары и поднимает соседа, сохраняя порядок по убыванию.
+     */
+    private void increment(int book, int other) {
+        int[] rowNeighbors = neighbors[book];
+        int[] rowCounts = counts[book];
+        int size = sizes[book];
+        int position = 0;
+        while (position < size && rowNeighbors[position] != other) {
+            position++;
+        }
+        if (position == size) {
+            if (size == neighborsPerRow || bytes(1) > memoryBudget) {
+                return;
+            }
+            if (size == rowNeighbors.length) {
+                int capacity = Math.min(neighborsPerRow, Math.max(4, size << 1));
+                neighbors[book] = rowNeighbors = Arrays.copyOf(rowNeighbors, capacity);
+                counts[book] = rowCounts = Arrays.copyOf(rowCounts, capacity);
+            }
+            rowNeighbors[size] = other;
+            rowCounts[size] = 1;
+            sizes[book] = size + 1;
+            entries++;
+            return;
+        }
+        int count = ++rowCounts[position];
+        while (position > 0 && rowCounts[position - 1] < count) {
+            rowNeighbors[position] = rowNeighbors[position - 1];
+            rowCounts[position] = rowCounts[position - 1];
+            position--;
+        }
+        rowNeighbors[position] = other;
+        rowCounts[position] = count;
+    }
+
+    record Neighbor(long bookId, int count) {
+    }
+
+    /**
+     * Рабочие массивы для подсчета строки; переиспользуются задачами через очередь,
+     * так что их не больше, чем одновременно работающих потоков.
+     */
+    private static final class Scratch {
+
+        private final int[] counts;
+        private final int[] touched;
+        private final long[] packed;
+
+        private Scratch(int books) {
+            counts = new int[books];
+            touched = new int[books];
+            packed = new long[books];
+        }
+    }
+
+    private static final class RowTask extends RecursiveAction {
+
+        private final BorrowGraph graph;
+        private final int[] bookOffsets;
+        private final int[] bookUsers;
+        private final int[][] neighbors;
+        private final int[][] counts;
+        private final int neighborsPerRow;
+        private final Queue<Scratch> scratches;
+        private final int from;
+        private final int to;
+
+        private RowTask(BorrowGraph graph, int[] bookOffsets, int[] bookUsers, int[][] neighbors, int[][] counts,
+                        int neighborsPerRow, Queue<Scratch> scratches, int from, int to) {
+            this.graph = graph;
+            this.bookOffsets = bookOffsets;
+            this.bookUsers = bookUsers;
+            this.neighbors = neighbors;
+            this.counts = counts;
+            this.neighborsPerRow = neighborsPerRow;
+            this.scratches = scratches;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROWS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new RowTask(graph, bookOffsets, bookUsers, neighbors, counts, neighborsPerRow, scratches, from, middle),
+                        new RowTask(graph, bookOffsets, bookUsers, neighbors, counts, neighborsPerRow, scratches, middle, to)
+                );
+                return;
+            }
+            Scratch scratch = scratches.poll();
+            if (scratch == null) {
+                scratch = new Scratch(graph.books());
+            }
+            try {
+                for (int book = from; book < to; book++) {
+                    computeRow(book, scratch);
+                }
+            } finally {
+                scratches.offer(scratch);
+            }
+        }
+
+        private void computeRow(int book, Scratch scratch) {
+            int touched = 0;
+            for (int i = bookOffsets[book]; i < bookOffsets[book + 1]; i++) {
+                int user = bookUsers[i];
+                for (int j = graph.userOffsets[user]; j < graph.userOffsets[user + 1]; j++) {
+                    int other = graph.userBooks[j];
+                    if (other != book && scratch.counts[other]++ == 0) {
+                        scratch.touched[touched++] = other;
+                    }
+                }
+            }
+            // Счетчик в старших битах, при равенстве выше сосед с меньшим индексом
+            for (int i = 0; i < touched; i++) {
+                int other = scratch.touched[i];
+                scratch.packed[i] = (long) scratch.counts[other] << 32 | (Integer.MAX_VALUE - other);
+                scratch.counts[other] = 0;
+            }
+            Arrays.sort(scratch.packed, 0, touched);
+            int size = Math.min(touched, neighborsPerRow);
+            int[] rowNeighbors = new int[size];
+            int[] rowCounts = new int[size];
+            for (int i = 0; i < size; i++) {
+                long value = scratch.packed[touched - 1 - i];
+                rowNeighbors[i] = Integer.MAX_VALUE - (int) value;
+                rowCounts[i] = (int) (value >>> 32);
+            }
+            neighbors[book] = rowNeighbors;
+            counts[book] = rowCounts;
+        }
+    }
+}
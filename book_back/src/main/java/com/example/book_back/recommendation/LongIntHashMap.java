@@ -0,0 +1,94 @@
+package com.example.book_back.recommendation;
+
+/**
+ * Отображение long -> int с открытой адресацией и линейным пробированием в массивах примитивов,
+ * без упаковки ключей и значений. Не потокобезопасно.
+ */
+final class LongIntHashMap {
+
+    private static final double MAX_LOAD = 0.5;
+
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+
+    /**
+     * @param expectedSize ожидаемое число ключей
+     * @param missingValue значение {@link #get(long)} для отсутствующего ключа
+     */
+    LongIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        allocate(tableSize(expectedSize));
+    }
+
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return missingValue;
+    }
+
+    void put(long key, int value) {
+        if (size + 1 > keys.length * MAX_LOAD) {
+            rehash(keys.length << 1);
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Примерный объем массивов таблицы в байтах.
+     */
+    long estimatedBytes() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES + 1);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+    }
+
+    private static int tableSize(int expectedSize) {
+        int capacity = Integer.highestOneBit((int) Math.max(16, Math.ceil(expectedSize / MAX_LOAD)));
+        return capacity < expectedSize / MAX_LOAD ? capacity << 1 : capacity;
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.book_back.recommendation;
+
+import com.example.book_back.history.BookTransactionHistoryRepository;
+import com.example.book_back.notification.LoanEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class RecommendationListener {
+
+    private final BookTransactionHistoryRepository bookTransactionHistoryRepository;
+    private final RecommendationService recommendationService;
+
+    /**
+     * После фиксации нового займа добавляет его в модель совместных займов. Возвраты пар не меняют и пропускаются.
+     * Если модель в этот момент перестраивается, займ применяется и к новой модели
+     * (см. {@link RecommendationService#rebuild()}).
+     *
+     * @param event событие займа
+     */
+    @Async
+    @TransactionalEventListener
+    public void onLoanEvent(LoanEvent event) {
+        if (event.type() != LoanEvent.Type.BORROWED) {
+            return;
+        }
+        try {
+            bookTransactionHistoryRepository.findLoanParticipants(event.historyId())
+                    .ifPresent(loan -> recommendationService.recordBorrow(loan.historyId(), loan.bookId(), loan.borrowerId()));
+        } catch (RuntimeException e) {
+            log.warn("Borrow {} was not added to the recommendation model", event.historyId(), e);
+        }
+    }
+}
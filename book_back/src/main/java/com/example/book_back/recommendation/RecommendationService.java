@@ -0,0 +1,269 @@
+package com.example.book_back.recommendation;
+
+import com.example.book_back.book.BookRepository;
+import com.example.book_back.book.BookSummary;
+import com.example.book_back.exception.OperationNotPermittedException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Рекомендации «читатели этой книги также брали» по модели совместных займов {@link CoOccurrenceModel}.
+ * Модель строится после старта и затем каждые application.recommendations.rebuild-interval,
+ * а между перестройками дополняется каждым новым займом. Пока модель строится, займы применяются
+ * к старой модели и запоминаются, чтобы применить к новой те из них, которых не было в ее снимке истории.
+ * Займ, уведомление о котором пришло уже после замены модели, но строка которого попала в снимок,
+ * учитывается дважды до следующей перестройки; уведомления обрабатываются сразу после фиксации,
+ * так что это возможно лишь при задержке, сравнимой со временем перестройки.
+ */
+@Service
+@Slf4j
+public class RecommendationService {
+
+    /**
+     * Наибольшее число рекомендаций в ответе.
+     */
+    public static final int MAX_SIZE = 50;
+
+    private final BookRepository bookRepository;
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+
+    @Value("${application.recommendations.memory-budget:128MB}")
+    private DataSize memoryBudget;
+
+    @Value("${application.recommendations.max-neighbors:100}")
+    private int maxNeighbors;
+
+    /**
+     * Сколько последних книг читателя учитывается; ограничивает квадратичное число пар у активных читателей.
+     */
+    @Value("${application.recommendations.max-books-per-user:50}")
+    private int maxBooksPerUser;
+
+    private volatile CoOccurrenceModel model;
+    private boolean building;
+    private final List<Borrow> pendingBorrows = new ArrayList<>();
+
+    public RecommendationService(
+            BookRepository bookRepository,
+            DataSource dataSource,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry
+    ) {
+        this.bookRepository = bookRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        // PostgreSQL отдает результат порциями только с fetchSize и внутри транзакции
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(10_000);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // Граф и проверка займов, пришедших во время перестройки, читаются из одного снимка базы
+        this.readOnlyTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        Gauge.builder("recommendations.model.bytes", this, service -> {
+                    CoOccurrenceModel current = service.model;
+                    return current == null ? 0 : current.estimatedBytes();
+                })
+                .description("Estimated memory used by the co-occurrence model")
+                .register(meterRegistry);
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    @Scheduled(
+            initialDelayString = "${application.recommendations.rebuild-interval:PT24H}",
+            fixedDelayString = "${application.recommendations.rebuild-interval:PT24H}"
+    )
+    public void rebuild() {
+        synchronized (this) {
+            if (building) {
+                return;
+            }
+            building = true;
+        }
+        try {
+            // Снимок базы держится до замены модели: займы, пришедшие во время перестройки, сверяются с ним
+            readOnlyTransaction.executeWithoutResult(status -> {
+                long started = System.currentTimeMillis();
+                BorrowGraph graph = loadGraph();
+                int neighborsPerRow = neighborsPerRow(graph.books());
+                CoOccurrenceModel rebuilt = CoOccurrenceModel.build(graph, neighborsPerRow, memoryBudget.toBytes(), ForkJoinPool.commonPool());
+                publish(rebuilt);
+                log.info("Recommendation model built in {} ms: {} users, {} books, {} neighbors per book, ~{} MB",
+                        System.currentTimeMillis() - started, graph.users(), graph.books(), neighborsPerRow,
+                        rebuilt.estimatedBytes() >> 20);
+            });
+        } catch (DataAccessException e) {
+            log.error("Recommendation model build failed", e);
+        } finally {
+            synchronized (this) {
+                pendingBorrows.clear();
+                building = false;
+            }
+        }
+    }
+
+    /**
+     * Применяет к новой модели займы, пришедшие во время перестройки, и заменяет ею текущую.
+     * Вызывается в транзакции снимка: займы, строки которых в снимке видны, уже учтены в модели,
+     * повторное добавление удвоило бы их пары. Идентификаторы истории выдаются при вставке, а не при фиксации,
+     * поэтому по их порядку видимость в снимке не определить.
+     */
+    private synchronized void publish(CoOccurrenceModel rebuilt) {
+        if (!pendingBorrows.isEmpty()) {
+            Long[] historyIds = pendingBorrows.stream().map(Borrow::historyId).toArray(Long[]::new);
+            Set<Long> inSnapshot = new HashSet<>(jdbcTemplate.queryForList(
+                    "SELECT id FROM book_transaction_history_t WHERE id = ANY(?)", Long.class, (Object) historyIds));
+            for (Borrow borrow : pendingBorrows) {
+                if (!inSnapshot.contains(borrow.historyId())) {
+                    rebuilt.addBorrow(borrow.bookId(), borrow.otherBookIds());
+                }
+            }
+        }
+        model = rebuilt;
+        pendingBorrows.clear();
+        building = false;
+    }
+
+    /**
+     * Учитывает займ в модели. Если книгу читатель уже брал, новых пар нет.
+     *
+     * @param historyId  идентификатор записи истории займа
+     * @param bookId     идентификатор книги
+     * @param borrowerId идентификатор читателя
+     */
+    public void recordBorrow(Long historyId, Long bookId, Long borrowerId) {
+        // Последние книги читателя, включая эту, - как при построении модели
+        List<long[]> books = jdbcTemplate.query("""
+                SELECT book_id, COUNT(*)
+                FROM book_transaction_history_t
+                WHERE user_id = ?
+                AND book_id IS NOT NULL
+                GROUP BY book_id
+                ORDER BY MAX(created_date) DESC
+                LIMIT ?
+                """, (resultSet, rowNum) -> new long[]{resultSet.getLong(1), resultSet.getLong(2)},
+                borrowerId, maxBooksPerUser);
+        long[] others = new long[books.size()];
+        int size = 0;
+        for (long[] book : books) {
+            if (book[0] == bookId) {
+                if (book[1] > 1) {
+                    return;
+                }
+            } else {
+                others[size++] = book[0];
+            }
+        }
+        Borrow borrow = new Borrow(historyId, bookId, Arrays.copyOf(others, size));
+        CoOccurrenceModel current;
+        synchronized (this) {
+            if (building) {
+                pendingBorrows.add(borrow);
+            }
+            current = model;
+        }
+        if (current != null) {
+            current.addBorrow(borrow.bookId(), borrow.otherBookIds());
+        }
+    }
+
+    /**
+     * Книги, которые чаще всего брали читатели этой книги, кроме недоступных.
+     * Модель читается из памяти, данные книг - одним запросом.
+     */
+    public List<RelatedBookResponse> findRelated(Long bookId, int size) {
+        if (size < 1 || size > MAX_SIZE) {
+            throw new OperationNotPermittedException("Size must be between 1 and " + MAX_SIZE);
+        }
+        CoOccurrenceModel current = model;
+        if (current == null) {
+            return List.of();
+        }
+        // С запасом: часть соседей может оказаться в архиве или закрыта владельцем
+        List<CoOccurrenceModel.Neighbor> neighbors = current.related(bookId, size * 2);
+        if (neighbors.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, BookSummary> summaries = new HashMap<>();
+        for (BookSummary summary : bookRepository.findAllSummariesByIds(
+                neighbors.stream().map(CoOccurrenceModel.Neighbor::bookId).toList())) {
+            summaries.put(summary.id(), summary);
+        }
+        List<RelatedBookResponse> related = new ArrayList<>(size);
+        for (CoOccurrenceModel.Neighbor neighbor : neighbors) {
+            BookSummary summary = summaries.get(neighbor.bookId());
+            if (summary == null || summary.archived() || !summary.shareable()) {
+                continue;
+            }
+            related.add(new RelatedBookResponse(summary.id(), summary.title(), summary.authorName(), summary.rate(), neighbor.count()));
+            if (related.size() == size) {
+                break;
+            }
+        }
+        return related;
+    }
+
+    /**
+     * Читает граф займов. Вызывается в транзакции снимка {@link #rebuild()}.
+     */
+    private BorrowGraph loadGraph() {
+        BorrowGraph.Builder builder = new BorrowGraph.Builder(maxBooksPerUser);
+        streamingJdbcTemplate.query("""
+                SELECT user_id, book_id
+                FROM book_transaction_history_t
+                WHERE user_id IS NOT NULL
+                AND book_id IS NOT NULL
+                GROUP BY user_id, book_id
+                ORDER BY user_id, MAX(created_date) DESC
+                """, resultSet -> {
+            builder.add(resultSet.getLong(1), resultSet.getLong(2));
+        });
+        return builder.build();
+    }
+
+    /**
+     * Соседей на книгу столько, чтобы строки всех книг уложились в бюджет памяти.
+     * Таблица индексов, идентификатор и заголовки строки занимают около 100 байт на книгу, пара в строке - 8 байт.
+     */
+    private int neighborsPerRow(int books) {
+        long available = memoryBudget.toBytes() - books * 100L;
+        long perRow = books == 0 ? maxNeighbors : available / (books * 8L);
+        if (perRow < 1) {
+            log.warn("Recommendation memory budget {} is too small for {} books", memoryBudget, books);
+            return 1;
+        }
+        return (int) Math.min(maxNeighbors, perRow);
+    }
+
+    private record Borrow(long historyId, long bookId, long[] otherBookIds) {
+    }
+}
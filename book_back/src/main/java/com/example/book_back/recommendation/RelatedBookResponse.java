@@ -0,0 +1,15 @@
+package com.example.book_back.recommendation;
+
+/**
+ * Книга, которую брали читатели исходной книги.
+ *
+ * @param coBorrowers сколько читателей брали обе книги
+ */
+public record RelatedBookResponse(
+        Long bookId,
+        String title,
+        String authorName,
+        Double rate,
+        int coBorrowers
+) {
+}
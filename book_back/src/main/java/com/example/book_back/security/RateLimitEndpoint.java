@@ -0,0 +1,32 @@
+package com.example.book_back.security;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/ratelimits}: кого ограничивают чаще всего и сколько корзин сейчас в памяти.
+ * Не открыт по умолчанию: его нужно добавить в {@code management.endpoints.web.exposure.include},
+ * а доступ к нему, как и ко всему actuator, кроме health, есть только у роли ADMIN.
+ * Число отказов по группам - в метрике {@code rate_limit.rejected}.
+ */
+@Component
+@Endpoint(id = "ratelimits")
+@RequiredArgsConstructor
+public class RateLimitEndpoint {
+
+    private static final int TOP_LIMIT = 50;
+
+    private final RateLimiter rateLimiter;
+
+    @ReadOperation
+    public Map<String, Object> rateLimits() {
+        return Map.of(
+                "buckets", rateLimiter.bucketCounts(),
+                "throttled", rateLimiter.topThrottled(TOP_LIMIT)
+        );
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.book_back.security;
+
+import com.example.book_back.handler.ExceptionResponse;
+import com.example.book_back.user.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.book_back.handler.BusinessErrorCodes.RATE_LIMIT_EXCEEDED;
+
+/**
+ * Ограничивает частоту запросов после JwtFilter: аутентифицированные запросы считаются по пользователю,
+ * остальные - по IP-адресу. Превышение лимита - 429 с заголовком Retry-After.
+ * Регистрируется только в цепочке Spring Security (см. {@link SecurityConfig}), где пользователь уже известен.
+ */
+@Component
+@RequiredArgsConstructor
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+
+    @Value("${application.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !enabled;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        RateLimitGroup group = RateLimitGroup.of(request);
+        Long userId = group == RateLimitGroup.AUTH ? null : authenticatedUserId();
+        long key = userId != null ? RateLimiter.userKey(userId) : RateLimiter.addressKey(request.getRemoteAddr());
+
+        long waitNanos = rateLimiter.tryAcquire(group, key);
+        if (waitNanos == 0) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        rateLimiter.recordRejection(group, userId != null ? "user:" + userId : "ip:" + request.getRemoteAddr());
+        long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        response.setStatus(RATE_LIMIT_EXCEEDED.getHttpStatus().value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), ExceptionResponse.builder()
+                .businessErrorCode(RATE_LIMIT_EXCEEDED.getCode())
+                .businessExceptionDescription(RATE_LIMIT_EXCEEDED.getDescription())
+                .error("Too many requests, retry after " + retryAfterSeconds + " s")
+                .build());
+    }
+
+    private static Long authenticatedUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User user) {
+            return user.getId();
+        }
+        return null;
+    }
+}
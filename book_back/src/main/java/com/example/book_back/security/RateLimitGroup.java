@@ -0,0 +1,45 @@
+package com.example.book_back.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.Getter;
+import org.springframework.http.HttpMethod;
+
+/**
+ * Группы маршрутов со своими лимитами. Значения по умолчанию переопределяются параметрами
+ * {@code application.rate-limit.<group>.capacity} и {@code application.rate-limit.<group>.refill-per-minute}.
+ */
+@Getter
+public enum RateLimitGroup {
+
+    /**
+     * Вход и регистрация: проверка пароля BCrypt дорогая, а пользователь еще не известен, поэтому лимит по IP.
+     */
+    AUTH("auth", 10, 10),
+    /**
+     * Чтение: всплески при листании списков допустимы.
+     */
+    READ("read", 120, 300),
+    WRITE("write", 30, 60)
+    ;
+
+    private final String name;
+    private final int defaultCapacity;
+    private final int defaultRefillPerMinute;
+
+    RateLimitGroup(String name, int defaultCapacity, int defaultRefillPerMinute) {
+        this.name = name;
+        this.defaultCapacity = defaultCapacity;
+        this.defaultRefillPerMinute = defaultRefillPerMinute;
+    }
+
+    public static RateLimitGroup of(HttpServletRequest request) {
+        if (request.getServletPath().startsWith("/auth/")) {
+            return AUTH;
+        }
+        String method = request.getMethod();
+        if (HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method) || HttpMethod.OPTIONS.matches(method)) {
+            return READ;
+        }
+        return WRITE;
+    }
+}
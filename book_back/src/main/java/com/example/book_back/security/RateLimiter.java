@@ -0,0 +1,140 @@
+package com.example.book_back.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ограничение частоты запросов маркерными корзинами: по одной таблице корзин на группу маршрутов.
+ * Ключ - идентификатор пользователя, а для анонимных запросов - хэш IP-адреса.
+ */
+@Component
+@Slf4j
+public class RateLimiter {
+
+    /**
+     * Не больше стольких ключей учитывается в статистике отказов между очистками, чтобы атака
+     * с множества адресов не раздувала память.
+     */
+    private static final int MAX_TRACKED_THROTTLED = 10_000;
+
+    private final Map<RateLimitGroup, TokenBucketTable> tables = new EnumMap<>(RateLimitGroup.class);
+    private final Map<RateLimitGroup, Counter> rejected = new EnumMap<>(RateLimitGroup.class);
+    private final Map<String, LongAdder> throttled = new ConcurrentHashMap<>();
+
+    @Value("${application.rate-limit.idle-eviction:PT10M}")
+    private Duration idleEviction;
+
+    public RateLimiter(Environment environment, MeterRegistry meterRegistry) {
+        for (RateLimitGroup group : RateLimitGroup.values()) {
+            String prefix = "application.rate-limit." + group.getName() + ".";
+            int capacity = environment.getProperty(prefix + "capacity", Integer.class, group.getDefaultCapacity());
+            int refillPerMinute = environment.getProperty(prefix + "refill-per-minute", Integer.class, group.getDefaultRefillPerMinute());
+            TokenBucketTable table = new TokenBucketTable(capacity, refillPerMinute / 60.0);
+            tables.put(group, table);
+            rejected.put(group, Counter.builder("rate_limit.rejected")
+                    .description("Requests rejected with 429")
+                    .tag("group", group.getName())
+                    .register(meterRegistry));
+            Gauge.builder("rate_limit.buckets", table, TokenBucketTable::size)
+                    .description("Token buckets currently tracked")
+                    .tag("group", group.getName())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Ключ корзины пользователя. Младший бит отделяет пользователей от IP-адресов.
+     */
+    public static long userKey(long userId) {
+        return userId << 1;
+    }
+
+    /**
+     * Ключ корзины IP-адреса: 64-битный FNV-1a по символам адреса, без выделения памяти.
+     */
+    public static long addressKey(String address) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < address.length(); i++) {
+            hash ^= address.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return (hash << 1) | 1;
+    }
+
+    /**
+     * Списывает маркер из корзины ключа в группе.
+     *
+     * @return 0, если запрос разрешен, иначе сколько наносекунд ждать до следующего разрешенного запроса
+     */
+    public long tryAcquire(RateLimitGroup group, long key) {
+        return tables.get(group).tryAcquire(key, System.nanoTime());
+    }
+
+    /**
+     * Учитывает отказ в метриках. Вызывается только для отклоненных запросов.
+     *
+     * @param subject кто ограничен, например {@code user:42} или {@code ip:10.0.0.1}
+     */
+    public void recordRejection(RateLimitGroup group, String subject) {
+        rejected.get(group).increment();
+        LongAdder counter = throttled.get(subject);
+        if (counter == null) {
+            if (throttled.size() >= MAX_TRACKED_THROTTLED) {
+                return;
+            }
+            counter = throttled.computeIfAbsent(subject, key -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Чаще всего ограничиваемые пользователи и адреса с момента последней очистки.
+     */
+    public Map<String, Long> topThrottled(int limit) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        throttled.entrySet().stream()
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().sum()))
+                .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(limit)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return top;
+    }
+
+    public Map<String, Integer> bucketCounts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        tables.forEach((group, table) -> counts.put(group.getName(), table.size()));
+        return counts;
+    }
+
+    /**
+     * Вытесняет простаивающие корзины и сбрасывает статистику отказов. Корзина вытесняется
+     * не раньше, чем успела бы пополниться полностью, поэтому вытеснение не дает лишних запросов.
+     */
+    @Scheduled(
+            initialDelayString = "${application.rate-limit.idle-eviction:PT10M}",
+            fixedDelayString = "${application.rate-limit.idle-eviction:PT10M}"
+    )
+    public void evictIdleBuckets() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (TokenBucketTable table : tables.values()) {
+            evicted += table.evictIdle(now, Math.max(idleEviction.toNanos(), table.fullRefillNanos()));
+        }
+        throttled.clear();
+        log.debug("Rate limiter evicted {} idle buckets", evicted);
+    }
+}
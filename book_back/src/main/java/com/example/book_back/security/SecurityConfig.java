@@ -1,6 +1,8 @@
 package com.example.book_back.security;
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationProvider;
@@ -20,7 +22,18 @@ import static org.springframework.security.config.http.SessionCreationPolicy.STA
 @EnableMethodSecurity(securedEnabled = true)
 public class SecurityConfig {
 
+    /**
+     * Роль с доступом к эндпоинтам actuator, кроме health. Создается при старте приложения,
+     * пользователю выдается записью в user_t_roles и действует со следующего запроса:
+     * <pre>
+     * INSERT INTO user_t_roles (user_id, roles_id)
+     * SELECT u.id, r.id FROM user_t u, role_t r WHERE u.email = 'admin@example.com' AND r.name = 'ADMIN';
+     * </pre>
+     */
+    public static final String ADMIN_ROLE = "ADMIN";
+
     private final JwtFilter jwtAuthFilter;
+    private final RateLimitFilter rateLimitFilter;
     private final AuthenticationProvider authenticationProvider;
 
     /**
@@ -42,6 +55,9 @@ public class SecurityConfig {
 
                 // Настраиваем авторизацию запросов
                 .authorizeHttpRequests(req -> req
+                // Асинхронная диспетчеризация (SSE) продолжает уже авторизованный запрос, JwtFilter в ней не выполняется
+                .dispatcherTypeMatchers(DispatcherType.ASYNC)
+                        .permitAll()
                 // Разрешаем доступ к следующим путям без аутентификации
                 .requestMatchers(
                         "/auth/**",
@@ -57,6 +73,11 @@ public class SecurityConfig {
                         "swagger-ui.html"
                 )
                         .permitAll()
+                // Метрики и счетчики ограничений содержат идентификаторы пользователей и адреса клиентов
+                .requestMatchers("/actuator/health", "/actuator/health/**")
+                        .authenticated()
+                .requestMatchers("/actuator/**")
+                        .hasAuthority(ADMIN_ROLE)
                 // Требуем аутентификацию для всех остальных запросов
                 .anyRequest()
                         .authenticated()
@@ -69,8 +90,22 @@ public class SecurityConfig {
             .authenticationProvider(authenticationProvider)
 
             // Добавляем фильтр JWTAuthFilter перед UsernamePasswordAuthenticationFilter
-            .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
+            .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class)
+
+            // Ограничение частоты запросов после JwtFilter, когда пользователь уже известен
+            .addFilterAfter(rateLimitFilter, JwtFilter.class);
 
         return http.build();
     }
+
+    /**
+     * RateLimitFilter - бин, поэтому Spring Boot зарегистрировал бы его и в общей цепочке сервлета,
+     * до Spring Security, где пользователь еще не известен. Там он отключается.
+     */
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(RateLimitFilter filter) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setEnabled(false);
+        return registration;
+    }
 }
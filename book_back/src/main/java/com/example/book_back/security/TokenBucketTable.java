@@ -0,0 +1,182 @@
+package com.example.book_back.security;
+
+/**
+ * Таблица маркерных корзин с ключами long: открытая адресация с линейным пробированием
+ * в массивах примитивов, разбитая на полосы со своей блокировкой.
+ * Списание маркера из существующей корзины не выделяет память; память выделяется только
+ * при росте полосы и при вытеснении простаивающих корзин.
+ */
+final class TokenBucketTable {
+
+    private static final int STRIPE_BITS = 6;
+    private static final int INITIAL_STRIPE_CAPACITY = 64;
+    private static final double MAX_LOAD = 0.5;
+    private static final long EMPTY = 0;
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+    private final double capacity;
+    private final double refillPerNano;
+
+    /**
+     * @param capacity        максимальное число маркеров в корзине (допустимый всплеск)
+     * @param refillPerSecond скорость пополнения, маркеров в секунду
+     */
+    TokenBucketTable(int capacity, double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000.0;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Списывает маркер из корзины ключа, создавая полную корзину для нового ключа.
+     *
+     * @param key ненулевой ключ
+     * @param now текущее время {@link System#nanoTime()}
+     * @return 0, если маркер списан, иначе сколько наносекунд ждать следующего маркера
+     */
+    long tryAcquire(long key, long now) {
+        long hash = mix(key);
+        Stripe stripe = stripes[(int) (hash >>> (Long.SIZE - STRIPE_BITS))];
+        synchronized (stripe) {
+            return stripe.acquire(key, (int) hash, now);
+        }
+    }
+
+    /**
+     * Удаляет корзины, к которым не обращались дольше idleNanos. Если idleNanos не меньше времени
+     * полного пополнения, удаляются только полные корзины, и вытеснение не ослабляет лимит.
+     *
+     * @return число удаленных корзин
+     */
+    int evictIdle(long now, long idleNanos) {
+        int evicted = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                evicted += stripe.evictIdle(now, idleNanos);
+            }
+        }
+        return evicted;
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Время, за которое пустая корзина пополняется полностью.
+     */
+    long fullRefillNanos() {
+        return (long) Math.ceil(capacity / refillPerNano);
+    }
+
+    /**
+     * Финализатор MurmurHash3: верхние биты выбирают полосу, нижние - ячейку внутри нее.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private final class Stripe {
+
+        private long[] keys = new long[INITIAL_STRIPE_CAPACITY];
+        private double[] tokens = new double[INITIAL_STRIPE_CAPACITY];
+        private long[] updated = new long[INITIAL_STRIPE_CAPACITY];
+        private int size;
+
+        long acquire(long key, int hash, long now) {
+            int slot = find(key, hash);
+            if (keys[slot] == EMPTY) {
+                if (size + 1 > keys.length * MAX_LOAD) {
+                    rehash(keys.length * 2, slot -> true);
+                    slot = find(key, hash);
+                }
+                keys[slot] = key;
+                tokens[slot] = capacity;
+                updated[slot] = now;
+                size++;
+            }
+
+            double available = Math.min(capacity, tokens[slot] + (now - updated[slot]) * refillPerNano);
+            updated[slot] = now;
+            if (available >= 1) {
+                tokens[slot] = available - 1;
+                return 0;
+            }
+            tokens[slot] = available;
+            return Math.max(1, (long) Math.ceil((1 - available) / refillPerNano));
+        }
+
+        int evictIdle(long now, long idleNanos) {
+            int before = size;
+            if (before > 0) {
+                rehash(keys.length, slot -> now - updated[slot] < idleNanos);
+            }
+            return before - size;
+        }
+
+        /**
+         * Ячейка с ключом или пустая ячейка, в которую его нужно вставить.
+         */
+        private int find(long key, int hash) {
+            int mask = keys.length - 1;
+            int slot = hash & mask;
+            while (keys[slot] != key && keys[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Перестраивает полосу, оставляя ячейки, для которых keep истинно. Заодно убирает цепочки
+         * пробирования, оставшиеся от удаленных ключей.
+         */
+        private void rehash(int newCapacity, SlotFilter keep) {
+            long[] oldKeys = keys;
+            double[] oldTokens = tokens;
+            long[] oldUpdated = updated;
+            boolean[] kept = new boolean[oldKeys.length];
+            int keptCount = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != EMPTY && keep.test(slot)) {
+                    kept[slot] = true;
+                    keptCount++;
+                }
+            }
+            while (newCapacity > INITIAL_STRIPE_CAPACITY && keptCount < newCapacity * MAX_LOAD / 4) {
+                newCapacity /= 2;
+            }
+
+            keys = new long[newCapacity];
+            tokens = new double[newCapacity];
+            updated = new long[newCapacity];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (kept[slot]) {
+                    int target = find(oldKeys[slot], (int) mix(oldKeys[slot]));
+                    keys[target] = oldKeys[slot];
+                    tokens[target] = oldTokens[slot];
+                    updated[target] = oldUpdated[slot];
+                    size++;
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface SlotFilter {
+        boolean test(int slot);
+    }
+}
@@ -29,8 +29,15 @@ import java.util.stream.Collectors;
 @Table(name = "user_t")
 @EntityListeners(AuditingEntityListener.class)
 public class User implements UserDetails, Principal {
+
+    /**
+     * Шаг последовательности user_t_seq: столько идентификаторов Hibernate резервирует за одно обращение к ней.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_t_seq")
+    @SequenceGenerator(name = "user_t_seq", sequenceName = "user_t_seq", allocationSize = ID_ALLOCATION_SIZE)
     @Column(name = "id")
     private Long id;
 
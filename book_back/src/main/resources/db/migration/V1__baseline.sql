@@ -0,0 +1,112 @@
+-- Схема, которую раньше создавал Hibernate (ddl-auto: create). IF NOT EXISTS позволяет принять
+-- под управление Flyway базу, уже созданную Hibernate; столбцы, которых в такой базе еще нет,
+-- добавляются ниже.
+
+CREATE SEQUENCE IF NOT EXISTS role_t_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS user_t_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS token_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS role_t (
+    id                 bigint       NOT NULL PRIMARY KEY,
+    name               varchar(255),
+    created_date       timestamp(6) NOT NULL,
+    last_modified_date timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS user_t (
+    id                 bigint       NOT NULL PRIMARY KEY,
+    first_name         varchar(255),
+    last_name          varchar(255),
+    birth_date         date,
+    email              varchar(255) UNIQUE,
+    password           varchar(255),
+    account_locked     boolean      NOT NULL,
+    enabled            boolean      NOT NULL,
+    created_date       timestamp(6) NOT NULL,
+    last_modified_date timestamp(6)
+);
+
+CREATE TABLE IF NOT EXISTS user_t_roles (
+    user_id  bigint NOT NULL REFERENCES user_t (id),
+    roles_id bigint NOT NULL REFERENCES role_t (id)
+);
+
+CREATE TABLE IF NOT EXISTS token (
+    id           bigint NOT NULL PRIMARY KEY,
+    token        varchar(255),
+    created_at   timestamp(6),
+    expires_at   timestamp(6),
+    validated_at timestamp(6),
+    user_id      bigint NOT NULL REFERENCES user_t (id)
+);
+
+CREATE TABLE IF NOT EXISTS book_t (
+    id                 bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    created_date       timestamp(6) NOT NULL,
+    last_modified_date timestamp(6),
+    created_by         bigint       NOT NULL,
+    last_modified_by   bigint,
+    version            bigint       NOT NULL,
+    title              varchar(255),
+    author_name        varchar(255),
+    isbn               varchar(255),
+    synopsis           varchar(255),
+    book_cover         varchar(255),
+    cover_thumbnail    varchar(255),
+    cover_detail       varchar(255),
+    archived           boolean      NOT NULL,
+    shareable          boolean      NOT NULL,
+    owner_id           bigint REFERENCES user_t (id)
+);
+
+CREATE TABLE IF NOT EXISTS feedback_t (
+    id                 bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    created_date       timestamp(6) NOT NULL,
+    last_modified_date timestamp(6),
+    created_by         bigint       NOT NULL,
+    last_modified_by   bigint,
+    version            bigint       NOT NULL,
+    note               float(53),
+    comment            varchar(255),
+    book_id            bigint REFERENCES book_t (id)
+);
+
+CREATE TABLE IF NOT EXISTS book_transaction_history_t (
+    id                 bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    created_date       timestamp(6) NOT NULL,
+    last_modified_date timestamp(6),
+    created_by         bigint       NOT NULL,
+    last_modified_by   bigint,
+    version            bigint       NOT NULL,
+    user_id            bigint REFERENCES user_t (id),
+    book_id            bigint REFERENCES book_t (id),
+    owner_id           bigint       NOT NULL,
+    returned           boolean      NOT NULL,
+    return_approved    boolean      NOT NULL
+);
+
+-- База, созданная Hibernate до появления этих столбцов: версия существующих строк начинается с 0,
+-- владелец займа берется из книги.
+ALTER TABLE book_t ADD COLUMN IF NOT EXISTS cover_thumbnail varchar(255);
+ALTER TABLE book_t ADD COLUMN IF NOT EXISTS cover_detail varchar(255);
+ALTER TABLE book_t ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
+ALTER TABLE book_t ALTER COLUMN version DROP DEFAULT;
+ALTER TABLE feedback_t ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
+ALTER TABLE feedback_t ALTER COLUMN version DROP DEFAULT;
+ALTER TABLE book_transaction_history_t ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
+ALTER TABLE book_transaction_history_t ALTER COLUMN version DROP DEFAULT;
+ALTER TABLE book_transaction_history_t ADD COLUMN IF NOT EXISTS owner_id bigint;
+UPDATE book_transaction_history_t history
+SET owner_id = book.owner_id
+FROM book_t book
+WHERE history.book_id = book.id
+AND history.owner_id IS NULL;
+ALTER TABLE book_transaction_history_t ALTER COLUMN owner_id SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS book_cover_idx ON book_t (book_cover);
+CREATE INDEX IF NOT EXISTS book_owner_idx ON book_t (owner_id);
+CREATE INDEX IF NOT EXISTS feedback_book_idx ON feedback_t (book_id);
+CREATE INDEX IF NOT EXISTS history_book_idx ON book_transaction_history_t (book_id);
+CREATE INDEX IF NOT EXISTS history_user_idx ON book_transaction_history_t (user_id, returned);
+CREATE INDEX IF NOT EXISTS history_pending_approval_idx ON book_transaction_history_t (owner_id, created_date)
+    WHERE returned AND NOT return_approved;
@@ -0,0 +1,63 @@
+-- История займов разбивается на горячую часть и архив закрытых займов:
+--   book_transaction_history_t                     PARTITION BY LIST (archived)
+--     book_transaction_history_hot                 archived = false: открытые займы и недавно закрытые
+--     book_transaction_history_archive             archived = true, PARTITION BY RANGE (created_date)
+--       book_transaction_history_archive_yYYYY     годовые секции, создает HistoryArchiver
+-- Запросы с archived = false читают только горячую секцию. Закрытые займы старше
+-- application.history.archive-after переносятся в архив обновлением archived (PostgreSQL переносит строку сам).
+-- Первичный ключ секционированной таблицы обязан включать ключи секционирования всех уровней.
+
+ALTER TABLE book_transaction_history_t RENAME TO book_transaction_history_legacy;
+ALTER INDEX history_book_idx RENAME TO history_legacy_book_idx;
+ALTER INDEX history_user_idx RENAME TO history_legacy_user_idx;
+ALTER INDEX history_pending_approval_idx RENAME TO history_legacy_pending_approval_idx;
+
+CREATE SEQUENCE book_transaction_history_t_id_seq;
+
+CREATE TABLE book_transaction_history_t (
+    id                 bigint       NOT NULL DEFAULT nextval('book_transaction_history_t_id_seq'),
+    created_date       timestamp(6) NOT NULL,
+    last_modified_date timestamp(6),
+    created_by         bigint       NOT NULL,
+    last_modified_by   bigint,
+    version            bigint       NOT NULL,
+    user_id            bigint REFERENCES user_t (id),
+    book_id            bigint REFERENCES book_t (id),
+    owner_id           bigint       NOT NULL,
+    returned           boolean      NOT NULL,
+    return_approved    boolean      NOT NULL,
+    archived           boolean      NOT NULL DEFAULT false,
+    CONSTRAINT book_transaction_history_t_pkey PRIMARY KEY (id, archived, created_date),
+    -- Архивировать можно только закрытые займы
+    CONSTRAINT history_archived_closed_check CHECK (NOT archived OR return_approved)
+) PARTITION BY LIST (archived);
+
+ALTER SEQUENCE book_transaction_history_t_id_seq OWNED BY book_transaction_history_t.id;
+
+CREATE TABLE book_transaction_history_hot
+    PARTITION OF book_transaction_history_t FOR VALUES IN (false);
+
+CREATE TABLE book_transaction_history_archive
+    PARTITION OF book_transaction_history_t FOR VALUES IN (true)
+    PARTITION BY RANGE (created_date);
+
+CREATE INDEX history_book_idx ON book_transaction_history_t (book_id);
+CREATE INDEX history_user_idx ON book_transaction_history_t (user_id, returned);
+CREATE INDEX history_owner_idx ON book_transaction_history_t (owner_id);
+CREATE INDEX history_pending_approval_idx ON book_transaction_history_t (owner_id, created_date)
+    WHERE returned AND NOT return_approved;
+-- Кандидаты на архивацию в горячей секции
+CREATE INDEX history_archivable_idx ON book_transaction_history_t (created_date)
+    WHERE return_approved AND NOT archived;
+
+INSERT INTO book_transaction_history_t (
+    id, created_date, last_modified_date, created_by, last_modified_by, version,
+    user_id, book_id, owner_id, returned, return_approved, archived
+)
+SELECT id, created_date, last_modified_date, created_by, last_modified_by, version,
+       user_id, book_id, owner_id, returned, return_approved, false
+FROM book_transaction_history_legacy;
+
+SELECT setval('book_transaction_history_t_id_seq', (SELECT COALESCE(MAX(id), 0) + 1 FROM book_transaction_history_t), false);
+
+DROP TABLE book_transaction_history_legacy;
@@ -0,0 +1,7 @@
+-- Отзывы книги читаются по порядку (created_date DESC, id DESC) только из индекса:
+-- INCLUDE содержит все поля ответа, а также оценку для AVG по книге.
+CREATE INDEX feedback_book_created_idx ON feedback_t (book_id, created_date DESC, id DESC)
+    INCLUDE (note, comment, created_by);
+
+-- Префикс нового индекса
+DROP INDEX feedback_book_idx;
@@ -0,0 +1,30 @@
+-- Распределение оценок книги по звездам. Счетчики книги разбиты на несколько строк (stripe):
+-- каждый отзыв увеличивает счетчик в случайной строке, поэтому одновременные отзывы на популярную
+-- книгу не ждут блокировку одной строки. При чтении строки книги суммируются.
+CREATE TABLE book_rating_stripe_t (
+    book_id  bigint   NOT NULL REFERENCES book_t (id),
+    stripe   smallint NOT NULL,
+    star1    bigint   NOT NULL DEFAULT 0,
+    star2    bigint   NOT NULL DEFAULT 0,
+    star3    bigint   NOT NULL DEFAULT 0,
+    star4    bigint   NOT NULL DEFAULT 0,
+    star5    bigint   NOT NULL DEFAULT 0,
+    PRIMARY KEY (book_id, stripe)
+);
+
+-- Существующие отзывы попадают в строку 0
+INSERT INTO book_rating_stripe_t (book_id, stripe, star1, star2, star3, star4, star5)
+SELECT book_id,
+       0,
+       COUNT(*) FILTER (WHERE star = 1),
+       COUNT(*) FILTER (WHERE star = 2),
+       COUNT(*) FILTER (WHERE star = 3),
+       COUNT(*) FILTER (WHERE star = 4),
+       COUNT(*) FILTER (WHERE star = 5)
+FROM (
+    SELECT book_id, LEAST(GREATEST(ROUND(note), 1), 5) AS star
+    FROM feedback_t
+    WHERE book_id IS NOT NULL
+    AND note IS NOT NULL
+) feedback
+GROUP BY book_id;
@@ -0,0 +1,2 @@
+-- Займы за последние дни для рейтинга трендов читаются только из индекса
+CREATE INDEX history_created_idx ON book_transaction_history_t (created_date, book_id);
@@ -0,0 +1,5 @@
+-- Незакрытые займы по книге: доступность книг в каталоге и фильтр available.
+-- В индекс попадают только займы без подтвержденного возврата, поэтому его размер не зависит от длины истории;
+-- user_id включен, чтобы читатели займов страницы выбирались без обращения к строкам истории
+CREATE INDEX history_active_book_idx ON book_transaction_history_t (book_id) INCLUDE (user_id)
+    WHERE NOT return_approved AND NOT archived;
@@ -0,0 +1,19 @@
+-- V4 раскладывал оценки по звездам через ROUND(float8), который округляет половины к четному (2.5 -> 2),
+-- а приложение округляет их вверх (Math.round). Распределение пересчитывается с тем же округлением, что в приложении.
+TRUNCATE book_rating_stripe_t;
+
+INSERT INTO book_rating_stripe_t (book_id, stripe, star1, star2, star3, star4, star5)
+SELECT book_id,
+       0,
+       COUNT(*) FILTER (WHERE star = 1),
+       COUNT(*) FILTER (WHERE star = 2),
+       COUNT(*) FILTER (WHERE star = 3),
+       COUNT(*) FILTER (WHERE star = 4),
+       COUNT(*) FILTER (WHERE star = 5)
+FROM (
+    SELECT book_id, LEAST(GREATEST(FLOOR(note + 0.5), 1), 5) AS star
+    FROM feedback_t
+    WHERE book_id IS NOT NULL
+    AND note IS NOT NULL
+) feedback
+GROUP BY book_id;
@@ -0,0 +1,6 @@
+-- Займ архивируется по времени закрытия (подтверждения возврата), а не открытия: иначе давно открытый займ,
+-- закрытый вчера, сразу уходил бы в архив. Подтверждение возврата обновляет last_modified_date.
+DROP INDEX IF EXISTS history_archivable_idx;
+
+CREATE INDEX history_closed_idx ON book_transaction_history_t ((COALESCE(last_modified_date, created_date)))
+    WHERE return_approved AND NOT archived;
@@ -3,7 +3,7 @@ package com.example.book_back;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(properties = "application.query-metrics.fail-on-budget-exceeded=true")
 class BookBackApplicationTests {
 
     @Test
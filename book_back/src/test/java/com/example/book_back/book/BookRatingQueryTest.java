@@ -0,0 +1,117 @@
+package com.example.book_back.book;
+
+import com.example.book_back.feedback.Feedback;
+import com.example.book_back.feedback.FeedbackRepository;
+import com.example.book_back.role.Role;
+import com.example.book_back.role.RoleRepository;
+import com.example.book_back.user.User;
+import com.example.book_back.user.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Байесовская оценка {@link BookRepository#findTopRated(double, double, int)} и
+ * {@link BookRepository#findRatedBook(Long, double, double)} на настоящей базе. Каждый тест откатывается.
+ */
+@SpringBootTest(properties = "application.rate-limit.enabled=false")
+@Transactional
+class BookRatingQueryTest {
+
+    private static final double PRIOR = 10;
+    private static final double MEAN = 3;
+
+    @Autowired
+    private BookRepository bookRepository;
+    @Autowired
+    private FeedbackRepository feedbackRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private EntityManager entityManager;
+
+    private User owner;
+
+    @BeforeEach
+    void setUp() {
+        Role role = roleRepository.findByName("USER")
+                .orElseGet(() -> roleRepository.save(Role.builder().name("USER").build()));
+        owner = userRepository.save(User.builder()
+                .firstName("owner")
+                .lastName("Rating")
+                .email("owner-" + UUID.randomUUID() + "@rating.test")
+                .password("password")
+                .enabled(true)
+                .accountLocked(false)
+                .roles(List.of(role))
+                .build());
+    }
+
+    @Test
+    void feedbackWithoutNoteDoesNotCountAsVote() {
+        Book rated = book();
+        feedback(rated, 5.0);
+        feedback(rated, 5.0);
+        Book commented = book();
+        feedback(commented, 5.0);
+        feedback(commented, 5.0);
+        feedback(commented, null);
+        feedback(commented, null);
+        feedback(commented, null);
+        entityManager.flush();
+
+        LeaderboardBook ratedScore = bookRepository.findRatedBook(rated.getId(), PRIOR, MEAN).orElseThrow();
+        LeaderboardBook commentedScore = bookRepository.findRatedBook(commented.getId(), PRIOR, MEAN).orElseThrow();
+
+        assertThat(commentedScore.getCount()).isEqualTo(2);
+        assertThat(commentedScore.getScore()).isCloseTo((PRIOR * MEAN + 10) / (PRIOR + 2), within(1e-9));
+        assertThat(commentedScore.getScore()).isCloseTo(ratedScore.getScore(), within(1e-9));
+    }
+
+    @Test
+    void bookWithoutNotesHasMeanScoreAndStaysOffTopRated() {
+        Book commented = book();
+        feedback(commented, null);
+        entityManager.flush();
+
+        LeaderboardBook score = bookRepository.findRatedBook(commented.getId(), PRIOR, MEAN).orElseThrow();
+
+        assertThat(score.getCount()).isZero();
+        assertThat(score.getScore()).isCloseTo(MEAN, within(1e-9));
+        assertThat(bookRepository.findTopRated(PRIOR, MEAN, Integer.MAX_VALUE))
+                .extracting(LeaderboardBook::getBookId)
+                .doesNotContain(commented.getId());
+    }
+
+    private Book book() {
+        return bookRepository.save(Book.builder()
+                .title("Title")
+                .authorName("Author")
+                .isbn("978-0000000000")
+                .synopsis("Synopsis")
+                .shareable(true)
+                .owner(owner)
+                .createdBy(owner.getId())
+                .build());
+    }
+
+    private void feedback(Book book, Double note) {
+        feedbackRepository.save(Feedback.builder()
+                .note(note)
+                .comment("Comment")
+                .book(book)
+                .createdBy(owner.getId())
+                .build());
+    }
+}
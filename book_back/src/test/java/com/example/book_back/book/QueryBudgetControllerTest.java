@@ -0,0 +1,153 @@
+package com.example.book_back.book;
+
+import com.example.book_back.datasource.QueryBudget;
+import com.example.book_back.datasource.QueryMetricsFilter;
+import com.example.book_back.role.Role;
+import com.example.book_back.role.RoleRepository;
+import com.example.book_back.security.JwtService;
+import com.example.book_back.user.User;
+import com.example.book_back.user.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.method.HandlerMethod;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+/**
+ * Проверяет {@link QueryBudget} эндпоинтов на настоящей базе: число запросов берется из заголовка X-Query-Count,
+ * а при превышении бюджета фильтр отвечает ошибкой (fail-on-budget-exceeded). Каждый тест откатывается.
+ */
+@SpringBootTest(properties = {
+        "application.query-metrics.fail-on-budget-exceeded=true",
+        "application.query-metrics.response-headers=true",
+        "application.rate-limit.enabled=false"
+})
+@AutoConfigureMockMvc
+@Transactional
+class QueryBudgetControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private JwtService jwtService;
+    @Autowired
+    private EntityManager entityManager;
+
+    private String ownerToken;
+    private String readerToken;
+    private Long bookId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Role role = roleRepository.findByName("USER")
+                .orElseGet(() -> roleRepository.save(Role.builder().name("USER").build()));
+        ownerToken = jwtService.generateToken(user(role, "owner"));
+        readerToken = jwtService.generateToken(user(role, "reader"));
+
+        MvcResult saved = perform(post("/books")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"title": "Title", "authorName": "Author", "isbn": "978-0000000000", "synopsis": "Synopsis", "shareable": true}
+                        """), ownerToken);
+        bookId = Long.valueOf(saved.getResponse().getContentAsString());
+    }
+
+    @Test
+    void catalogEndpointsStayWithinBudget() throws Exception {
+        for (String path : List.of(
+                "/books",
+                "/books?fields=title,rate,available",
+                "/books?available=true",
+                "/books/" + bookId,
+                "/books/batch?ids=" + bookId,
+                "/books/top-rated",
+                "/books/trending",
+                "/books/" + bookId + "/related",
+                "/feedbacks/book/" + bookId,
+                "/feedbacks/book/" + bookId + "/slice",
+                "/feedbacks/book/" + bookId + "/histogram"
+        )) {
+            perform(get(path), readerToken);
+        }
+    }
+
+    @Test
+    void ownerEndpointsStayWithinBudget() throws Exception {
+        for (String path : List.of(
+                "/books/owner",
+                "/books/owner/summary",
+                "/books/borrow/return/pending"
+        )) {
+            perform(get(path), ownerToken);
+        }
+        perform(patch("/books/shareable/" + bookId), ownerToken);
+        perform(patch("/books/shareable/" + bookId), ownerToken);
+    }
+
+    @Test
+    void loanLifecycleStaysWithinBudget() throws Exception {
+        perform(post("/books/borrow/" + bookId), readerToken);
+        perform(get("/books/borrowed"), readerToken);
+        perform(post("/feedbacks")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"note\": 4.5, \"comment\": \"Good\", \"bookId\": " + bookId + "}"), readerToken);
+        perform(patch("/books/borrow/return/" + bookId), readerToken);
+        perform(get("/books/returned"), ownerToken);
+        perform(patch("/books/borrow/return/approve/" + bookId), ownerToken);
+        perform(patch("/books/borrow/return/approve"), ownerToken);
+    }
+
+    private User user(Role role, String name) {
+        return userRepository.save(User.builder()
+                .firstName(name)
+                .lastName("Budget")
+                .email(name + "-" + UUID.randomUUID() + "@budget.test")
+                .password("password")
+                .enabled(true)
+                .accountLocked(false)
+                .roles(List.of(role))
+                .build());
+    }
+
+    /**
+     * Выполняет запрос с пустым контекстом персистентности, чтобы запросы не отвечались из кэша сессии,
+     * и проверяет, что эндпоинт уложился в свой бюджет.
+     */
+    private MvcResult perform(MockHttpServletRequestBuilder request, String token) throws Exception {
+        entityManager.flush();
+        entityManager.clear();
+        RequestBuilder authorized = request.header(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+        MvcResult result = mockMvc.perform(authorized).andReturn();
+
+        String description = result.getRequest().getMethod() + " " + result.getRequest().getRequestURI();
+        assertThat(result.getResponse().getStatus()).as(description).isBetween(200, 299);
+        assertThat(result.getHandler()).as(description).isInstanceOf(HandlerMethod.class);
+        QueryBudget budget = ((HandlerMethod) result.getHandler()).getMethodAnnotation(QueryBudget.class);
+        assertThat(budget).as(description).isNotNull();
+        String count = result.getResponse().getHeader(QueryMetricsFilter.QUERY_COUNT_HEADER);
+        assertThat(count).as(description).isNotNull();
+        assertThat(Integer.parseInt(count)).as(description).isLessThanOrEqualTo(budget.value());
+        return result;
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.book_back.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpiringConcurrentMapCacheTest {
+
+    @Test
+    void returnsValuesUntilTheyExpire() {
+        ExpiringConcurrentMapCache cache = new ExpiringConcurrentMapCache("test", Duration.ofHours(1));
+
+        cache.put(1L, "summary");
+        cache.put(2L, null);
+
+        assertThat(cache.get(1L, String.class)).isEqualTo("summary");
+        assertThat(cache.get(2L)).isNotNull();
+        assertThat(cache.get(2L).get()).isNull();
+        assertThat(cache.get(1L, () -> "loaded")).isEqualTo("summary");
+    }
+
+    @Test
+    void dropsExpiredValues() {
+        ExpiringConcurrentMapCache cache = new ExpiringConcurrentMapCache("test", Duration.ZERO);
+
+        cache.put(1L, "stale");
+
+        assertThat(cache.get(1L)).isNull();
+        assertThat(cache.getNativeCache()).isEmpty();
+
+        cache.put(1L, "stale");
+        assertThat(cache.get(1L, () -> "loaded")).isEqualTo("loaded");
+        assertThat(cache.putIfAbsent(1L, "fresh")).isNull();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.book_back.datasource;
+
+import com.example.book_back.exception.QueryBudgetExceededException;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QueryMetricsFilterTest {
+
+    @Test
+    void rejectsResponseOverBudgetBeforeItIsSent() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThatThrownBy(() -> new QueryMetricsFilter(false, true)
+                .doFilter(new MockHttpServletRequest("GET", "/books"), response, handler(2, 3)))
+                .isInstanceOf(QueryBudgetExceededException.class);
+        assertThat(response.isCommitted()).isFalse();
+        assertThat(response.getContentAsByteArray()).isEmpty();
+        assertThat(QueryStatistics.current()).isNull();
+    }
+
+    @Test
+    void sendsResponseWithinBudget() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new QueryMetricsFilter(true, true)
+                .doFilter(new MockHttpServletRequest("GET", "/books"), response, handler(3, 3));
+
+        assertThat(response.getContentAsString()).isEqualTo("body");
+        assertThat(response.getHeader(QueryMetricsFilter.QUERY_COUNT_HEADER)).isEqualTo("3");
+    }
+
+    @Test
+    void onlyLogsOverBudgetWhenNotFailing() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        new QueryMetricsFilter(false, false)
+                .doFilter(new MockHttpServletRequest("GET", "/books"), response, handler(1, 2));
+
+        assertThat(response.getContentAsString()).isEqualTo("body");
+    }
+
+    /**
+     * Обработчик с бюджетом, который выполняет указанное число запросов и пишет тело ответа.
+     */
+    private static FilterChain handler(int budget, int statements) {
+        return (request, response) -> {
+            QueryStatistics statistics = QueryStatistics.current();
+            statistics.setBudget(budget);
+            for (int i = 0; i < statements; i++) {
+                statistics.beforeStatement();
+                statistics.afterStatement();
+            }
+            response.getWriter().write("body");
+        };
+    }
+}
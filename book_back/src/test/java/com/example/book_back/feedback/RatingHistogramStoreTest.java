@@ -0,0 +1,25 @@
+package com.example.book_back.feedback;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RatingHistogramStoreTest {
+
+    @Test
+    void roundsHalfNotesUpLikeTheRebuildQuery() {
+        // FLOOR(note + 0.5): 0.5 -> 1, 1.5 -> 2, 2.5 -> 3, 3.5 -> 4, 4.5 -> 5
+        assertThat(RatingHistogramStore.star(0.5)).isEqualTo(1);
+        assertThat(RatingHistogramStore.star(1.5)).isEqualTo(2);
+        assertThat(RatingHistogramStore.star(2.5)).isEqualTo(3);
+        assertThat(RatingHistogramStore.star(3.5)).isEqualTo(4);
+        assertThat(RatingHistogramStore.star(4.5)).isEqualTo(5);
+        assertThat(RatingHistogramStore.star(4.4)).isEqualTo(4);
+    }
+
+    @Test
+    void keepsStarsWithinOneToFive() {
+        assertThat(RatingHistogramStore.star(0.1)).isEqualTo(1);
+        assertThat(RatingHistogramStore.star(5.0)).isEqualTo(5);
+    }
+}
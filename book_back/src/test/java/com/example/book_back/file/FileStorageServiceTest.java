@@ -0,0 +1,323 @@
+package com.example.book_back.file;
+
+import com.example.book_back.exception.FileUploadException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.example.book_back.handler.BusinessErrorCodes.CONTENT_HASH_MISMATCH;
+import static com.example.book_back.handler.BusinessErrorCodes.FILE_TOO_LARGE;
+import static com.example.book_back.handler.BusinessErrorCodes.UNSUPPORTED_FILE_TYPE;
+import static com.example.book_back.handler.BusinessErrorCodes.UPLOAD_CAPACITY_EXCEEDED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileStorageServiceTest {
+
+    private static final byte[] PNG_HEADER = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 13};
+    private static final byte[] PDF_HEADER = {'%', 'P', 'D', 'F', '-', '1', '.', '7', '\n', 0, 0, 0};
+    private static final DataSize MAX_FILE_SIZE = DataSize.ofMegabytes(8);
+    private static final long LARGE_FILE_SIZE = DataSize.ofMegabytes(4).toBytes();
+    private static final int CONCURRENT_UPLOADS = 16;
+    private static final int BUFFER = 64 * 1024;
+
+    @TempDir
+    Path uploadDirectory;
+
+    private FileStorageService fileStorageService;
+
+    @BeforeEach
+    void setUp() {
+        FileSystemCoverStore coverStore = new FileSystemCoverStore();
+        ReflectionTestUtils.setField(coverStore, "fileUploadPath", uploadDirectory.toString());
+        fileStorageService = new FileStorageService(coverStore);
+        ReflectionTestUtils.setField(fileStorageService, "fileUploadPath", uploadDirectory.toString());
+        ReflectionTestUtils.setField(fileStorageService, "maxFileSize", MAX_FILE_SIZE);
+        ReflectionTestUtils.setField(fileStorageService, "maxInFlightSize", DataSize.ofMegabytes(256));
+    }
+
+    @Test
+    void savesManyLargeFilesConcurrentlyWithoutHoldingThemInMemory() throws Exception {
+        // Все загрузки вместе больше кучи теста (-Xmx32m): чтение файлов в память закончилось бы OutOfMemoryError
+        assertThat(LARGE_FILE_SIZE * CONCURRENT_UPLOADS).isGreaterThan(Runtime.getRuntime().maxMemory());
+
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_UPLOADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<String>> uploads = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_UPLOADS; i++) {
+                final int seed = i;
+                uploads.add(executor.submit(() -> {
+                    start.await();
+                    return fileStorageService.saveFile(
+                            new GeneratedMultipartFile(PNG_HEADER, LARGE_FILE_SIZE, LARGE_FILE_SIZE, seed, null));
+                }));
+            }
+            start.countDown();
+
+            for (Future<String> upload : uploads) {
+                String savedPath = upload.get(5, TimeUnit.MINUTES);
+                assertThat(savedPath).isNotNull();
+                assertThat(Files.size(Path.of(savedPath))).isEqualTo(LARGE_FILE_SIZE);
+                Files.delete(Path.of(savedPath));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(fileStorageService.getInFlightBytes()).isZero();
+        assertThat(partFiles()).isEmpty();
+    }
+
+    @Test
+    void storesIdenticalContentOnceInFanOutLayout() throws IOException {
+        String first = fileStorageService.saveFile(new GeneratedMultipartFile(PNG_HEADER, 4096, 4096, 7, null));
+        String second = fileStorageService.saveFile(new GeneratedMultipartFile(PNG_HEADER, 4096, 4096, 7, null));
+        String other = fileStorageService.saveFile(new GeneratedMultipartFile(PNG_HEADER, 4096, 4096, 8, null));
+
+        assertThat(second).isEqualTo(first);
+        assertThat(other).isNotEqualTo(first);
+
+        Path stored = Path.of(first);
+        String hash = stored.getFileName().toString().replace(".png", "");
+        assertThat(hash).hasSize(64);
+        assertThat(stored).isEqualTo(uploadDirectory.resolve("covers")
+                .resolve(hash.substring(0, 2))
+                .resolve(hash.substring(2, 4))
+                .resolve(hash + ".png"));
+        assertThat(partFiles()).isEmpty();
+    }
+
+    @Test
+    void skipsWritingKnownContentWithDeclaredHash() throws IOException {
+        String first = fileStorageService.saveFile(new GeneratedMultipartFile(PNG_HEADER, 4096, 4096, 7, null));
+        String hash = Path.of(first).getFileName().toString().replace(".png", "");
+
+        // Любая запись на диск теперь завершилась бы ошибкой: каталог временных файлов заменен обычным файлом
+        Path temporaryDirectory = uploadDirectory.resolve("tmp");
+        Files.delete(temporaryDirectory);
+        Files.createFile(temporaryDirectory);
+
+        GeneratedMultipartFile duplicate = new GeneratedMultipartFile(PNG_HEADER, 4096, 4096, 7, null);
+        assertThat(fileStorageService.saveFile(duplicate.getInputStream(), 4096, hash.toUpperCase())).isEqualTo(first);
+        assertThat(fileStorageService.saveFile(duplicate)).isEqualTo(first);
+        assertThat(fileStorageService.getInFlightBytes()).isZero();
+    }
+
+    @Test
+    void rejectsContentThatDoesNotMatchDeclaredHash() throws IOException {
+        String first = fileStorageService.saveFile(new GeneratedMultipartFile(PNG_HEADER, 4096, 4096, 7, null));
+        String hash = Path.of(first).getFileName().toString().replace(".png", "");
+        GeneratedMultipartFile other = new GeneratedMultipartFile(PNG_HEADER, 4096, 4096, 8, null);
+
+        for (String declaredHash : List.of(hash, "0".repeat(64), "../../" + hash)) {
+            assertThatThrownBy(() -> fileStorageService.saveFile(other.getInputStream(), 4096, declaredHash))
+                    .isInstanceOfSatisfying(FileUploadException.class,
+                            e -> assertThat(e.getErrorCode()).isEqualTo(CONTENT_HASH_MISMATCH));
+        }
+        assertThat(partFiles()).isEmpty();
+        assertThat(fileStorageService.getInFlightBytes()).isZero();
+    }
+
+    @Test
+    void storesAgainCoverDeletedAfterItWasFirstSaved() throws IOException {
+        String first = fileStorageService.saveFile(new GeneratedMultipartFile(PNG_HEADER, 4096, 4096, 7, null));
+        Files.delete(Path.of(first));
+
+        String second = fileStorageService.saveFile(new GeneratedMultipartFile(PNG_HEADER, 4096, 4096, 7, null));
+
+        assertThat(second).isEqualTo(first);
+        assertThat(Files.size(Path.of(second))).isEqualTo(4096);
+    }
+
+    @Test
+    void rejectsFilesThatAreNotImages() throws IOException {
+        MultipartFile file = new GeneratedMultipartFile(PDF_HEADER, 1024, 1024, 0, null);
+
+        assertThatThrownBy(() -> fileStorageService.saveFile(file))
+                .isInstanceOfSatisfying(FileUploadException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(UNSUPPORTED_FILE_TYPE));
+        assertThat(partFiles()).isEmpty();
+        assertThat(fileStorageService.getInFlightBytes()).isZero();
+    }
+
+    @Test
+    void rejectsContentLargerThanTheLimitWhileStreaming() throws IOException {
+        // Заявленный размер маленький, а фактическое содержимое больше лимита
+        MultipartFile file = new GeneratedMultipartFile(PNG_HEADER, 1024, MAX_FILE_SIZE.toBytes() + BUFFER, 0, null);
+
+        assertThatThrownBy(() -> fileStorageService.saveFile(file))
+                .isInstanceOfSatisfying(FileUploadException.class,
+                        e -> assertThat(e.getErrorCode()).isEqualTo(FILE_TOO_LARGE));
+        assertThat(partFiles()).isEmpty();
+    }
+
+    @Test
+    void rejectsUploadsBeyondTheInFlightLimit() throws Exception {
+        ReflectionTestUtils.setField(fileStorageService, "maxInFlightSize", DataSize.ofMegabytes(6));
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            GeneratedMultipartFile first = new GeneratedMultipartFile(PNG_HEADER, LARGE_FILE_SIZE, LARGE_FILE_SIZE, 1, release);
+            Future<String> blocked = executor.submit(() ->
+                    fileStorageService.saveFile(first.getInputStream(), LARGE_FILE_SIZE, null));
+            while (fileStorageService.getInFlightBytes() == 0) {
+                Thread.onSpinWait();
+            }
+
+            MultipartFile second = new GeneratedMultipartFile(PNG_HEADER, LARGE_FILE_SIZE, LARGE_FILE_SIZE, 2, null);
+            assertThatThrownBy(() -> fileStorageService.saveFile(second.getInputStream(), LARGE_FILE_SIZE, null))
+                    .isInstanceOfSatisfying(FileUploadException.class,
+                            e -> assertThat(e.getErrorCode()).isEqualTo(UPLOAD_CAPACITY_EXCEEDED));
+
+            release.countDown();
+            assertThat(blocked.get(1, TimeUnit.MINUTES)).isNotNull();
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        assertThat(fileStorageService.getInFlightBytes()).isZero();
+    }
+
+    @Test
+    void reservesTheSizeLimitBeforeReadingUploadOfUnknownLength() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            GeneratedMultipartFile file = new GeneratedMultipartFile(PNG_HEADER, -1, LARGE_FILE_SIZE, 3, release);
+            Future<String> upload = executor.submit(() -> fileStorageService.saveFile(file.getInputStream(), -1, null));
+            while (fileStorageService.getInFlightBytes() == 0) {
+                Thread.onSpinWait();
+            }
+            assertThat(fileStorageService.getInFlightBytes()).isEqualTo(MAX_FILE_SIZE.toBytes());
+
+            release.countDown();
+            assertThat(Files.size(Path.of(upload.get(1, TimeUnit.MINUTES)))).isEqualTo(LARGE_FILE_SIZE);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+        assertThat(fileStorageService.getInFlightBytes()).isZero();
+    }
+
+    private List<Path> partFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(uploadDirectory)) {
+            return files.filter(path -> path.toString().endsWith(".part")).toList();
+        }
+    }
+
+    /**
+     * Загружаемый файл, содержимое которого генерируется при чтении и никогда не хранится в памяти целиком.
+     */
+    private record GeneratedMultipartFile(
+            byte[] header,
+            long declaredSize,
+            long actualSize,
+            int seed,
+            CountDownLatch gate
+    ) implements MultipartFile {
+
+        @Override
+        public String getName() {
+            return "file";
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return "cover.png";
+        }
+
+        @Override
+        public String getContentType() {
+            return "image/png";
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return actualSize == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return declaredSize;
+        }
+
+        @Override
+        public byte[] getBytes() throws IOException {
+            try (InputStream input = getInputStream()) {
+                return input.readAllBytes();
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new GeneratedInputStream(this);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            try (InputStream input = getInputStream()) {
+                Files.copy(input, dest.toPath());
+            }
+        }
+    }
+
+    private static class GeneratedInputStream extends InputStream {
+
+        private final GeneratedMultipartFile file;
+        private long position;
+
+        GeneratedInputStream(GeneratedMultipartFile file) {
+            this.file = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (position >= file.actualSize()) {
+                return -1;
+            }
+            // После заголовка загрузка может ждать разрешения, удерживая резерв
+            if (file.gate() != null && position >= file.header().length) {
+                try {
+                    file.gate().await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            int count = (int) Math.min(length, file.actualSize() - position);
+            for (int i = 0; i < count; i++) {
+                long index = position + i;
+                buffer[offset + i] = index < file.header().length
+                        ? file.header()[(int) index]
+                        : (byte) (index * 31 + file.seed());
+            }
+            position += count;
+            return count;
+        }
+    }
+}
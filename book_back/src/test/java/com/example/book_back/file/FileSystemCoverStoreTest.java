@@ -0,0 +1,108 @@
+package com.example.book_back.file;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileSystemCoverStoreTest {
+
+    private static final Instant OLD = Instant.now().minus(Duration.ofDays(2));
+
+    @TempDir
+    Path uploadDirectory;
+
+    private FileSystemCoverStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new FileSystemCoverStore();
+        ReflectionTestUtils.setField(store, "fileUploadPath", uploadDirectory.toString());
+    }
+
+    @Test
+    void sweepsUnreferencedOriginalsWithTheirRenditions() throws IOException {
+        String unused = storeOld(key(1, ".png"));
+        String unusedThumbnail = storeOld(key(1, "_thumb.jpg"));
+        String unusedDetail = storeOld(key(1, "_detail.jpg"));
+        String referenced = storeOld(key(2, ".png"));
+        String referencedThumbnail = storeOld(key(2, "_thumb.jpg"));
+        String recent = store.store(key(3, ".png"), new byte[]{3});
+        String orphanRendition = storeOld(key(4, "_thumb.jpg"));
+
+        int deleted = store.collectGarbage(Instant.now().minus(Duration.ofDays(1)), candidates -> candidates.stream()
+                .filter(referenced::equals)
+                .collect(Collectors.toSet()));
+
+        assertThat(deleted).isEqualTo(4);
+        assertThat(Path.of(unused)).doesNotExist();
+        assertThat(Path.of(unusedThumbnail)).doesNotExist();
+        assertThat(Path.of(unusedDetail)).doesNotExist();
+        assertThat(Path.of(orphanRendition)).doesNotExist();
+        assertThat(Path.of(referenced)).exists();
+        assertThat(Path.of(referencedThumbnail)).exists();
+        assertThat(Path.of(recent)).exists();
+    }
+
+    @Test
+    void keepsOriginalTouchedDuringSweep() throws IOException {
+        String original = storeOld(key(1, ".png"));
+
+        // Повторная загрузка того же изображения между поиском кандидатов и удалением
+        int deleted = store.collectGarbage(Instant.now().minus(Duration.ofDays(1)), candidates -> {
+            try {
+                assertThat(store.touch(key(1, ".png"))).isEqualTo(original);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return Set.of();
+        });
+
+        assertThat(deleted).isZero();
+        assertThat(Path.of(original)).exists();
+        assertThat(store.read(original)).isNotEmpty();
+    }
+
+    @Test
+    void touchMissesDeletedOriginalSoItIsStoredAgain() throws IOException {
+        String original = store.store(key(1, ".png"), new byte[]{1});
+        Files.delete(Path.of(original));
+
+        assertThat(store.touch(key(1, ".png"))).isNull();
+        assertThat(store.store(key(1, ".png"), new byte[]{1})).isEqualTo(original);
+        assertThat(store.touch(key(1, ".png"))).isEqualTo(original);
+    }
+
+    @Test
+    void deletesOriginalsLeftHalfDeletedBySweep() throws IOException {
+        String original = storeOld(key(1, ".png"));
+        Path abandoned = Path.of(original + ".deleting");
+        Files.move(Path.of(original), abandoned);
+
+        int deleted = store.collectGarbage(Instant.now().minus(Duration.ofDays(1)), candidates -> Set.of());
+
+        assertThat(deleted).isEqualTo(1);
+        assertThat(abandoned).doesNotExist();
+    }
+
+    private String storeOld(String key) throws IOException {
+        String reference = store.store(key, new byte[]{(byte) key.charAt(63)});
+        Files.setLastModifiedTime(Path.of(reference), FileTime.from(OLD));
+        return reference;
+    }
+
+    private static String key(int index, String suffix) {
+        return String.format("%064x", index) + suffix;
+    }
+}
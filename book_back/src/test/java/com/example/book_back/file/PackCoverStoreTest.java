@@ -0,0 +1,155 @@
+package com.example.book_back.file;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PackCoverStoreTest {
+
+    private static final DataSize SEGMENT_SIZE = DataSize.ofKilobytes(64);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsStoredCoversAfterReopen() throws IOException {
+        PackCoverStore store = open();
+        byte[] first = content(1, 4096);
+        byte[] second = content(2, 8192);
+        String firstReference = store.store(key(1), first);
+        String secondReference = store.store(key(2), second);
+
+        assertThat(store.store(key(1), content(3, 100))).isEqualTo(firstReference);
+        assertThat(store.read(firstReference)).isEqualTo(first);
+
+        PackCoverStore reopened = open();
+        assertThat(reopened.read(firstReference)).isEqualTo(first);
+        assertThat(reopened.read(secondReference)).isEqualTo(second);
+        try (InputStream input = reopened.open(secondReference)) {
+            assertThat(input.readAllBytes()).isEqualTo(second);
+        }
+        assertThat(reopened.read(PackCoverStore.REFERENCE_PREFIX + key(99))).isNull();
+    }
+
+    @Test
+    void dropsTornRecordOnRecovery() throws IOException {
+        PackCoverStore store = open();
+        byte[] content = content(1, 4096);
+        String reference = store.store(key(1), content);
+
+        // Имитируем сбой посреди записи: заголовок есть, а данные не дописаны
+        try (FileChannel channel = FileChannel.open(directory.resolve("segment-000001.pack"), StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(23)
+                    .putInt(0x43565250).put((byte) 1).putShort((short) 68).putLong(0).putInt(4096).putInt(12345)
+                    .flip();
+            channel.write(torn, 23 + 68 + 4096);
+        }
+
+        PackCoverStore recovered = open();
+        assertThat(recovered.read(reference)).isEqualTo(content);
+
+        byte[] next = content(2, 4096);
+        String nextReference = recovered.store(key(2), next);
+        assertThat(open().read(nextReference)).isEqualTo(next);
+        assertThat(open().read(reference)).isEqualTo(content);
+    }
+
+    @Test
+    void compactsSegmentsWithDeadEntries() throws IOException {
+        PackCoverStore store = open();
+        List<String> references = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            references.add(store.store(key(i), content(i, 8 * 1024)));
+        }
+        int segmentsBefore = store.segmentCount();
+        Set<String> kept = references.stream().filter(reference -> references.indexOf(reference) % 10 == 0)
+                .collect(Collectors.toSet());
+
+        int deleted = store.collectGarbage(Instant.now().plusSeconds(60), candidates -> kept);
+
+        assertThat(deleted).isEqualTo(references.size() - kept.size());
+        assertThat(store.segmentCount()).isLessThan(segmentsBefore);
+        for (String reference : references) {
+            int index = references.indexOf(reference);
+            byte[] expected = kept.contains(reference) ? content(index, 8 * 1024) : null;
+            assertThat(store.read(reference)).isEqualTo(expected);
+            assertThat(open().read(reference)).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void reopensFromCheckpointScanningOnlyNewerRecords() throws IOException {
+        PackCoverStore store = open();
+        List<String> references = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            references.add(store.store(key(i), content(i, 4096)));
+        }
+        store.checkpoint();
+        String newer = store.store(key(3), content(3, 4096));
+
+        // Повреждаем данные первой записи: полное сканирование остановилось бы на ней и потеряло остальные
+        corrupt(directory.resolve("segment-000001.pack"), 23 + 68);
+
+        PackCoverStore reopened = open();
+        assertThat(reopened.read(references.get(1))).isEqualTo(content(1, 4096));
+        assertThat(reopened.read(references.get(2))).isEqualTo(content(2, 4096));
+        assertThat(reopened.read(newer)).isEqualTo(content(3, 4096));
+    }
+
+    @Test
+    void scansAllSegmentsWhenCheckpointIsDamaged() throws IOException {
+        PackCoverStore store = open();
+        String first = store.store(key(1), content(1, 4096));
+        store.checkpoint();
+        String second = store.store(key(2), content(2, 4096));
+
+        corrupt(directory.resolve("index.checkpoint"), 12);
+
+        PackCoverStore reopened = open();
+        assertThat(reopened.read(first)).isEqualTo(content(1, 4096));
+        assertThat(reopened.read(second)).isEqualTo(content(2, 4096));
+    }
+
+    private static void corrupt(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer current = ByteBuffer.allocate(1);
+            channel.read(current, position);
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) ~current.get(0)}), position);
+        }
+    }
+
+    private PackCoverStore open() throws IOException {
+        PackCoverStore store = new PackCoverStore();
+        ReflectionTestUtils.setField(store, "directory", directory.toString());
+        ReflectionTestUtils.setField(store, "segmentSize", SEGMENT_SIZE);
+        ReflectionTestUtils.setField(store, "compactionThreshold", 0.5);
+        store.open();
+        return store;
+    }
+
+    private static String key(int index) {
+        return String.format("%064x.jpg", index);
+    }
+
+    private static byte[] content(int seed, int size) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        return content;
+    }
+}
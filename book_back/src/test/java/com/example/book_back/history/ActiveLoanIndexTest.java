@@ -0,0 +1,121 @@
+package com.example.book_back.history;
+
+import com.example.book_back.notification.LoanEvent;
+import com.example.book_back.notification.LoanNotification;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ActiveLoanIndexTest {
+
+    @Test
+    void buildsIndexFromOpenLoans() {
+        ActiveLoanIndex index = new ActiveLoanIndex(new LoansJdbcTemplate(List.of(new long[]{1, 10}, new long[]{1, 11}, new long[]{2, 10})));
+
+        assertThat(index.isBorrowedBy(1L, 10L)).isFalse();
+        index.rebuild();
+
+        assertThat(index.isBorrowedBy(1L, 10L)).isTrue();
+        assertThat(index.isBorrowedBy(2L, 11L)).isFalse();
+        assertThat(index.borrowedBy(1L, List.of(10L, 11L, 12L))).containsExactlyInAnyOrder(10L, 11L);
+        assertThat(index.borrowedBy(3L, List.of(10L))).isEmpty();
+    }
+
+    @Test
+    void replaysChangesCommittedDuringRebuild() {
+        LoansJdbcTemplate jdbcTemplate = new LoansJdbcTemplate(List.of(new long[]{1, 10}, new long[]{2, 20}));
+        ActiveLoanIndex index = new ActiveLoanIndex(jdbcTemplate);
+        // Изменения фиксируются, пока читается снимок, в котором их еще нет
+        jdbcTemplate.duringQuery = () -> {
+            index.releasedAfterCommit(1L, 10L);
+            index.borrowedAfterCommit(3L, 30L);
+        };
+
+        index.rebuild();
+
+        assertThat(index.isBorrowedBy(1L, 10L)).isFalse();
+        assertThat(index.isBorrowedBy(2L, 20L)).isTrue();
+        assertThat(index.isBorrowedBy(3L, 30L)).isTrue();
+    }
+
+    @Test
+    void keepsPreviousIndexWhenRebuildFails() {
+        LoansJdbcTemplate jdbcTemplate = new LoansJdbcTemplate(List.of(new long[]{1, 10}));
+        ActiveLoanIndex index = new ActiveLoanIndex(jdbcTemplate);
+        index.rebuild();
+
+        jdbcTemplate.duringQuery = () -> {
+            throw new DataAccessResourceFailureException("Connection lost");
+        };
+        index.rebuild();
+
+        assertThat(index.isBorrowedBy(1L, 10L)).isTrue();
+    }
+
+    @Test
+    void appliesLoansAndApprovedReturnsFromOtherNodes() {
+        ActiveLoanIndex index = new ActiveLoanIndex(new LoansJdbcTemplate(List.of()));
+        index.rebuild();
+
+        index.onLoanNotification(notification(LoanEvent.Type.BORROWED));
+        assertThat(index.isBorrowedBy(2L, 10L)).isTrue();
+
+        index.onLoanNotification(notification(LoanEvent.Type.RETURNED));
+        assertThat(index.isBorrowedBy(2L, 10L)).isTrue();
+
+        index.onLoanNotification(notification(LoanEvent.Type.RETURN_APPROVED));
+        assertThat(index.isBorrowedBy(2L, 10L)).isFalse();
+    }
+
+    @Test
+    void ignoresIdentifiersThatDoNotFitIntoInt() {
+        long large = Integer.MAX_VALUE + 1L;
+        ActiveLoanIndex index = new ActiveLoanIndex(new LoansJdbcTemplate(List.of(new long[]{large, 10}, new long[]{1, large})));
+        index.rebuild();
+
+        assertThat(index.isBorrowedBy(large, 10L)).isFalse();
+        assertThat(index.borrowedBy(1L, List.of(large))).isEmpty();
+    }
+
+    private static LoanNotification notification(LoanEvent.Type type) {
+        return new LoanNotification(type, 100L, 10L, "Title", 2L, 1L);
+    }
+
+    /**
+     * Отдает заданные строки (user_id, book_id) вместо запроса к базе.
+     */
+    private static final class LoansJdbcTemplate extends JdbcTemplate {
+
+        private final List<long[]> loans;
+        private Runnable duringQuery = () -> {
+        };
+
+        private LoansJdbcTemplate(List<long[]> loans) {
+            this.loans = loans;
+        }
+
+        @Override
+        public void query(String sql, RowCallbackHandler handler) {
+            duringQuery.run();
+            try {
+                for (long[] loan : loans) {
+                    ResultSet resultSet = mock(ResultSet.class);
+                    when(resultSet.getLong(1)).thenReturn(loan[0]);
+                    when(resultSet.getLong(2)).thenReturn(loan[1]);
+                    handler.processRow(resultSet);
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.book_back.history;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactBitmapTest {
+
+    @Test
+    void addsAndRemovesValues() {
+        CompactBitmap bitmap = new CompactBitmap();
+
+        assertThat(bitmap.isEmpty()).isTrue();
+        assertThat(bitmap.add(5)).isTrue();
+        assertThat(bitmap.add(5)).isFalse();
+        assertThat(bitmap.add(70_000)).isTrue();
+        assertThat(bitmap.add(Integer.MAX_VALUE)).isTrue();
+
+        assertThat(bitmap.contains(5)).isTrue();
+        assertThat(bitmap.contains(70_000)).isTrue();
+        assertThat(bitmap.contains(Integer.MAX_VALUE)).isTrue();
+        assertThat(bitmap.contains(6)).isFalse();
+        assertThat(bitmap.cardinality()).isEqualTo(3);
+
+        assertThat(bitmap.remove(70_000)).isTrue();
+        assertThat(bitmap.remove(70_000)).isFalse();
+        assertThat(bitmap.remove(5)).isTrue();
+        assertThat(bitmap.remove(Integer.MAX_VALUE)).isTrue();
+        assertThat(bitmap.isEmpty()).isTrue();
+        assertThat(bitmap.cardinality()).isZero();
+    }
+
+    @Test
+    void switchesDenseContainerToBitmapAndBack() {
+        CompactBitmap bitmap = new CompactBitmap();
+        for (int value = 0; value < 5000; value++) {
+            bitmap.add(value * 2);
+        }
+        long dense = bitmap.estimatedBytes();
+
+        assertThat(bitmap.cardinality()).isEqualTo(5000);
+        assertThat(bitmap.contains(9998)).isTrue();
+        assertThat(bitmap.contains(9999)).isFalse();
+
+        for (int value = 0; value < 4000; value++) {
+            assertThat(bitmap.remove(value * 2)).isTrue();
+        }
+
+        assertThat(bitmap.cardinality()).isEqualTo(1000);
+        assertThat(bitmap.estimatedBytes()).isLessThan(dense);
+        assertThat(bitmap.contains(7998)).isFalse();
+        assertThat(bitmap.contains(8000)).isTrue();
+    }
+
+    @Test
+    void behavesLikeASet() {
+        CompactBitmap bitmap = new CompactBitmap();
+        Set<Integer> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 50_000; i++) {
+            // Несколько контейнеров, один из них плотный
+            int value = random.nextInt(4) << 16 | random.nextInt(i % 2 == 0 ? 8192 : 65536);
+            if (random.nextInt(3) == 0) {
+                assertThat(bitmap.remove(value)).isEqualTo(expected.remove(value));
+            } else {
+                assertThat(bitmap.add(value)).isEqualTo(expected.add(value));
+            }
+        }
+
+        assertThat(bitmap.cardinality()).isEqualTo(expected.size());
+        int mismatches = 0;
+        for (int value = 0; value < 4 << 16; value++) {
+            if (bitmap.contains(value) != expected.contains(value)) {
+                mismatches++;
+            }
+        }
+        assertThat(mismatches).isZero();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.book_back.notification;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotificationHubTest {
+
+    private static final Long OWNER_ID = 1L;
+    private static final LoanNotification BORROWED =
+            new LoanNotification(LoanEvent.Type.BORROWED, 10L, 20L, "Title", 2L, OWNER_ID);
+
+    /**
+     * Задачи отправки, поставленные в пул; тест выполняет их сам.
+     */
+    private final List<Runnable> tasks = new ArrayList<>();
+    private NotificationHub hub;
+
+    @BeforeEach
+    void setUp() {
+        hub = hub(tasks::add, 2);
+    }
+
+    @Test
+    void closesOldestConnectionsBeyondTheLimit() throws IOException {
+        SseEmitter first = hub.subscribe(OWNER_ID);
+        SseEmitter second = hub.subscribe(OWNER_ID);
+        SseEmitter third = hub.subscribe(OWNER_ID);
+
+        assertThat(hub.connectionCount(OWNER_ID)).isEqualTo(2);
+        assertThat(isCompleted(first)).isTrue();
+        assertThat(isCompleted(second)).isFalse();
+        assertThat(isCompleted(third)).isFalse();
+    }
+
+    @Test
+    void returnsWhenNoConnectionIsAllowed() throws IOException {
+        NotificationHub closed = hub(tasks::add, 0);
+
+        SseEmitter emitter = closed.subscribe(OWNER_ID);
+
+        assertThat(closed.connectionCount(OWNER_ID)).isZero();
+        assertThat(isCompleted(emitter)).isTrue();
+    }
+
+    @Test
+    void drainsQueueWithOneTaskPerSubscriber() {
+        hub.subscribe(OWNER_ID);
+
+        hub.dispatch(BORROWED);
+        hub.dispatch(BORROWED);
+        assertThat(tasks).hasSize(1);
+
+        tasks.getFirst().run();
+        hub.dispatch(BORROWED);
+
+        assertThat(tasks).hasSize(2);
+        assertThat(hub.connectionCount(OWNER_ID)).isEqualTo(1);
+    }
+
+    @Test
+    void ignoresNotificationsForOtherUsers() {
+        hub.subscribe(OWNER_ID + 1);
+
+        hub.dispatch(BORROWED);
+
+        assertThat(tasks).isEmpty();
+    }
+
+    @Test
+    void disconnectsSlowConsumerWhenItsQueueIsFull() throws IOException {
+        SseEmitter emitter = hub.subscribe(OWNER_ID);
+
+        hub.dispatch(BORROWED);
+        hub.dispatch(BORROWED);
+        hub.dispatch(BORROWED);
+
+        assertThat(hub.connectionCount(OWNER_ID)).isZero();
+        assertThat(isCompleted(emitter)).isTrue();
+    }
+
+    @Test
+    void removesSubscriberWhoseConnectionFailed() {
+        SseEmitter emitter = hub.subscribe(OWNER_ID);
+        emitter.complete();
+
+        hub.dispatch(BORROWED);
+        tasks.getFirst().run();
+
+        assertThat(hub.connectionCount(OWNER_ID)).isZero();
+    }
+
+    @Test
+    void disconnectsSubscriberWhenPoolIsSaturated() throws IOException {
+        NotificationHub saturated = hub(task -> {
+            throw new TaskRejectedException("Notification pool is full");
+        }, 2);
+        SseEmitter emitter = saturated.subscribe(OWNER_ID);
+
+        saturated.dispatch(BORROWED);
+
+        assertThat(saturated.connectionCount(OWNER_ID)).isZero();
+        assertThat(isCompleted(emitter)).isTrue();
+    }
+
+    private static NotificationHub hub(TaskExecutor executor, int maxConnectionsPerUser) {
+        NotificationHub hub = new NotificationHub(executor);
+        ReflectionTestUtils.setField(hub, "bufferSize", 2);
+        ReflectionTestUtils.setField(hub, "timeout", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(hub, "maxConnectionsPerUser", maxConnectionsPerUser);
+        return hub;
+    }
+
+    /**
+     * Отправка в закрытый поток завершается IllegalStateException; в открытый, еще не привязанный к ответу,
+     * событие откладывается.
+     */
+    private static boolean isCompleted(SseEmitter emitter) throws IOException {
+        try {
+            emitter.send(SseEmitter.event().comment("probe"));
+            return false;
+        } catch (IllegalStateException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.book_back.recommendation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoOccurrenceModelTest {
+
+    private static final long UNLIMITED = Long.MAX_VALUE;
+
+    @Test
+    void buildsNeighborsOrderedByCountThenByFirstSeenBook() {
+        // Читатель 1 брал книги 10, 20, 30; читатель 2 - 10, 20; читатель 3 - 20, 30
+        CoOccurrenceModel model = build(100, UNLIMITED, new long[][]{{1, 10}, {1, 20}, {1, 30}, {2, 10}, {2, 20}, {3, 20}, {3, 30}});
+
+        assertThat(model.related(20, 10)).containsExactly(
+                new CoOccurrenceModel.Neighbor(10, 2), new CoOccurrenceModel.Neighbor(30, 2));
+        assertThat(model.related(10, 10)).containsExactly(
+                new CoOccurrenceModel.Neighbor(20, 2), new CoOccurrenceModel.Neighbor(30, 1));
+        assertThat(model.related(10, 1)).containsExactly(new CoOccurrenceModel.Neighbor(20, 2));
+        assertThat(model.related(40, 10)).isEmpty();
+    }
+
+    @Test
+    void keepsOnlyMostFrequentNeighborsPerRow() {
+        CoOccurrenceModel model = build(1, UNLIMITED, new long[][]{{1, 10}, {1, 20}, {1, 30}, {2, 10}, {2, 20}});
+
+        assertThat(model.related(10, 10)).containsExactly(new CoOccurrenceModel.Neighbor(20, 2));
+    }
+
+    @Test
+    void addBorrowMovesNeighborUpOnlyWhenItsCountExceedsThePreviousOne() {
+        CoOccurrenceModel model = build(100, UNLIMITED, new long[][]{{1, 10}, {1, 20}, {1, 30}, {2, 10}, {2, 20}});
+
+        model.addBorrow(30, new long[]{10});
+        assertThat(model.related(10, 10)).containsExactly(
+                new CoOccurrenceModel.Neighbor(20, 2), new CoOccurrenceModel.Neighbor(30, 2));
+
+        model.addBorrow(30, new long[]{10});
+        assertThat(model.related(10, 10)).containsExactly(
+                new CoOccurrenceModel.Neighbor(30, 3), new CoOccurrenceModel.Neighbor(20, 2));
+        assertThat(model.related(30, 10)).containsExactly(
+                new CoOccurrenceModel.Neighbor(10, 3), new CoOccurrenceModel.Neighbor(20, 1));
+    }
+
+    @Test
+    void addBorrowRegistersNewBooks() {
+        CoOccurrenceModel model = build(100, UNLIMITED, new long[][]{{1, 10}, {1, 20}});
+
+        model.addBorrow(40, new long[]{10, 40});
+
+        assertThat(model.books()).isEqualTo(3);
+        assertThat(model.related(40, 10)).containsExactly(new CoOccurrenceModel.Neighbor(10, 1));
+        assertThat(model.related(10, 10)).containsExactly(
+                new CoOccurrenceModel.Neighbor(20, 1), new CoOccurrenceModel.Neighbor(40, 1));
+    }
+
+    @Test
+    void addBorrowSkipsNewNeighborsBeyondMemoryBudgetButCountsKnownOnes() {
+        CoOccurrenceModel unlimited = build(100, UNLIMITED, new long[][]{{1, 10}, {1, 20}});
+        CoOccurrenceModel model = build(100, unlimited.estimatedBytes(), new long[][]{{1, 10}, {1, 20}});
+
+        model.addBorrow(20, new long[]{10, 30});
+
+        assertThat(model.related(20, 10)).containsExactly(new CoOccurrenceModel.Neighbor(10, 2));
+    }
+
+    @Test
+    void buildMatchesPairCountsOfTheGraph() {
+        Random random = new Random(7);
+        List<long[]> pairs = new ArrayList<>();
+        Map<Long, Set<Long>> booksByUser = new HashMap<>();
+        // Больше книг, чем строк в одной задаче, чтобы построение разбилось на несколько задач
+        for (long user = 0; user < 2_000; user++) {
+            Set<Long> books = new LinkedHashSet<>();
+            int borrowed = 1 + random.nextInt(8);
+            while (books.size() < borrowed) {
+                books.add((long) random.nextInt(1_000));
+            }
+            booksByUser.put(user, books);
+            for (long book : books) {
+                pairs.add(new long[]{user, book});
+            }
+        }
+        CoOccurrenceModel model = build(Integer.MAX_VALUE, UNLIMITED, pairs.toArray(long[][]::new));
+
+        Map<Long, Map<Long, Integer>> expected = new HashMap<>();
+        for (Set<Long> books : booksByUser.values()) {
+            for (long book : books) {
+                for (long other : books) {
+                    if (other != book) {
+                        expected.computeIfAbsent(book, id -> new HashMap<>()).merge(other, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Long, Map<Long, Integer>> row : expected.entrySet()) {
+            List<CoOccurrenceModel.Neighbor> related = model.related(row.getKey(), Integer.MAX_VALUE);
+            Map<Long, Integer> actual = new HashMap<>();
+            related.forEach(neighbor -> actual.put(neighbor.bookId(), neighbor.count()));
+            assertThat(actual).isEqualTo(row.getValue());
+            assertThat(related).isSortedAccordingTo(Comparator.comparingInt(CoOccurrenceModel.Neighbor::count).reversed());
+        }
+    }
+
+    /**
+     * @param pairs пары (читатель, книга), сгруппированные по читателю
+     */
+    private static CoOccurrenceModel build(int neighborsPerRow, long memoryBudget, long[][] pairs) {
+        BorrowGraph.Builder builder = new BorrowGraph.Builder(Integer.MAX_VALUE);
+        for (long[] pair : pairs) {
+            builder.add(pair[0], pair[1]);
+        }
+        return CoOccurrenceModel.build(builder.build(), neighborsPerRow, memoryBudget, ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.book_back.recommendation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LongIntHashMapTest {
+
+    @Test
+    void returnsMissingValueForAbsentKeys() {
+        LongIntHashMap map = new LongIntHashMap(4, -1);
+
+        assertThat(map.get(0)).isEqualTo(-1);
+        assertThat(map.get(42)).isEqualTo(-1);
+        assertThat(map.size()).isZero();
+    }
+
+    @Test
+    void overwritesValueOfExistingKey() {
+        LongIntHashMap map = new LongIntHashMap(4, -1);
+
+        map.put(7, 1);
+        map.put(7, 2);
+
+        assertThat(map.get(7)).isEqualTo(2);
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsAllKeysWhenGrowingPastMaxLoad() {
+        LongIntHashMap map = new LongIntHashMap(1, -1);
+        long initialBytes = map.estimatedBytes();
+
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i * 1024L, i);
+        }
+
+        assertThat(map.size()).isEqualTo(10_000);
+        assertThat(map.estimatedBytes()).isGreaterThan(initialBytes);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(map.get(i * 1024L)).isEqualTo(i);
+        }
+        assertThat(map.get(10_000 * 1024L)).isEqualTo(-1);
+    }
+
+    @Test
+    void behavesLikeAMap() {
+        Random random = new Random(42);
+        LongIntHashMap map = new LongIntHashMap(16, Integer.MIN_VALUE);
+        Map<Long, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 50_000; i++) {
+            // Небольшой диапазон ключей дает и перезаписи, и длинные цепочки пробирования
+            long key = random.nextBoolean() ? random.nextInt(20_000) : random.nextLong();
+            int value = random.nextInt();
+            map.put(key, value);
+            expected.put(key, value);
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        expected.forEach((key, value) -> assertThat(map.get(key)).isEqualTo(value));
+        assertThat(map.get(Long.MIN_VALUE)).isEqualTo(expected.getOrDefault(Long.MIN_VALUE, Integer.MIN_VALUE));
+    }
+}
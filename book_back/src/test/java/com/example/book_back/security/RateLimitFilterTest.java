@@ -0,0 +1,114 @@
+package com.example.book_back.security;
+
+import com.example.book_back.user.User;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitFilterTest {
+
+    private static final String ADDRESS = "10.0.0.1";
+
+    private RateLimiter rateLimiter;
+    private RateLimitFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        // Одна попытка в каждой группе, следующая - через минуту
+        MockEnvironment environment = new MockEnvironment();
+        for (RateLimitGroup group : RateLimitGroup.values()) {
+            environment.setProperty("application.rate-limit." + group.getName() + ".capacity", "1");
+            environment.setProperty("application.rate-limit." + group.getName() + ".refill-per-minute", "1");
+        }
+        rateLimiter = new RateLimiter(environment, new SimpleMeterRegistry());
+        filter = new RateLimitFilter(rateLimiter, new ObjectMapper());
+        ReflectionTestUtils.setField(filter, "enabled", true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void rejectsWithRetryAfterRoundedUpToSeconds() throws Exception {
+        assertThat(perform("GET", "/books").getStatus()).isEqualTo(200);
+
+        MockHttpServletResponse rejected = perform("GET", "/books");
+
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("60");
+        assertThat(rejected.getContentAsString()).contains("retry after 60 s");
+        assertThat(rateLimiter.topThrottled(10)).containsEntry("ip:" + ADDRESS, 1L);
+    }
+
+    @Test
+    void countsReadsAndWritesSeparately() throws Exception {
+        assertThat(perform("GET", "/books").getStatus()).isEqualTo(200);
+        assertThat(perform("POST", "/books").getStatus()).isEqualTo(200);
+        assertThat(perform("GET", "/books").getStatus()).isEqualTo(429);
+    }
+
+    @Test
+    void limitsAuthenticatedUsersByUserRatherThanAddress() throws Exception {
+        assertThat(perform("GET", "/books").getStatus()).isEqualTo(200);
+
+        authenticate(1L);
+        assertThat(perform("GET", "/books").getStatus()).isEqualTo(200);
+        assertThat(perform("GET", "/books").getStatus()).isEqualTo(429);
+        assertThat(rateLimiter.topThrottled(10)).containsOnlyKeys("user:1");
+
+        authenticate(2L);
+        assertThat(perform("GET", "/books").getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    void limitsAuthenticationEndpointsByAddressEvenForKnownUsers() throws Exception {
+        authenticate(1L);
+        assertThat(perform("POST", "/auth/authenticate").getStatus()).isEqualTo(200);
+
+        authenticate(2L);
+        assertThat(perform("POST", "/auth/authenticate").getStatus()).isEqualTo(429);
+        assertThat(rateLimiter.topThrottled(10)).containsOnlyKeys("ip:" + ADDRESS);
+    }
+
+    @Test
+    void passesEverythingWhenDisabled() throws Exception {
+        ReflectionTestUtils.setField(filter, "enabled", false);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(perform("GET", "/books").getStatus()).isEqualTo(200);
+        }
+    }
+
+    private MockHttpServletResponse perform(String method, String path) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        request.setServletPath(path);
+        request.setRemoteAddr(ADDRESS);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static void authenticate(Long userId) {
+        User user = User.builder().id(userId).build();
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(user, null, List.of()));
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.book_back.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class TokenBucketTableTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void allowsBurstUpToCapacityAndReportsWaitForNextToken() {
+        TokenBucketTable table = new TokenBucketTable(2, 1);
+        long key = RateLimiter.userKey(1);
+
+        assertThat(table.tryAcquire(key, 0)).isZero();
+        assertThat(table.tryAcquire(key, 0)).isZero();
+        assertThat(table.tryAcquire(key, 0)).isCloseTo(SECOND, within(2L));
+        assertThat(table.tryAcquire(key, SECOND / 2)).isCloseTo(SECOND / 2, within(2L));
+        assertThat(table.tryAcquire(key, SECOND + 1_000)).isZero();
+    }
+
+    @Test
+    void refillsNoMoreThanCapacity() {
+        TokenBucketTable table = new TokenBucketTable(2, 1);
+        long key = RateLimiter.userKey(1);
+        table.tryAcquire(key, 0);
+
+        long later = 100 * SECOND;
+        assertThat(table.tryAcquire(key, later)).isZero();
+        assertThat(table.tryAcquire(key, later)).isZero();
+        assertThat(table.tryAcquire(key, later)).isPositive();
+        assertThat(table.fullRefillNanos()).isCloseTo(2 * SECOND, within(2L));
+    }
+
+    @Test
+    void keepsBucketStateWhenGrowingPastMaxLoad() {
+        TokenBucketTable table = new TokenBucketTable(1, 0.001);
+        int keys = 20_000;
+
+        for (long id = 1; id <= keys; id++) {
+            assertThat(table.tryAcquire(RateLimiter.userKey(id), 0)).isZero();
+        }
+
+        assertThat(table.size()).isEqualTo(keys);
+        int rejected = 0;
+        for (long id = 1; id <= keys; id++) {
+            if (table.tryAcquire(RateLimiter.userKey(id), 1) > 0) {
+                rejected++;
+            }
+        }
+        assertThat(rejected).isEqualTo(keys);
+        assertThat(table.size()).isEqualTo(keys);
+    }
+
+    @Test
+    void findsRemainingKeysAfterEvictionBreaksProbeChains() {
+        TokenBucketTable table = new TokenBucketTable(1, 0.001);
+        int keys = 5_000;
+        for (long id = 1; id <= keys; id++) {
+            table.tryAcquire(RateLimiter.userKey(id), 0);
+        }
+        // Каждая десятая корзина используется позже и переживает вытеснение
+        for (long id = 10; id <= keys; id += 10) {
+            table.tryAcquire(RateLimiter.userKey(id), 10 * SECOND);
+        }
+
+        int evicted = table.evictIdle(10 * SECOND, 5 * SECOND);
+
+        assertThat(evicted).isEqualTo(keys - keys / 10);
+        assertThat(table.size()).isEqualTo(keys / 10);
+        for (long id = 1; id <= keys; id++) {
+            long wait = table.tryAcquire(RateLimiter.userKey(id), 10 * SECOND);
+            if (id % 10 == 0) {
+                // Корзина осталась пустой, значит найдена та же запись, а не создана новая
+                assertThat(wait).as("key %d", id).isPositive();
+            } else {
+                assertThat(wait).as("key %d", id).isZero();
+            }
+        }
+        assertThat(table.size()).isEqualTo(keys);
+    }
+
+    @Test
+    void evictsEverythingIdleAndAcceptsNewKeys() {
+        TokenBucketTable table = new TokenBucketTable(1, 1);
+        for (long id = 1; id <= 1_000; id++) {
+            table.tryAcquire(RateLimiter.addressKey("10.0.0." + id), 0);
+        }
+
+        assertThat(table.evictIdle(10 * SECOND, SECOND)).isEqualTo(1_000);
+        assertThat(table.size()).isZero();
+        assertThat(table.evictIdle(10 * SECOND, SECOND)).isZero();
+
+        assertThat(table.tryAcquire(RateLimiter.addressKey("10.0.0.1"), 10 * SECOND)).isZero();
+        assertThat(table.size()).isEqualTo(1);
+    }
+
+    @Test
+    void separatesUserAndAddressKeys() {
+        assertThat(RateLimiter.userKey(1) & 1).isZero();
+        assertThat(RateLimiter.addressKey("10.0.0.1") & 1).isEqualTo(1);
+        assertThat(RateLimiter.addressKey("10.0.0.1")).isEqualTo(RateLimiter.addressKey("10.0.0.1"));
+        assertThat(RateLimiter.addressKey("10.0.0.1")).isNotEqualTo(RateLimiter.addressKey("10.0.0.2"));
+    }
+}